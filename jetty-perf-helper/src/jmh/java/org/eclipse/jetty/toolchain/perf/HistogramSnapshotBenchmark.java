@@ -0,0 +1,134 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.HdrHistogram.Histogram;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of formatting and exporting histograms,
+ * and of taking snapshots of the recorders.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@SuppressWarnings("deprecation")
+public class HistogramSnapshotBenchmark
+{
+    @Param({"1000", "1000000"})
+    public int samples;
+    private long[] latencies;
+    private Histogram histogram;
+    private MeasureRecorder measureRecorder;
+
+    @Setup
+    public void setup()
+    {
+        Random random = new Random(0);
+        latencies = new long[samples];
+        histogram = new Histogram(3);
+        measureRecorder = new MeasureRecorder(TimeUnit.NANOSECONDS::toMillis, "latency", "ms");
+        measureRecorder.reset();
+        for (int i = 0; i < samples; ++i)
+        {
+            // Log-normal latencies around 1 ms.
+            long latency = Math.round(1_000_000 * Math.exp(0.5 * random.nextGaussian()));
+            latencies[i] = latency;
+            histogram.recordValue(latency);
+            measureRecorder.record(latency, true);
+        }
+    }
+
+    @Benchmark
+    public String histogramSnapshotToString()
+    {
+        return new HistogramSnapshot(histogram).toString();
+    }
+
+    @Benchmark
+    public StringBuilder histogramSnapshotWriteJSON() throws IOException
+    {
+        StringBuilder builder = new StringBuilder();
+        new HistogramSnapshot(histogram).writeJSON(builder);
+        return builder;
+    }
+
+    @Benchmark
+    public StringBuilder histogramSnapshotWriteCSV() throws IOException
+    {
+        StringBuilder builder = new StringBuilder();
+        new HistogramSnapshot(histogram).writeCSV(builder);
+        return builder;
+    }
+
+    @Benchmark
+    public Object measureRecorderSnapshot()
+    {
+        return measureRecorder.snapshot();
+    }
+
+    @Benchmark
+    public Histogram latencyRecorderIntervalHistogram(Interval interval)
+    {
+        return interval.latencyRecorder.intervalHistogram();
+    }
+
+    /**
+     * {@link LatencyRecorder#intervalHistogram()} drains the recorded values,
+     * so the recorder is refilled before every invocation, otherwise only
+     * the first invocation would snapshot the samples.
+     */
+    @State(Scope.Thread)
+    public static class Interval
+    {
+        private LatencyRecorder latencyRecorder;
+
+        @Setup
+        public void setup()
+        {
+            latencyRecorder = new LatencyRecorder();
+        }
+
+        @Setup(Level.Invocation)
+        public void refill(HistogramSnapshotBenchmark benchmark)
+        {
+            for (long latency : benchmark.latencies)
+            {
+                latencyRecorder.record(latency);
+            }
+        }
+    }
+}
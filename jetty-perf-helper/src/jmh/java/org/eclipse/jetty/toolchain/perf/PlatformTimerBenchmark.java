@@ -0,0 +1,70 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the distribution of the actual sleep times of {@link PlatformTimer}
+ * for the requested intervals; the difference between the percentiles reported
+ * and the requested interval is the timer inaccuracy.
+ * Intervals below the native resolution detected by {@link PlatformTimer#detect()}
+ * are emulated by busy looping.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlatformTimerBenchmark
+{
+    @Param({"10", "50", "100", "500", "1000"})
+    public long micros;
+    private PlatformTimer timer;
+
+    @Setup
+    public void setup()
+    {
+        timer = PlatformTimer.detect();
+    }
+
+    @Benchmark
+    public void sleep()
+    {
+        timer.sleep(micros);
+    }
+
+    @Benchmark
+    public long sleepUntil()
+    {
+        return timer.sleepUntil(System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(micros));
+    }
+}
@@ -0,0 +1,100 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.util.concurrent.TimeUnit;
+import org.HdrHistogram.Recorder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of recording latencies concurrently,
+ * to compare {@link MeasureRecorder}, {@link LatencyRecorder}
+ * and the HdrHistogram {@link Recorder}.
+ * Run with more threads, for example {@code -t 64}, to measure
+ * the recorders under contention.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+@SuppressWarnings("deprecation")
+public class RecorderBenchmark
+{
+    private MeasureRecorder measureRecorder;
+    private LatencyRecorder latencyRecorder;
+    private Recorder recorder;
+
+    @Setup
+    public void setup()
+    {
+        measureRecorder = new MeasureRecorder(TimeUnit.NANOSECONDS::toMillis, "latency", "ms");
+        measureRecorder.reset();
+        latencyRecorder = new LatencyRecorder();
+        recorder = new Recorder(3);
+    }
+
+    @Benchmark
+    public void measureRecorder(Latencies latencies)
+    {
+        measureRecorder.record(latencies.next(), true);
+    }
+
+    @Benchmark
+    public void latencyRecorder(Latencies latencies)
+    {
+        latencyRecorder.record(latencies.next());
+    }
+
+    @Benchmark
+    public void hdrRecorder(Latencies latencies)
+    {
+        recorder.recordValue(latencies.next());
+    }
+
+    /**
+     * Generates pseudo-random latencies between 1 ms and 2 ms, without contention.
+     */
+    @State(Scope.Thread)
+    public static class Latencies
+    {
+        private long seed = System.nanoTime() | 1;
+
+        public long next()
+        {
+            // Xorshift generator.
+            seed ^= seed << 13;
+            seed ^= seed >>> 7;
+            seed ^= seed << 17;
+            return 1_000_000 + Math.floorMod(seed, 1_000_000L);
+        }
+    }
+}
@@ -0,0 +1,375 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import jdk.jfr.consumer.RecordedClass;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedMethod;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+
+/**
+ * An allocation profiler that aggregates the {@code jdk.ObjectAllocationSample}
+ * JFR events, streamed in-process, by allocation site and by stack trace.
+ * <div>
+ * JFR samples allocations at a throttled rate, see {@link #setThrottle(String)},
+ * and gives each sample a weight, in bytes, that approximates the bytes allocated
+ * by the thread since its previous sample; samples are aggregated by their weight,
+ * so that the profile shows where the bytes are allocated rather than where
+ * the allocations happen to be sampled.
+ * </div>
+ * <div>
+ * Samples are aggregated by allocation site, that is the allocated class and
+ * the top frame with its line number, see {@link #getTopSites(int)}, and by full
+ * stack trace, see {@link #writeCollapsed(Appendable)}, in maps bounded by
+ * {@link #setMaxStacks(int)}; when a map is full, the weight of the samples
+ * with new keys is only accounted in {@link #getDroppedBytes()}.
+ * </div>
+ * <div>
+ * Typical usage, within a {@link PlatformMonitor} window:
+ * <pre>
+ * AllocationProfiler profiler = new AllocationProfiler();
+ * monitor.setAllocationProfiler(profiler);
+ * monitor.start();
+ * // Perform benchmark.
+ * Stop stop = monitor.stop();
+ * try (Writer writer = Files.newBufferedWriter(Path.of("allocations.collapsed")))
+ * {
+ *     stop.allocationProfiler.writeCollapsed(writer);
+ * }
+ * </pre>
+ * </div>
+ */
+public class AllocationProfiler
+{
+    private static final long STOP_TIMEOUT = TimeUnit.SECONDS.toMillis(5);
+    private static final String EVENT = "jdk.ObjectAllocationSample";
+
+    private final Map<String, long[]> sites = new HashMap<>();
+    private final Map<String, long[]> stacks = new HashMap<>();
+    private String throttle = "150/s";
+    private int maxDepth = 64;
+    private int maxStacks = 10_000;
+    private RecordingStream stream;
+    private volatile Instant stopTime = Instant.MAX;
+    private volatile CountDownLatch flushed;
+    private long samples;
+    private long sampledBytes;
+    private long droppedBytes;
+
+    /**
+     * @return the max rate of the allocation samples, for example {@code 150/s}
+     */
+    public String getThrottle()
+    {
+        return throttle;
+    }
+
+    public void setThrottle(String throttle)
+    {
+        this.throttle = throttle;
+    }
+
+    /**
+     * @return the max number of frames aggregated for each stack trace
+     */
+    public int getMaxDepth()
+    {
+        return maxDepth;
+    }
+
+    public void setMaxDepth(int maxDepth)
+    {
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * @return the max number of distinct allocation sites and stack traces retained
+     */
+    public int getMaxStacks()
+    {
+        return maxStacks;
+    }
+
+    public void setMaxStacks(int maxStacks)
+    {
+        this.maxStacks = maxStacks;
+    }
+
+    /**
+     * Discards the previous profile and starts streaming the allocation samples.
+     */
+    public synchronized void start()
+    {
+        if (stream != null)
+            throw new IllegalStateException("Already started");
+        sites.clear();
+        stacks.clear();
+        samples = 0;
+        sampledBytes = 0;
+        droppedBytes = 0;
+        stopTime = Instant.MAX;
+        flushed = null;
+        stream = new RecordingStream();
+        stream.enable(EVENT).withStackTrace().with("throttle", throttle);
+        stream.onEvent(EVENT, this::onObjectAllocationSample);
+        stream.onFlush(this::onFlush);
+        stream.startAsync();
+    }
+
+    /**
+     * Stops streaming the allocation samples, waiting for JFR to deliver
+     * the samples up to the stop time, which may take a couple of seconds.
+     */
+    public void stop()
+    {
+        RecordingStream stream;
+        synchronized (this)
+        {
+            stream = this.stream;
+            this.stream = null;
+        }
+        if (stream == null)
+            return;
+        stopTime = Instant.now();
+        try
+        {
+            // Wait for two flushes, so that the events
+            // up to the stop time have been delivered.
+            CountDownLatch latch = new CountDownLatch(2);
+            flushed = latch;
+            latch.await(STOP_TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException x)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            stream.close();
+        }
+    }
+
+    private void onFlush()
+    {
+        CountDownLatch latch = flushed;
+        if (latch != null)
+            latch.countDown();
+    }
+
+    private void onObjectAllocationSample(RecordedEvent event)
+    {
+        if (event.getStartTime().isAfter(stopTime))
+            return;
+        long weight = event.getLong("weight");
+        RecordedClass type = event.getClass("objectClass");
+        String className = type == null ? "unknown" : typeName(type.getName());
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        List<RecordedFrame> frames = stackTrace == null ? List.of() : stackTrace.getFrames();
+        int depth = Math.min(frames.size(), maxDepth);
+
+        String site = className;
+        if (depth > 0)
+            site += " at " + name(frames.get(0)) + ":" + frames.get(0).getLineNumber();
+
+        // The collapsed stack, from the outermost frame, with the allocated class as the leaf.
+        StringBuilder builder = new StringBuilder();
+        for (int i = depth - 1; i >= 0; --i)
+        {
+            builder.append(name(frames.get(i))).append(';');
+        }
+        String stack = builder.append(collapsed(className)).toString();
+
+        synchronized (this)
+        {
+            ++samples;
+            sampledBytes += weight;
+            boolean siteRecorded = record(sites, site, weight);
+            boolean stackRecorded = record(stacks, stack, weight);
+            if (!siteRecorded || !stackRecorded)
+                droppedBytes += weight;
+        }
+    }
+
+    private boolean record(Map<String, long[]> map, String key, long weight)
+    {
+        long[] counters = map.get(key);
+        if (counters == null)
+        {
+            if (map.size() >= maxStacks)
+                return false;
+            counters = new long[2];
+            map.put(key, counters);
+        }
+        counters[0] += weight;
+        ++counters[1];
+        return true;
+    }
+
+    /**
+     * @param name the binary name of a class, such as {@code [B}
+     * @return the name of the class as in the source code, such as {@code byte[]}
+     */
+    static String typeName(String name)
+    {
+        int dimensions = 0;
+        while (dimensions < name.length() && name.charAt(dimensions) == '[')
+        {
+            ++dimensions;
+        }
+        if (dimensions == 0)
+            return name;
+        String element = name.substring(dimensions);
+        switch (element)
+        {
+            case "Z":
+                element = "boolean";
+                break;
+            case "B":
+                element = "byte";
+                break;
+            case "C":
+                element = "char";
+                break;
+            case "S":
+                element = "short";
+                break;
+            case "I":
+                element = "int";
+                break;
+            case "J":
+                element = "long";
+                break;
+            case "F":
+                element = "float";
+                break;
+            case "D":
+                element = "double";
+                break;
+            default:
+                if (element.startsWith("L") && element.endsWith(";"))
+                    element = element.substring(1, element.length() - 1);
+                break;
+        }
+        return element + "[]".repeat(dimensions);
+    }
+
+    private static String name(RecordedFrame frame)
+    {
+        RecordedMethod method = frame.getMethod();
+        if (method == null)
+            return "unknown";
+        return collapsed(method.getType().getName() + "." + method.getName());
+    }
+
+    private static String collapsed(String name)
+    {
+        // Semicolons and spaces are separators in the collapsed format.
+        return name.replace(';', ':').replace(' ', '_');
+    }
+
+    /**
+     * @return a copy of the current profile, that is not affected by further
+     * samples nor discarded by a subsequent {@link #start()}
+     */
+    synchronized AllocationProfiler copy()
+    {
+        AllocationProfiler into = new AllocationProfiler();
+        into.throttle = throttle;
+        into.maxDepth = maxDepth;
+        into.maxStacks = maxStacks;
+        sites.forEach((site, counters) -> into.sites.put(site, counters.clone()));
+        stacks.forEach((stack, counters) -> into.stacks.put(stack, counters.clone()));
+        into.samples = samples;
+        into.sampledBytes = sampledBytes;
+        into.droppedBytes = droppedBytes;
+        return into;
+    }
+
+    /**
+     * @return the number of allocation samples recorded
+     */
+    public synchronized long getSamples()
+    {
+        return samples;
+    }
+
+    /**
+     * @return the sum of the weights of the allocation samples, an estimate of the bytes allocated
+     */
+    public synchronized long getSampledBytes()
+    {
+        return sampledBytes;
+    }
+
+    /**
+     * @return the sum of the weights of the allocation samples whose allocation site
+     * or stack trace was not retained because {@link #getMaxStacks()} was exceeded
+     */
+    public synchronized long getDroppedBytes()
+    {
+        return droppedBytes;
+    }
+
+    /**
+     * @param count the max number of allocation sites to return
+     * @return the allocation sites, as the allocated class and the top frame,
+     * with the bytes allocated, in descending order
+     */
+    public synchronized List<Map.Entry<String, Long>> getTopSites(int count)
+    {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(sites.size());
+        sites.forEach((site, counters) -> entries.add(Map.entry(site, counters[0])));
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        return entries.subList(0, Math.min(count, entries.size()));
+    }
+
+    /**
+     * Writes the profile in the collapsed stack format, one line for each
+     * distinct stack trace with the frames, from the outermost, separated by
+     * semicolons, and the allocated class as the innermost frame, followed by
+     * a space and the bytes allocated.
+     *
+     * @param output where to write the profile to
+     * @throws IOException if the write fails
+     */
+    public synchronized void writeCollapsed(Appendable output) throws IOException
+    {
+        String eol = System.lineSeparator();
+        for (Map.Entry<String, long[]> entry : stacks.entrySet())
+        {
+            output.append(entry.getKey()).append(' ').append(String.valueOf(entry.getValue()[0])).append(eol);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[throttle=%s,samples=%d,bytes=%d]", getClass().getSimpleName(), hashCode(), throttle, getSamples(), getSampledBytes());
+    }
+}
@@ -0,0 +1,963 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Runs macro benchmarks, such as whole-server benchmarks, in forked JVMs.
+ * <div>
+ * Each fork is a fresh JVM started with {@link ProcessBuilder}, that runs
+ * the {@link Benchmark} through a warm-up phase, a measure phase and a
+ * cool-down phase, each made of a number of timed iterations; only the
+ * measure phase is monitored by a {@link PlatformMonitor}, so that the
+ * warm-up absorbs the JIT compilation, and the cool-down keeps the end of
+ * the measure phase free of the effects of stopping the load.
+ * </div>
+ * <div>
+ * Each fork reports, for every iteration, the latency histogram recorded
+ * via {@link Iteration#getLatencyRecorder()} and the throughput counted
+ * via {@link Iteration#getThroughputMeter()}, and the {@link PlatformMonitor.Start}
+ * and {@link PlatformMonitor.Stop} of the measure phase, over its standard
+ * output pipe, in the same format used by {@link PlatformMonitorServer};
+ * the standard output of the benchmark is redirected to the standard error,
+ * which is inherited by the forks.
+ * </div>
+ * <div>
+ * A fork that does not complete within the total time of its iterations
+ * plus {@link #getTimeoutMargin() a margin}, for example because the benchmark
+ * does not honor {@link Iteration#isRunning()}, is destroyed and fails the run.
+ * </div>
+ * <div>
+ * Results are aggregated across forks, with confidence intervals computed
+ * from the per-fork means with Student's t-distribution, so that the
+ * run-to-run variance due to JIT and GC decisions shows up in the results,
+ * rather than being hidden by a single long run.
+ * </div>
+ * <div>
+ * Typical usage:
+ * <pre>
+ * public class HttpBenchmark implements BenchmarkRunner.Benchmark
+ * {
+ *     public void run(BenchmarkRunner.Iteration iteration)
+ *     {
+ *         while (iteration.isRunning())
+ *         {
+ *             long begin = System.nanoTime();
+ *             performRequest();
+ *             iteration.getLatencyRecorder().record(System.nanoTime() - begin);
+ *             iteration.getThroughputMeter().mark();
+ *         }
+ *     }
+ * }
+ *
+ * BenchmarkRunner runner = new BenchmarkRunner();
+ * runner.setForks(5);
+ * runner.setJvmArgs("-Xmx4g", "-XX:+UseG1GC");
+ * BenchmarkRunner.Result result = runner.run(HttpBenchmark.class);
+ * System.err.println(result);
+ * </pre>
+ * </div>
+ */
+public class BenchmarkRunner
+{
+    private int forks = 3;
+    private int warmupIterations = 3;
+    private int measureIterations = 5;
+    private int cooldownIterations = 1;
+    private long iterationTime = 10_000;
+    private long timeoutMargin = 60_000;
+    private double confidence = 0.95;
+    private String[] jvmArgs = new String[0];
+    private String[] args = new String[0];
+
+    public int getForks()
+    {
+        return forks;
+    }
+
+    public void setForks(int forks)
+    {
+        if (forks <= 0)
+            throw new IllegalArgumentException("Invalid forks " + forks);
+        this.forks = forks;
+    }
+
+    public int getWarmupIterations()
+    {
+        return warmupIterations;
+    }
+
+    public void setWarmupIterations(int warmupIterations)
+    {
+        this.warmupIterations = warmupIterations;
+    }
+
+    public int getMeasureIterations()
+    {
+        return measureIterations;
+    }
+
+    public void setMeasureIterations(int measureIterations)
+    {
+        if (measureIterations <= 0)
+            throw new IllegalArgumentException("Invalid measure iterations " + measureIterations);
+        this.measureIterations = measureIterations;
+    }
+
+    public int getCooldownIterations()
+    {
+        return cooldownIterations;
+    }
+
+    public void setCooldownIterations(int cooldownIterations)
+    {
+        this.cooldownIterations = cooldownIterations;
+    }
+
+    /**
+     * @return the duration of each iteration, in milliseconds
+     */
+    public long getIterationTime()
+    {
+        return iterationTime;
+    }
+
+    public void setIterationTime(long iterationTime)
+    {
+        if (iterationTime <= 0)
+            throw new IllegalArgumentException("Invalid iteration time " + iterationTime);
+        this.iterationTime = iterationTime;
+    }
+
+    /**
+     * @return the time, in milliseconds, allowed to each fork on top of the time of
+     * its iterations, to start the JVM, set up and tear down the benchmark
+     */
+    public long getTimeoutMargin()
+    {
+        return timeoutMargin;
+    }
+
+    public void setTimeoutMargin(long timeoutMargin)
+    {
+        if (timeoutMargin < 0)
+            throw new IllegalArgumentException("Invalid timeout margin " + timeoutMargin);
+        this.timeoutMargin = timeoutMargin;
+    }
+
+    /**
+     * @return the confidence level of the confidence intervals, between 0 and 1
+     */
+    public double getConfidence()
+    {
+        return confidence;
+    }
+
+    public void setConfidence(double confidence)
+    {
+        if (confidence <= 0 || confidence >= 1)
+            throw new IllegalArgumentException("Invalid confidence " + confidence);
+        this.confidence = confidence;
+    }
+
+    public String[] getJvmArgs()
+    {
+        return jvmArgs.clone();
+    }
+
+    /**
+     * @param jvmArgs the arguments of the forked JVMs, such as {@code -Xmx4g}
+     */
+    public void setJvmArgs(String... jvmArgs)
+    {
+        this.jvmArgs = jvmArgs.clone();
+    }
+
+    public String[] getArgs()
+    {
+        return args.clone();
+    }
+
+    /**
+     * @param args the arguments passed to {@link Benchmark#setUp(String[])}
+     */
+    public void setArgs(String... args)
+    {
+        this.args = args.clone();
+    }
+
+    /**
+     * Runs the given benchmark in the configured number of forked JVMs, one after the other.
+     *
+     * @param benchmark the benchmark class, with a public no-arguments constructor
+     * @return the results aggregated across forks
+     * @throws IOException if a fork cannot be started, or fails
+     */
+    public Result run(Class<? extends Benchmark> benchmark) throws IOException
+    {
+        Result result = new Result(confidence);
+        for (int i = 0; i < forks; ++i)
+        {
+            result.forks.add(fork(benchmark, i));
+        }
+        return result;
+    }
+
+    private ForkResult fork(Class<? extends Benchmark> benchmark, int index) throws IOException
+    {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(Arrays.asList(jvmArgs));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(BenchmarkRunner.class.getName());
+        command.add(benchmark.getName());
+        command.add(String.valueOf(warmupIterations));
+        command.add(String.valueOf(measureIterations));
+        command.add(String.valueOf(cooldownIterations));
+        command.add(String.valueOf(iterationTime));
+        command.addAll(Arrays.asList(args));
+
+        long timeout = (warmupIterations + measureIterations + cooldownIterations) * iterationTime + timeoutMargin;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        Process process = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        // Reads from the pipe cannot time out, so a watchdog destroys
+        // the fork when it expires, which unblocks the reads.
+        AtomicBoolean expired = new AtomicBoolean();
+        Thread watchdog = new Thread(() ->
+        {
+            try
+            {
+                if (!process.waitFor(timeout, TimeUnit.MILLISECONDS))
+                {
+                    expired.set(true);
+                    process.destroyForcibly();
+                }
+            }
+            catch (InterruptedException ignored)
+            {
+            }
+        }, "BenchmarkRunner-Watchdog-" + index);
+        watchdog.setDaemon(true);
+        watchdog.start();
+        ForkResult result = new ForkResult(index);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8)))
+        {
+            process.getOutputStream().close();
+            while (true)
+            {
+                Properties message = read(reader, expired, index, timeout);
+                if (message == null)
+                    throw new IOException("Fork " + index + " exited without results");
+                String type = message.getProperty("type");
+                if ("end".equals(type))
+                    break;
+                switch (type)
+                {
+                    case "iteration":
+                        result.iterations.add(MonitorPayload.read(message, new IterationResult()));
+                        break;
+                    case "start":
+                        result.start = MonitorPayload.read(message, new PlatformMonitor.Start());
+                        break;
+                    case "stop":
+                        result.stop = MonitorPayload.read(message, new PlatformMonitor.Stop());
+                        break;
+                    case "error":
+                        throw new IOException("Fork " + index + " failed: " + message.getProperty("message"));
+                    default:
+                        throw new IOException("Fork " + index + " sent an invalid message: " + type);
+                }
+            }
+            if (!process.waitFor(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS))
+                throw new IOException("Fork " + index + " did not exit within " + timeout + " ms");
+            if (process.exitValue() != 0)
+                throw new IOException("Fork " + index + " exited with " + process.exitValue());
+            return result;
+        }
+        catch (InterruptedException x)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException(x);
+        }
+        finally
+        {
+            watchdog.interrupt();
+            process.destroyForcibly();
+        }
+    }
+
+    private static Properties read(BufferedReader reader, AtomicBoolean expired, int index, long timeout) throws IOException
+    {
+        try
+        {
+            Properties message = PlatformMonitorServer.read(reader);
+            if (message == null && expired.get())
+                throw new IOException("Fork " + index + " timed out after " + timeout + " ms");
+            return message;
+        }
+        catch (IOException x)
+        {
+            if (expired.get())
+                throw new IOException("Fork " + index + " timed out after " + timeout + " ms", x);
+            throw x;
+        }
+    }
+
+    /**
+     * The entry point of the forked JVMs.
+     *
+     * @param args the benchmark class, the number of warm-up, measure and cool-down iterations,
+     * the iteration time, followed by the arguments of the benchmark
+     */
+    public static void main(String[] args)
+    {
+        // The standard output is the pipe to the parent JVM,
+        // so the output of the benchmark goes to the standard error.
+        PrintStream pipe = System.out;
+        System.setOut(System.err);
+        Writer writer = new OutputStreamWriter(pipe, StandardCharsets.UTF_8);
+        int exitCode = 0;
+        try
+        {
+            Benchmark benchmark = (Benchmark)Class.forName(args[0]).getConstructor().newInstance();
+            int warmupIterations = Integer.parseInt(args[1]);
+            int measureIterations = Integer.parseInt(args[2]);
+            int cooldownIterations = Integer.parseInt(args[3]);
+            long iterationTime = Long.parseLong(args[4]);
+
+            PlatformMonitor monitor = new PlatformMonitor();
+
+            benchmark.setUp(Arrays.copyOfRange(args, 5, args.length));
+            try
+            {
+                for (int i = 0; i < warmupIterations; ++i)
+                {
+                    send(writer, "iteration", iterate(benchmark, Phase.WARMUP, i, iterationTime));
+                }
+
+                send(writer, "start", monitor.start());
+                long operations = 0;
+                for (int i = 0; i < measureIterations; ++i)
+                {
+                    IterationResult result = iterate(benchmark, Phase.MEASURE, i, iterationTime);
+                    operations += result.operations;
+                    send(writer, "iteration", result);
+                }
+                send(writer, "stop", monitor.stop(operations));
+
+                for (int i = 0; i < cooldownIterations; ++i)
+                {
+                    send(writer, "iteration", iterate(benchmark, Phase.COOLDOWN, i, iterationTime));
+                }
+            }
+            finally
+            {
+                benchmark.tearDown();
+            }
+            send(writer, "end", null);
+        }
+        catch (Throwable x)
+        {
+            x.printStackTrace();
+            exitCode = 1;
+            Properties message = new Properties();
+            message.setProperty("type", "error");
+            message.setProperty("message", String.valueOf(x));
+            try
+            {
+                PlatformMonitorServer.write(message, writer);
+            }
+            catch (IOException ignored)
+            {
+            }
+        }
+        // The benchmark may have left non-daemon threads running.
+        System.exit(exitCode);
+    }
+
+    private static IterationResult iterate(Benchmark benchmark, Phase phase, int index, long iterationTime) throws Exception
+    {
+        Iteration iteration = new Iteration(phase, index, iterationTime);
+        iteration.meter.start();
+        long begin = System.nanoTime();
+        try
+        {
+            benchmark.run(iteration);
+        }
+        finally
+        {
+            iteration.meter.stop();
+        }
+        IterationResult result = new IterationResult();
+        result.time = System.nanoTime() - begin;
+        result.phase = phase.name();
+        result.index = index;
+        result.histogram = iteration.recorder.intervalHistogram().copy();
+        result.throughputMeter = iteration.meter.copy();
+        long operations = iteration.meter.getCount();
+        result.operations = operations > 0 ? operations : result.histogram.getTotalCount();
+        result.throughput = result.operations * 1_000_000_000D / result.time;
+        return result;
+    }
+
+    private static void send(Writer writer, String type, Object payload) throws IOException
+    {
+        Properties message = new Properties();
+        message.setProperty("type", type);
+        if (payload != null)
+            MonitorPayload.write(payload, message);
+        PlatformMonitorServer.write(message, writer);
+    }
+
+    /**
+     * @param p the probability, between 0.5 and 1
+     * @param degreesOfFreedom the degrees of freedom
+     * @return the value {@code t} such that the Student's t cumulative distribution at {@code t} is {@code p}
+     */
+    static double studentQuantile(double p, int degreesOfFreedom)
+    {
+        // Bisection, since the cumulative distribution is monotonic.
+        double low = 0;
+        double high = 1;
+        while (studentCDF(high, degreesOfFreedom) < p)
+        {
+            low = high;
+            high *= 2;
+        }
+        for (int i = 0; i < 100; ++i)
+        {
+            double middle = (low + high) / 2;
+            if (studentCDF(middle, degreesOfFreedom) < p)
+                low = middle;
+            else
+                high = middle;
+        }
+        return (low + high) / 2;
+    }
+
+    private static double studentCDF(double t, int degreesOfFreedom)
+    {
+        double x = degreesOfFreedom / (degreesOfFreedom + t * t);
+        double tail = 0.5 * incompleteBeta(x, degreesOfFreedom / 2D, 0.5);
+        return t >= 0 ? 1 - tail : tail;
+    }
+
+    private static double incompleteBeta(double x, double a, double b)
+    {
+        // The regularized incomplete beta function, from Numerical Recipes.
+        if (x <= 0)
+            return 0;
+        if (x >= 1)
+            return 1;
+        double front = Math.exp(logGamma(a + b) - logGamma(a) - logGamma(b) + a * Math.log(x) + b * Math.log(1 - x));
+        if (x < (a + 1) / (a + b + 2))
+            return front * betaContinuedFraction(x, a, b) / a;
+        return 1 - front * betaContinuedFraction(1 - x, b, a) / b;
+    }
+
+    private static double betaContinuedFraction(double x, double a, double b)
+    {
+        double tiny = 1e-300;
+        double c = 1;
+        double d = 1 - (a + b) * x / (a + 1);
+        d = 1 / (Math.abs(d) < tiny ? tiny : d);
+        double result = d;
+        for (int m = 1; m <= 200; ++m)
+        {
+            int m2 = 2 * m;
+            double even = m * (b - m) * x / ((a - 1 + m2) * (a + m2));
+            d = 1 + even * d;
+            d = 1 / (Math.abs(d) < tiny ? tiny : d);
+            c = 1 + even / c;
+            c = Math.abs(c) < tiny ? tiny : c;
+            result *= d * c;
+            double odd = -(a + m) * (a + b + m) * x / ((a + m2) * (a + 1 + m2));
+            d = 1 + odd * d;
+            d = 1 / (Math.abs(d) < tiny ? tiny : d);
+            c = 1 + odd / c;
+            c = Math.abs(c) < tiny ? tiny : c;
+            double delta = d * c;
+            result *= delta;
+            if (Math.abs(delta - 1) < 3e-14)
+                break;
+        }
+        return result;
+    }
+
+    private static double logGamma(double x)
+    {
+        // Lanczos approximation, from Numerical Recipes.
+        double[] coefficients = {76.18009172947146, -86.50532032941677, 24.01409824083091,
+                -1.231739572450155, 0.1208650973866179e-2, -0.5395239384953e-5};
+        double y = x;
+        double tmp = x + 5.5;
+        tmp -= (x + 0.5) * Math.log(tmp);
+        double series = 1.000000000190015;
+        for (double coefficient : coefficients)
+        {
+            series += coefficient / ++y;
+        }
+        return -tmp + Math.log(2.5066282746310005 * series / x);
+    }
+
+    /**
+     * A macro benchmark, run in forked JVMs by {@link BenchmarkRunner}.
+     * <div>
+     * Implementations must have a public no-arguments constructor.
+     * </div>
+     */
+    public interface Benchmark
+    {
+        /**
+         * Sets up the benchmark, for example starting the server, once per fork.
+         *
+         * @param args the arguments of the benchmark, see {@link BenchmarkRunner#setArgs(String...)}
+         * @throws Exception if the set up fails
+         */
+        default void setUp(String[] args) throws Exception
+        {
+        }
+
+        /**
+         * Runs one iteration of the benchmark, until {@link Iteration#isRunning()} returns false,
+         * recording the latencies and counting the operations performed.
+         *
+         * @param iteration the iteration to run
+         * @throws Exception if the iteration fails
+         */
+        void run(Iteration iteration) throws Exception;
+
+        /**
+         * Tears down the benchmark, once per fork.
+         *
+         * @throws Exception if the tear down fails
+         */
+        default void tearDown() throws Exception
+        {
+        }
+    }
+
+    /**
+     * The phases of a fork.
+     */
+    public enum Phase
+    {
+        WARMUP, MEASURE, COOLDOWN
+    }
+
+    /**
+     * A timed iteration of a {@link Benchmark}.
+     */
+    public static class Iteration
+    {
+        private final LatencyRecorder recorder = new LatencyRecorder();
+        private final ThroughputMeter meter = new ThroughputMeter();
+        private final Phase phase;
+        private final int index;
+        private final long deadline;
+
+        Iteration(Phase phase, int index, long iterationTime)
+        {
+            this.phase = phase;
+            this.index = index;
+            this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(iterationTime);
+        }
+
+        public Phase getPhase()
+        {
+            return phase;
+        }
+
+        /**
+         * @return the index of this iteration within its phase
+         */
+        public int getIndex()
+        {
+            return index;
+        }
+
+        /**
+         * @return the {@link System#nanoTime()} value at which this iteration ends
+         */
+        public long getDeadline()
+        {
+            return deadline;
+        }
+
+        /**
+         * @return whether this iteration is still running
+         */
+        public boolean isRunning()
+        {
+            return System.nanoTime() - deadline < 0;
+        }
+
+        /**
+         * @return the recorder of the latencies, in nanoseconds
+         */
+        public LatencyRecorder getLatencyRecorder()
+        {
+            return recorder;
+        }
+
+        /**
+         * @return the meter of the operations; if no operation is counted,
+         * the number of latencies recorded is used instead
+         */
+        public ThroughputMeter getThroughputMeter()
+        {
+            return meter;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x[%s#%d]", getClass().getSimpleName(), hashCode(), phase, index);
+        }
+    }
+
+    /**
+     * The results of an iteration.
+     */
+    public static class IterationResult
+    {
+        public String phase;
+        public int index;
+        /**
+         * The elapsed time, in nanoseconds.
+         */
+        public long time;
+        public long operations;
+        /**
+         * The operations per second.
+         */
+        public double throughput;
+        /**
+         * The latencies, in nanoseconds.
+         */
+        public Histogram histogram;
+        /**
+         * The operations counted in each period by {@link Iteration#getThroughputMeter()}.
+         */
+        public ThroughputMeter throughputMeter;
+
+        @Override
+        public String toString()
+        {
+            return String.format(Locale.ROOT, "%s#%d: %.2f ops/s, p50/p99/max = %.3f/%.3f/%.3f ms",
+                    phase, index, throughput,
+                    histogram.getValueAtPercentile(50) / 1_000_000D,
+                    histogram.getValueAtPercentile(99) / 1_000_000D,
+                    histogram.getMaxValue() / 1_000_000D);
+        }
+    }
+
+    /**
+     * The results of a fork.
+     */
+    public static class ForkResult
+    {
+        private final List<IterationResult> iterations = new ArrayList<>();
+        private final int index;
+        private PlatformMonitor.Start start;
+        private PlatformMonitor.Stop stop;
+
+        ForkResult(int index)
+        {
+            this.index = index;
+        }
+
+        public int getIndex()
+        {
+            return index;
+        }
+
+        /**
+         * @return the results of all the iterations, of all phases
+         */
+        public List<IterationResult> getIterations()
+        {
+            return iterations;
+        }
+
+        /**
+         * @param phase the phase
+         * @return the results of the iterations of the given phase
+         */
+        public List<IterationResult> getIterations(Phase phase)
+        {
+            List<IterationResult> result = new ArrayList<>();
+            for (IterationResult iteration : iterations)
+            {
+                if (phase.name().equals(iteration.phase))
+                    result.add(iteration);
+            }
+            return result;
+        }
+
+        /**
+         * @return the platform information at the start of the measure phase
+         */
+        public PlatformMonitor.Start getStart()
+        {
+            return start;
+        }
+
+        /**
+         * @return the platform information at the end of the measure phase; the
+         * timeline and the profilers are not available
+         */
+        public PlatformMonitor.Stop getStop()
+        {
+            return stop;
+        }
+
+        /**
+         * @return the operations per second over the measure iterations
+         */
+        public double getThroughput()
+        {
+            long operations = 0;
+            long time = 0;
+            for (IterationResult iteration : getIterations(Phase.MEASURE))
+            {
+                operations += iteration.operations;
+                time += iteration.time;
+            }
+            return time == 0 ? Double.NaN : operations * 1_000_000_000D / time;
+        }
+
+        /**
+         * @return the latencies, in nanoseconds, of the measure iterations
+         */
+        public Histogram getHistogram()
+        {
+            Histogram result = new Histogram(3);
+            for (IterationResult iteration : getIterations(Phase.MEASURE))
+            {
+                result.add(iteration.histogram);
+            }
+            return result;
+        }
+
+        @Override
+        public String toString()
+        {
+            Histogram histogram = getHistogram();
+            StringBuilder builder = new StringBuilder();
+            builder.append(String.format(Locale.ROOT, "Fork %d: %.2f ops/s, p50/p99/max = %.3f/%.3f/%.3f ms",
+                    index, getThroughput(),
+                    histogram.getValueAtPercentile(50) / 1_000_000D,
+                    histogram.getValueAtPercentile(99) / 1_000_000D,
+                    histogram.getMaxValue() / 1_000_000D));
+            if (stop != null)
+                builder.append(String.format(Locale.ROOT, ", GC %d ms, JIT %d ms", stop.youngTime + stop.oldTime, stop.jitTime));
+            return builder.toString();
+        }
+    }
+
+    /**
+     * The results of a benchmark, aggregated across forks.
+     */
+    public static class Result
+    {
+        private final List<ForkResult> forks = new ArrayList<>();
+        private final double confidence;
+
+        Result(double confidence)
+        {
+            this.confidence = confidence;
+        }
+
+        public List<ForkResult> getForks()
+        {
+            return forks;
+        }
+
+        /**
+         * @return the confidence level of the confidence intervals
+         */
+        public double getConfidence()
+        {
+            return confidence;
+        }
+
+        /**
+         * @return the estimate of the operations per second, from the throughput of each fork
+         */
+        public Estimate getThroughput()
+        {
+            double[] values = new double[forks.size()];
+            for (int i = 0; i < values.length; ++i)
+            {
+                values[i] = forks.get(i).getThroughput();
+            }
+            return new Estimate(values, confidence);
+        }
+
+        /**
+         * @param percentile the percentile, between 0 and 100
+         * @return the estimate of the latency at the given percentile, in nanoseconds,
+         * from the latency at the given percentile of each fork
+         */
+        public Estimate getLatency(double percentile)
+        {
+            double[] values = new double[forks.size()];
+            for (int i = 0; i < values.length; ++i)
+            {
+                values[i] = forks.get(i).getHistogram().getValueAtPercentile(percentile);
+            }
+            return new Estimate(values, confidence);
+        }
+
+        /**
+         * @return the latencies, in nanoseconds, of the measure iterations of all forks
+         */
+        public Histogram getHistogram()
+        {
+            Histogram result = new Histogram(3);
+            for (ForkResult fork : forks)
+            {
+                result.add(fork.getHistogram());
+            }
+            return result;
+        }
+
+        @Override
+        public String toString()
+        {
+            String eol = System.lineSeparator();
+            StringBuilder builder = new StringBuilder();
+            for (ForkResult fork : forks)
+            {
+                builder.append(fork).append(eol);
+            }
+            builder.append(String.format(Locale.ROOT, "Throughput: %s ops/s", getThroughput())).append(eol);
+            for (double percentile : new double[]{50, 99})
+            {
+                Estimate latency = getLatency(percentile);
+                builder.append(String.format(Locale.ROOT, "Latency p%d: %.3f ms [%.3f, %.3f] (%.0f%% CI)", (int)percentile,
+                        latency.getMean() / 1_000_000D, latency.getLower() / 1_000_000D,
+                        latency.getUpper() / 1_000_000D, confidence * 100)).append(eol);
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * The estimate of a value measured once per fork, with its confidence interval.
+     */
+    public static class Estimate
+    {
+        private final double mean;
+        private final double standardDeviation;
+        private final double lower;
+        private final double upper;
+        private final double confidence;
+        private final int samples;
+
+        Estimate(double[] values, double confidence)
+        {
+            this.confidence = confidence;
+            this.samples = values.length;
+            double sum = 0;
+            for (double value : values)
+            {
+                sum += value;
+            }
+            mean = samples == 0 ? Double.NaN : sum / samples;
+            if (samples < 2)
+            {
+                standardDeviation = lower = upper = Double.NaN;
+            }
+            else
+            {
+                double squares = 0;
+                for (double value : values)
+                {
+                    squares += (value - mean) * (value - mean);
+                }
+                standardDeviation = Math.sqrt(squares / (samples - 1));
+                double t = studentQuantile(1 - (1 - confidence) / 2, samples - 1);
+                double error = t * standardDeviation / Math.sqrt(samples);
+                lower = mean - error;
+                upper = mean + error;
+            }
+        }
+
+        public double getMean()
+        {
+            return mean;
+        }
+
+        /**
+         * @return the sample standard deviation, or NaN if less than 2 samples
+         */
+        public double getStandardDeviation()
+        {
+            return standardDeviation;
+        }
+
+        /**
+         * @return the lower bound of the confidence interval of the mean, or NaN if less than 2 samples
+         */
+        public double getLower()
+        {
+            return lower;
+        }
+
+        /**
+         * @return the upper bound of the confidence interval of the mean, or NaN if less than 2 samples
+         */
+        public double getUpper()
+        {
+            return upper;
+        }
+
+        public int getSamples()
+        {
+            return samples;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format(Locale.ROOT, "%.2f [%.2f, %.2f] (%.0f%% CI, %d forks)", mean, lower, upper, confidence * 100, samples);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Samples the {@link BufferPoolMXBean}s, typically the {@code direct}
+ * and {@code mapped} buffer pools, between {@link #start()} and
+ * {@link #stop(PlatformMonitor.Stop)}, for {@link PlatformMonitor}.</p>
+ * <p>The buffer pools only report the current usage, so the peak usage and
+ * the bytes allocated and released are estimated from the samples, and are
+ * lower bounds of the actual values.</p>
+ */
+class BufferPoolTracker
+{
+    private final List<BufferPoolMXBean> beans = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class);
+    private final List<PlatformMonitor.BufferPool> pools = new ArrayList<>();
+
+    void start()
+    {
+        for (BufferPoolMXBean bean : beans)
+        {
+            PlatformMonitor.BufferPool pool = new PlatformMonitor.BufferPool();
+            pool.name = bean.getName();
+            pool.startCount = pool.stopCount = pool.peakCount = bean.getCount();
+            pool.startUsed = pool.stopUsed = pool.peakUsed = bean.getMemoryUsed();
+            pool.startCapacity = pool.stopCapacity = bean.getTotalCapacity();
+            pools.add(pool);
+        }
+    }
+
+    synchronized void sample()
+    {
+        for (int i = 0; i < pools.size(); ++i)
+        {
+            BufferPoolMXBean bean = beans.get(i);
+            PlatformMonitor.BufferPool pool = pools.get(i);
+            long count = bean.getCount();
+            long used = bean.getMemoryUsed();
+            long delta = used - pool.stopUsed;
+            if (delta > 0)
+                pool.allocatedBytes += delta;
+            else
+                pool.releasedBytes -= delta;
+            pool.stopCount = count;
+            pool.stopUsed = used;
+            pool.stopCapacity = bean.getTotalCapacity();
+            pool.peakCount = Math.max(pool.peakCount, count);
+            pool.peakUsed = Math.max(pool.peakUsed, used);
+        }
+    }
+
+    void stop(PlatformMonitor.Stop stop)
+    {
+        sample();
+        stop.bufferPools = new ArrayList<>(pools);
+    }
+}
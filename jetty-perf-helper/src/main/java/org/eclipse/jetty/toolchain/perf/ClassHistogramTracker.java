@@ -0,0 +1,223 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * <p>Captures the heap class histogram at {@link #start()} and at
+ * {@link #stop(PlatformMonitor.Stop)}, for {@link PlatformMonitor},
+ * and reports the classes whose instances and bytes grew the most.</p>
+ * <p>The class histogram is obtained by invoking the {@code gcClassHistogram}
+ * operation of the {@code DiagnosticCommand} MBean, the same as
+ * {@code jcmd <pid> GC.class_histogram}, which performs a full GC so that
+ * only live objects are counted.</p>
+ * <p>The histogram text, which has one line per loaded class, is parsed in
+ * place into a compact table of two {@code long}s per class, without splitting
+ * it into lines or allocating other than the class names, so that the
+ * capture works on large heaps with many classes.</p>
+ */
+class ClassHistogramTracker
+{
+    private static final String DIAGNOSTIC_COMMAND = "com.sun.management:type=DiagnosticCommand";
+
+    private final int size;
+    private Map<String, long[]> startHistogram;
+
+    /**
+     * @param size the number of classes to report
+     */
+    ClassHistogramTracker(int size)
+    {
+        this.size = size;
+    }
+
+    void start()
+    {
+        startHistogram = capture();
+    }
+
+    void stop(PlatformMonitor.Stop stop)
+    {
+        Map<String, long[]> stopHistogram = capture();
+        if (startHistogram == null || stopHistogram == null)
+            return;
+
+        List<PlatformMonitor.ClassGrowth> growths = new ArrayList<>();
+        for (Map.Entry<String, long[]> entry : stopHistogram.entrySet())
+        {
+            long[] start = startHistogram.getOrDefault(entry.getKey(), new long[2]);
+            growths.add(growth(entry.getKey(), start, entry.getValue()));
+        }
+        for (Map.Entry<String, long[]> entry : startHistogram.entrySet())
+        {
+            // Classes that were unloaded, or whose instances were all collected.
+            if (!stopHistogram.containsKey(entry.getKey()))
+                growths.add(growth(entry.getKey(), entry.getValue(), new long[2]));
+        }
+        startHistogram = null;
+
+        stop.classesByInstances = top(growths, Comparator.comparingLong(PlatformMonitor.ClassGrowth::getInstanceGrowth));
+        stop.classesByBytes = top(growths, Comparator.comparingLong(PlatformMonitor.ClassGrowth::getByteGrowth));
+    }
+
+    private static PlatformMonitor.ClassGrowth growth(String name, long[] start, long[] stop)
+    {
+        PlatformMonitor.ClassGrowth growth = new PlatformMonitor.ClassGrowth();
+        growth.name = name;
+        growth.startInstances = start[0];
+        growth.startBytes = start[1];
+        growth.stopInstances = stop[0];
+        growth.stopBytes = stop[1];
+        return growth;
+    }
+
+    private List<PlatformMonitor.ClassGrowth> top(List<PlatformMonitor.ClassGrowth> growths, Comparator<PlatformMonitor.ClassGrowth> comparator)
+    {
+        List<PlatformMonitor.ClassGrowth> result = new ArrayList<>(growths);
+        result.sort(comparator.reversed());
+        result = result.subList(0, Math.min(size, result.size()));
+        // Only report the classes that grew.
+        result.removeIf(growth -> comparator.compare(growth, new PlatformMonitor.ClassGrowth()) <= 0);
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * @return the class histogram, as a map from class name to instances and
+     * bytes, or null if the {@code DiagnosticCommand} MBean is not available
+     */
+    static Map<String, long[]> capture()
+    {
+        try
+        {
+            Object histogram = ManagementFactory.getPlatformMBeanServer().invoke(new ObjectName(DIAGNOSTIC_COMMAND),
+                    "gcClassHistogram", new Object[]{new String[0]}, new String[]{String[].class.getName()});
+            return parse((String)histogram);
+        }
+        catch (JMException | RuntimeException x)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * <p>Parses the class histogram text, where each class is on a line such as:</p>
+     * <pre>
+     *    1:         12924         986352  [B (java.base@17.0.9)
+     * </pre>
+     * <p>Lines that do not have this format, such as the headers and the
+     * totals, are skipped.</p>
+     *
+     * @param histogram the class histogram text
+     * @return a map from class name to instances and bytes
+     */
+    static Map<String, long[]> parse(CharSequence histogram)
+    {
+        Map<String, long[]> result = new HashMap<>();
+        int length = histogram.length();
+        int index = 0;
+        while (index < length)
+        {
+            int end = index;
+            while (end < length && histogram.charAt(end) != '\n')
+            {
+                ++end;
+            }
+            parseLine(histogram, index, end, result);
+            index = end + 1;
+        }
+        return result;
+    }
+
+    private static void parseLine(CharSequence histogram, int index, int end, Map<String, long[]> result)
+    {
+        // The line number, followed by ':'.
+        index = skipSpaces(histogram, index, end);
+        int digits = skipDigits(histogram, index, end);
+        if (digits == index || digits == end || histogram.charAt(digits) != ':')
+            return;
+
+        index = skipSpaces(histogram, digits + 1, end);
+        digits = skipDigits(histogram, index, end);
+        if (digits == index)
+            return;
+        long instances = parseLong(histogram, index, digits);
+
+        index = skipSpaces(histogram, digits, end);
+        digits = skipDigits(histogram, index, end);
+        if (digits == index)
+            return;
+        long bytes = parseLong(histogram, index, digits);
+
+        // The class name, optionally followed by the module.
+        index = skipSpaces(histogram, digits, end);
+        int name = index;
+        while (name < end && !Character.isWhitespace(histogram.charAt(name)))
+        {
+            ++name;
+        }
+        if (name == index)
+            return;
+
+        // Classes with the same name loaded by different class loaders have different lines.
+        long[] counters = result.computeIfAbsent(histogram.subSequence(index, name).toString(), key -> new long[2]);
+        counters[0] += instances;
+        counters[1] += bytes;
+    }
+
+    private static int skipSpaces(CharSequence histogram, int index, int end)
+    {
+        while (index < end && histogram.charAt(index) == ' ')
+        {
+            ++index;
+        }
+        return index;
+    }
+
+    private static int skipDigits(CharSequence histogram, int index, int end)
+    {
+        while (index < end && isDigit(histogram.charAt(index)))
+        {
+            ++index;
+        }
+        return index;
+    }
+
+    private static boolean isDigit(char c)
+    {
+        return c >= '0' && c <= '9';
+    }
+
+    private static long parseLong(CharSequence histogram, int index, int end)
+    {
+        long value = 0;
+        for (int i = index; i < end; ++i)
+        {
+            value = value * 10 + (histogram.charAt(i) - '0');
+        }
+        return value;
+    }
+}
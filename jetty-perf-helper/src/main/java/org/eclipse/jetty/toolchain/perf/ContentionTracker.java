@@ -0,0 +1,203 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.lang.management.LockInfo;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Tracks lock and monitor contention between {@link #start()} and
+ * {@link #stop(PlatformMonitor.Stop)}, for {@link PlatformMonitor}.</p>
+ * <p>Thread contention monitoring is enabled, if supported, so that the
+ * per-thread blocked and waited times are available, and restored on stop.
+ * The threads are periodically sampled, and those that are blocked entering
+ * a monitor, or waiting on a lock that is owned by another thread, for
+ * example a contended {@code ReentrantLock}, are aggregated by lock identity;
+ * threads waiting on locks without an owner, such as idle threads waiting on
+ * a condition, are not considered contended.</p>
+ * <p>The blocked and waited counts and times are also reported for each
+ * thread that was blocked or waited during the monitoring.</p>
+ */
+class ContentionTracker
+{
+    private final Map<Long, long[]> startCounters = new HashMap<>();
+    private final Map<Long, long[]> lastCounters = new HashMap<>();
+    private final Map<Long, String> names = new HashMap<>();
+    private final Map<String, PlatformMonitor.LockContention> contentions = new HashMap<>();
+    private final ThreadMXBean threads;
+    private final long period;
+    private ScheduledExecutorService scheduler;
+    private boolean contentionMonitoringEnabled;
+    private long samples;
+
+    /**
+     * @param threads the bean to sample the threads from
+     * @param period the sampling period, in milliseconds
+     */
+    ContentionTracker(ThreadMXBean threads, long period)
+    {
+        this.threads = threads;
+        this.period = period;
+    }
+
+    void start()
+    {
+        if (threads.isThreadContentionMonitoringSupported())
+        {
+            contentionMonitoringEnabled = threads.isThreadContentionMonitoringEnabled();
+            threads.setThreadContentionMonitoringEnabled(true);
+        }
+        synchronized (this)
+        {
+            for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds(), 0))
+            {
+                if (info != null)
+                {
+                    startCounters.put(info.getThreadId(), counters(info));
+                    names.put(info.getThreadId(), info.getThreadName());
+                }
+            }
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(task ->
+        {
+            Thread thread = new Thread(task, "ContentionTracker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::sample, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private long[] counters(ThreadInfo info)
+    {
+        return new long[]{info.getBlockedCount(), info.getBlockedTime(), info.getWaitedCount(), info.getWaitedTime()};
+    }
+
+    void sample()
+    {
+        ThreadInfo[] infos = threads.getThreadInfo(threads.getAllThreadIds(), 0);
+        synchronized (this)
+        {
+            ++samples;
+            for (ThreadInfo info : infos)
+            {
+                if (info == null)
+                    continue;
+                // Remember the counters of threads that may end before stop().
+                lastCounters.put(info.getThreadId(), counters(info));
+                names.put(info.getThreadId(), info.getThreadName());
+
+                LockInfo lock = info.getLockInfo();
+                if (lock == null)
+                    continue;
+                Thread.State state = info.getThreadState();
+                boolean blocked = state == Thread.State.BLOCKED;
+                if (!blocked && info.getLockOwnerId() < 0)
+                    continue;
+                String identity = lock.getClassName() + "@" + Integer.toHexString(lock.getIdentityHashCode());
+                PlatformMonitor.LockContention contention = contentions.computeIfAbsent(identity, key ->
+                {
+                    PlatformMonitor.LockContention result = new PlatformMonitor.LockContention();
+                    result.lock = key;
+                    result.monitor = blocked;
+                    result.threads = new HashMap<>();
+                    result.owners = new HashMap<>();
+                    return result;
+                });
+                ++contention.samples;
+                contention.threads.merge(info.getThreadName(), 1L, Long::sum);
+                if (info.getLockOwnerName() != null)
+                    contention.owners.merge(info.getLockOwnerName(), 1L, Long::sum);
+            }
+        }
+    }
+
+    void stop(PlatformMonitor.Stop stop)
+    {
+        scheduler.shutdownNow();
+        try
+        {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException x)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this)
+        {
+            for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds(), 0))
+            {
+                if (info != null)
+                {
+                    lastCounters.put(info.getThreadId(), counters(info));
+                    names.put(info.getThreadId(), info.getThreadName());
+                }
+            }
+
+            boolean timed = threads.isThreadContentionMonitoringEnabled();
+            long[] totals = new long[4];
+            List<PlatformMonitor.ThreadContention> threadContentions = new ArrayList<>();
+            for (Map.Entry<Long, long[]> entry : lastCounters.entrySet())
+            {
+                long[] last = entry.getValue();
+                long[] first = startCounters.get(entry.getKey());
+                long[] deltas = new long[totals.length];
+                for (int i = 0; i < totals.length; ++i)
+                {
+                    deltas[i] = last[i] - (first == null ? 0 : first[i]);
+                    totals[i] += deltas[i];
+                }
+                if (deltas[0] == 0 && deltas[2] == 0)
+                    continue;
+                PlatformMonitor.ThreadContention threadContention = new PlatformMonitor.ThreadContention();
+                threadContention.name = names.get(entry.getKey());
+                threadContention.blockedCount = deltas[0];
+                threadContention.blockedTime = timed ? deltas[1] : -1;
+                threadContention.waitedCount = deltas[2];
+                threadContention.waitedTime = timed ? deltas[3] : -1;
+                threadContentions.add(threadContention);
+            }
+            threadContentions.sort(Comparator.comparingLong((PlatformMonitor.ThreadContention threadContention) -> threadContention.blockedTime)
+                    .thenComparingLong(threadContention -> threadContention.blockedCount)
+                    .reversed());
+            stop.threadContentions = threadContentions;
+            stop.blockedCount = totals[0];
+            stop.blockedTime = timed ? totals[1] : -1;
+            stop.waitedCount = totals[2];
+            stop.waitedTime = timed ? totals[3] : -1;
+
+            List<PlatformMonitor.LockContention> result = new ArrayList<>(contentions.values());
+            result.sort(Comparator.comparingLong((PlatformMonitor.LockContention contention) -> contention.samples).reversed());
+            stop.contentionSamples = samples;
+            stop.lockContentions = result;
+        }
+
+        if (threads.isThreadContentionMonitoringSupported())
+            threads.setThreadContentionMonitoringEnabled(contentionMonitoringEnabled);
+    }
+}
@@ -0,0 +1,208 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingStream;
+import org.HdrHistogram.Histogram;
+
+/**
+ * <p>Collects GC, allocation, JIT and thread CPU load information
+ * from JFR events streamed in-process, for {@link PlatformMonitor}.</p>
+ * <p>Events are delivered by JFR in batches, roughly every second,
+ * so {@link #stop(Instant, PlatformMonitor.Stop)} waits for the
+ * events up to the stop time to be delivered.</p>
+ */
+class FlightRecorderMonitor
+{
+    private static final long STOP_TIMEOUT = TimeUnit.SECONDS.toMillis(5);
+
+    private final Map<Long, Long> heapUsedBeforeGC = new HashMap<>();
+    private final Map<String, ThreadLoad> threadLoads = new HashMap<>();
+    private final Histogram gcPauses = new Histogram(3);
+    private final RecordingStream stream;
+    private volatile Instant startTime = Instant.MAX;
+    private volatile Instant stopTime = Instant.MAX;
+    private volatile CountDownLatch flushed;
+    private long gcCount;
+    private long gcPauseTime;
+    private long reclaimedBytes;
+    private long allocatedBytes;
+    private long jitCount;
+
+    FlightRecorderMonitor()
+    {
+        stream = new RecordingStream();
+        stream.enable("jdk.GarbageCollection");
+        stream.enable("jdk.GCHeapSummary");
+        stream.enable("jdk.ObjectAllocationSample");
+        stream.enable("jdk.Compilation").withThreshold(Duration.ZERO);
+        stream.enable("jdk.ThreadCPULoad").withPeriod(Duration.ofSeconds(1));
+        stream.onEvent("jdk.GarbageCollection", this::onGarbageCollection);
+        stream.onEvent("jdk.GCHeapSummary", this::onGCHeapSummary);
+        stream.onEvent("jdk.ObjectAllocationSample", this::onObjectAllocationSample);
+        stream.onEvent("jdk.Compilation", this::onCompilation);
+        stream.onEvent("jdk.ThreadCPULoad", this::onThreadCPULoad);
+        stream.onFlush(this::onFlush);
+    }
+
+    /**
+     * Starts the recording; events that happen before the given time are ignored.
+     *
+     * @param startTime the start of the monitoring window
+     */
+    void start(Instant startTime)
+    {
+        this.startTime = startTime;
+        stream.startAsync();
+    }
+
+    /**
+     * Stops the recording and fills the given {@link PlatformMonitor.Stop}
+     * with the information collected; events that happen after the given
+     * time are ignored.
+     *
+     * @param stopTime the end of the monitoring window
+     * @param stop the object to fill
+     */
+    void stop(Instant stopTime, PlatformMonitor.Stop stop)
+    {
+        this.stopTime = stopTime;
+        try
+        {
+            // Wait for two flushes, so that the events
+            // up to the stop time have been delivered.
+            CountDownLatch latch = new CountDownLatch(2);
+            flushed = latch;
+            latch.await(STOP_TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException x)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            stream.close();
+        }
+
+        synchronized (this)
+        {
+            stop.flightRecorderGCCount = gcCount;
+            stop.flightRecorderGCPauseTime = gcPauseTime;
+            stop.flightRecorderGCPauses = gcPauses.copy();
+            stop.flightRecorderReclaimedBytes = reclaimedBytes;
+            stop.allocatedBytes = allocatedBytes;
+            stop.jitCount = jitCount;
+            Map<String, Float> loads = new HashMap<>();
+            threadLoads.forEach((name, load) -> loads.put(name, load.average()));
+            stop.threadCPULoads = loads;
+        }
+    }
+
+    private boolean inWindow(RecordedEvent event)
+    {
+        Instant time = event.getStartTime();
+        return !time.isBefore(startTime) && !time.isAfter(stopTime);
+    }
+
+    private void onFlush()
+    {
+        CountDownLatch latch = flushed;
+        if (latch != null)
+            latch.countDown();
+    }
+
+    private synchronized void onGarbageCollection(RecordedEvent event)
+    {
+        if (!inWindow(event))
+            return;
+        long pauses = event.getDuration("sumOfPauses").toNanos();
+        ++gcCount;
+        gcPauseTime += pauses;
+        gcPauses.recordValue(pauses);
+    }
+
+    private synchronized void onGCHeapSummary(RecordedEvent event)
+    {
+        long gcId = event.getLong("gcId");
+        long heapUsed = event.getLong("heapUsed");
+        if ("Before GC".equals(event.getString("when")))
+        {
+            if (inWindow(event))
+                heapUsedBeforeGC.put(gcId, heapUsed);
+        }
+        else
+        {
+            Long before = heapUsedBeforeGC.remove(gcId);
+            if (before != null && before > heapUsed)
+                reclaimedBytes += before - heapUsed;
+        }
+    }
+
+    private synchronized void onObjectAllocationSample(RecordedEvent event)
+    {
+        if (inWindow(event))
+            allocatedBytes += event.getLong("weight");
+    }
+
+    private synchronized void onCompilation(RecordedEvent event)
+    {
+        if (!inWindow(event))
+            return;
+        ++jitCount;
+    }
+
+    private synchronized void onThreadCPULoad(RecordedEvent event)
+    {
+        if (!inWindow(event))
+            return;
+        RecordedThread thread = event.getThread();
+        if (thread == null)
+            return;
+        String name = thread.getJavaName();
+        if (name == null)
+            name = thread.getOSName();
+        float load = event.getFloat("user") + event.getFloat("system");
+        threadLoads.computeIfAbsent(name, key -> new ThreadLoad()).add(load);
+    }
+
+    private static class ThreadLoad
+    {
+        private double total;
+        private long samples;
+
+        private void add(float load)
+        {
+            total += load;
+            ++samples;
+        }
+
+        private float average()
+        {
+            return samples == 0 ? 0F : (float)(total / samples);
+        }
+    }
+}
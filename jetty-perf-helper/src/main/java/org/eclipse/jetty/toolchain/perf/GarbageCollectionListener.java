@@ -0,0 +1,222 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import org.HdrHistogram.Histogram;
+
+/**
+ * <p>Records every garbage collection that happens between {@link #start()}
+ * and {@link #stop(PlatformMonitor.Stop)}, via the notifications emitted
+ * by the {@link GarbageCollectorMXBean}s, for {@link PlatformMonitor}.</p>
+ * <p>Collections performed by collectors that run concurrently with the
+ * application (for example {@code "ZGC Cycles"}, see {@link MemoryLayout#isConcurrent(String)})
+ * are recorded as events,
+ * but their duration is not recorded as a pause.</p>
+ * <p>Only the most recent events are retained, up to a given capacity,
+ * so that long runs do not grow the events without bounds; the pauses,
+ * the reclaimed and promoted bytes account for all the collections.</p>
+ * <p>Notifications are delivered asynchronously, so {@link #stop(PlatformMonitor.Stop)}
+ * waits, up to {@link #NOTIFICATION_TIMEOUT} milliseconds, until the number of
+ * notifications received matches the number of collections reported by the
+ * collectors since {@link #start()}, so that the last collections are not lost.</p>
+ */
+class GarbageCollectionListener implements NotificationListener
+{
+    static final long NOTIFICATION_TIMEOUT = 1000;
+
+    private final List<GarbageCollectorMXBean> collectors;
+    private final Set<String> oldPools;
+    private final long jvmStartTime = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private final ArrayDeque<PlatformMonitor.GCEvent> events = new ArrayDeque<>();
+    private final int capacity;
+    private long notifications;
+    private final Histogram pauses = new Histogram(3);
+    private long pauseTime;
+    private long reclaimedBytes;
+    private long promotedBytes;
+    private long liveBytes = -1;
+    private long startCount;
+
+    /**
+     * @param collectors the collectors to listen to
+     * @param oldPools the names of the memory pools of the old generation
+     * @param capacity the max number of events retained
+     */
+    GarbageCollectionListener(List<GarbageCollectorMXBean> collectors, Set<String> oldPools, int capacity)
+    {
+        this.collectors = collectors;
+        this.oldPools = oldPools;
+        this.capacity = capacity;
+    }
+
+    void start()
+    {
+        for (GarbageCollectorMXBean collector : collectors)
+        {
+            if (collector instanceof NotificationEmitter)
+                ((NotificationEmitter)collector).addNotificationListener(this, null, null);
+        }
+        // Read the counts after registering the listener, so that
+        // no collection is counted without its notification.
+        startCount = collectionCount();
+    }
+
+    void stop(PlatformMonitor.Stop stop)
+    {
+        awaitNotifications(collectionCount() - startCount);
+
+        for (GarbageCollectorMXBean collector : collectors)
+        {
+            if (collector instanceof NotificationEmitter)
+            {
+                try
+                {
+                    ((NotificationEmitter)collector).removeNotificationListener(this);
+                }
+                catch (ListenerNotFoundException ignored)
+                {
+                }
+            }
+        }
+
+        synchronized (this)
+        {
+            stop.gcEvents = new ArrayList<>(events);
+            stop.droppedGCEvents = notifications - events.size();
+            stop.gcPauses = pauses.copy();
+            stop.gcCount = pauses.getTotalCount();
+            stop.gcPauseTime = pauseTime;
+            stop.reclaimedBytes = reclaimedBytes;
+            stop.promotedBytes = promotedBytes;
+            stop.liveBytes = liveBytes;
+        }
+    }
+
+    private long collectionCount()
+    {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : collectors)
+        {
+            if (collector instanceof NotificationEmitter)
+                count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private synchronized void awaitNotifications(long expected)
+    {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(NOTIFICATION_TIMEOUT);
+        while (notifications < expected)
+        {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0)
+                return;
+            try
+            {
+                wait(remaining);
+            }
+            catch (InterruptedException x)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback)
+    {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType()))
+            return;
+
+        GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData)notification.getUserData());
+        GcInfo gcInfo = info.getGcInfo();
+
+        PlatformMonitor.GCEvent event = new PlatformMonitor.GCEvent();
+        event.id = gcInfo.getId();
+        event.name = info.getGcName();
+        event.action = info.getGcAction();
+        event.cause = info.getGcCause();
+        event.date = jvmStartTime + gcInfo.getStartTime();
+        event.duration = gcInfo.getDuration();
+        event.pause = !MemoryLayout.isConcurrent(event.name);
+        event.before = gcInfo.getMemoryUsageBeforeGc();
+        event.after = gcInfo.getMemoryUsageAfterGc();
+
+        long oldBefore = 0;
+        long oldAfter = 0;
+        for (Map.Entry<String, MemoryUsage> entry : event.before.entrySet())
+        {
+            event.beforeBytes += entry.getValue().getUsed();
+            if (oldPools.contains(entry.getKey()))
+                oldBefore += entry.getValue().getUsed();
+        }
+        for (Map.Entry<String, MemoryUsage> entry : event.after.entrySet())
+        {
+            event.afterBytes += entry.getValue().getUsed();
+            if (oldPools.contains(entry.getKey()))
+                oldAfter += entry.getValue().getUsed();
+        }
+        if (isMinor(event.action) && oldAfter > oldBefore)
+            event.promotedBytes = oldAfter - oldBefore;
+
+        synchronized (this)
+        {
+            ++notifications;
+            if (capacity > 0)
+            {
+                if (events.size() == capacity)
+                    events.removeFirst();
+                events.addLast(event);
+            }
+            if (event.pause)
+            {
+                long nanos = TimeUnit.MILLISECONDS.toNanos(event.duration);
+                pauses.recordValue(nanos);
+                pauseTime += nanos;
+            }
+            if (event.beforeBytes > event.afterBytes)
+                reclaimedBytes += event.beforeBytes - event.afterBytes;
+            promotedBytes += event.promotedBytes;
+            liveBytes = event.afterBytes;
+            notifyAll();
+        }
+    }
+
+    private static boolean isMinor(String gcAction)
+    {
+        return gcAction.contains("minor");
+    }
+}
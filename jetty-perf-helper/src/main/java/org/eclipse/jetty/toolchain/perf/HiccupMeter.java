@@ -0,0 +1,97 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.util.concurrent.TimeUnit;
+import org.HdrHistogram.Histogram;
+
+/**
+ * <p>Measures the stalls of the platform between {@link #start()} and
+ * {@link #stop(PlatformMonitor.Stop)}, for {@link PlatformMonitor}.</p>
+ * <p>A dedicated thread repeatedly parks until the next of a series of
+ * deadlines spaced by a short interval, and records how late it woke up;
+ * since the thread does no work, any delay is imposed by the platform,
+ * for example safepoints, GC pauses, page faults, or the OS and hypervisor
+ * scheduling.</p>
+ * <p>The thread waits with {@link PlatformTimer#parkUntil(long)}, which
+ * does not spin so that the measurement takes no CPU away from the
+ * benchmark, and the {@link PlatformTimer#getParkResolution() park resolution}
+ * is subtracted from the delays, so that only the excess is recorded.</p>
+ * <p>Deadlines are computed from a fixed origin, so that after a stall the
+ * thread wakes up immediately until it catches up, and the delays of the
+ * wake-ups that should have happened during the stall are recorded as well,
+ * correcting for coordinated omission.</p>
+ */
+class HiccupMeter implements Runnable
+{
+    private final PlatformTimer timer;
+    private final long resolution;
+    private final Histogram hiccups = new Histogram(3);
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * @param timer the timer to wait with
+     * @param resolution the wait interval, in microseconds
+     */
+    HiccupMeter(PlatformTimer timer, long resolution)
+    {
+        this.timer = timer;
+        this.resolution = resolution;
+    }
+
+    void start()
+    {
+        running = true;
+        thread = new Thread(this, "PlatformMonitor-HiccupMeter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run()
+    {
+        long period = TimeUnit.MICROSECONDS.toNanos(resolution);
+        long slack = TimeUnit.MICROSECONDS.toNanos(timer.getParkResolution());
+        long deadline = System.nanoTime();
+        while (running)
+        {
+            deadline += period;
+            long delay = timer.parkUntil(deadline);
+            hiccups.recordValue(Math.max(0, delay - slack));
+        }
+    }
+
+    void stop(PlatformMonitor.Stop stop)
+    {
+        running = false;
+        try
+        {
+            thread.join();
+        }
+        catch (InterruptedException x)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(x);
+        }
+        thread = null;
+        stop.hiccups = hiccups.copy();
+        stop.hiccupResolution = resolution;
+    }
+}
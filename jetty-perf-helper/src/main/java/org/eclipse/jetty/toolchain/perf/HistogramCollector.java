@@ -0,0 +1,347 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.HdrHistogram.EncodableHistogram;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogReader;
+import org.HdrHistogram.HistogramLogWriter;
+
+/**
+ * Merges the interval histograms of multiple load generators, possibly
+ * running in different processes, into global histograms.
+ * <div>
+ * Percentiles cannot be averaged, so the latencies of multiple load generators
+ * can only be combined by merging their histograms.
+ * Load generators ship their interval histograms with a {@link HistogramPublisher},
+ * either over a socket, see {@link #listen(int)}, or via files in a shared
+ * directory, see {@link #collect(File)}.
+ * </div>
+ * <div>
+ * Interval histograms are aligned to the collector interval by their start
+ * timestamp, so that the intervals of different generators that fall in the
+ * same collector interval are merged together into a global interval histogram,
+ * see {@link #getIntervalHistograms()}; all interval histograms are also merged
+ * into a cumulative histogram, see {@link #getCumulativeHistogram()}.
+ * </div>
+ * <div>
+ * Typical usage:
+ * <pre>
+ * HistogramCollector collector = new HistogramCollector(1, TimeUnit.SECONDS);
+ * collector.listen(9998);
+ * // Run the load generators.
+ * System.err.println(collector.snapshot("Global Latency", "ms", null));
+ * </pre>
+ * </div>
+ */
+public class HistogramCollector implements AutoCloseable
+{
+    static final String LOG_EXTENSION = ".hlog";
+
+    private final NavigableMap<Long, Histogram> intervals = new TreeMap<>();
+    private final Set<String> sources = ConcurrentHashMap.newKeySet();
+    private final Set<ServerSocket> serverSockets = ConcurrentHashMap.newKeySet();
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final Map<File, Integer> collected = new HashMap<>();
+    private final long interval;
+    private Histogram cumulative;
+
+    /**
+     * @param interval the interval of the global interval histograms
+     * @param unit the unit of the interval
+     */
+    public HistogramCollector(long interval, TimeUnit unit)
+    {
+        this.interval = unit.toMillis(interval);
+        if (this.interval <= 0)
+            throw new IllegalArgumentException("Invalid interval " + interval + " " + unit);
+    }
+
+    /**
+     * @return the interval of the global interval histograms, in milliseconds
+     */
+    public long getInterval()
+    {
+        return interval;
+    }
+
+    /**
+     * @return the number of distinct sources, identified by the histogram tags,
+     * that contributed interval histograms
+     */
+    public int getSources()
+    {
+        return sources.size();
+    }
+
+    /**
+     * Merges the given interval histogram into the global histograms.
+     *
+     * @param histogram the interval histogram, with start timestamp set
+     */
+    public synchronized void add(Histogram histogram)
+    {
+        if (histogram.getStartTimeStamp() == Long.MAX_VALUE)
+            throw new IllegalArgumentException("Missing start timestamp");
+        if (histogram.getTag() != null)
+            sources.add(histogram.getTag());
+
+        long startTime = histogram.getStartTimeStamp();
+        long slot = Math.floorDiv(startTime, interval) * interval;
+        Histogram global = intervals.computeIfAbsent(slot, key -> new Histogram(histogram.getNumberOfSignificantValueDigits()));
+        global.add(histogram);
+        // Histogram.add() merges the timestamps, so reset them to the slot.
+        global.setStartTimeStamp(slot);
+        global.setEndTimeStamp(slot + interval);
+
+        if (cumulative == null)
+            cumulative = new Histogram(histogram.getNumberOfSignificantValueDigits());
+        cumulative.add(histogram);
+        cumulative.setStartTimeStamp(intervals.firstKey());
+        cumulative.setEndTimeStamp(intervals.lastKey() + interval);
+    }
+
+    /**
+     * Reads an HdrHistogram log until the end of the stream,
+     * merging its interval histograms.
+     *
+     * @param input the stream to read the log from
+     */
+    public void collect(InputStream input)
+    {
+        HistogramLogReader reader = new HistogramLogReader(input);
+        while (reader.hasNext())
+        {
+            EncodableHistogram histogram = reader.nextIntervalHistogram();
+            if (histogram instanceof Histogram)
+                add((Histogram)histogram);
+        }
+    }
+
+    /**
+     * Reads the HdrHistogram logs written by {@link HistogramPublisher#open(File, String)}
+     * in the given directory, merging their interval histograms.
+     * <div>
+     * This method can be called repeatedly, for example while the publishers
+     * are still writing: the interval histograms of each log already merged by
+     * a previous call are skipped, and only the complete lines are read.
+     * </div>
+     *
+     * @param directory the directory shared with the publishers
+     * @throws IOException if the logs cannot be read
+     */
+    public synchronized void collect(File directory) throws IOException
+    {
+        File[] logs = directory.listFiles((dir, name) -> name.endsWith(LOG_EXTENSION));
+        if (logs == null)
+            throw new IOException("Cannot list " + directory);
+        for (File log : logs)
+        {
+            File key = log.getAbsoluteFile();
+            byte[] bytes = Files.readAllBytes(key.toPath());
+            // Discard the line that the publisher may be writing.
+            int length = bytes.length;
+            while (length > 0 && bytes[length - 1] != '\n')
+            {
+                --length;
+            }
+            // The whole log is read again, since the interval
+            // timestamps are relative to the log headers.
+            HistogramLogReader reader = new HistogramLogReader(new ByteArrayInputStream(bytes, 0, length));
+            int skip = collected.getOrDefault(key, 0);
+            int count = 0;
+            while (reader.hasNext())
+            {
+                EncodableHistogram histogram = reader.nextIntervalHistogram();
+                if (histogram == null)
+                    break;
+                if (count++ >= skip && histogram instanceof Histogram)
+                    add((Histogram)histogram);
+            }
+            collected.put(key, count);
+        }
+    }
+
+    /**
+     * Listens on the loopback interface for {@link HistogramPublisher}
+     * connections, reading their histograms in daemon threads.
+     *
+     * @param port the port to listen to, or 0 for an ephemeral port
+     * @return the port the collector listens to
+     * @throws IOException if the collector cannot listen to the port
+     */
+    public int listen(int port) throws IOException
+    {
+        return listen(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * Listens on the given address for {@link HistogramPublisher}
+     * connections, reading their histograms in daemon threads.
+     *
+     * @param address the address to listen to
+     * @return the port the collector listens to
+     * @throws IOException if the collector cannot listen to the address
+     */
+    public int listen(InetSocketAddress address) throws IOException
+    {
+        ServerSocket serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(address);
+        serverSockets.add(serverSocket);
+        Thread acceptor = new Thread(() -> accept(serverSocket), "HistogramCollector-" + serverSocket.getLocalPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return serverSocket.getLocalPort();
+    }
+
+    private void accept(ServerSocket serverSocket)
+    {
+        while (!serverSocket.isClosed())
+        {
+            try
+            {
+                Socket socket = serverSocket.accept();
+                connections.add(socket);
+                Thread reader = new Thread(() -> read(socket), "HistogramCollector-" + socket.getRemoteSocketAddress());
+                reader.setDaemon(true);
+                reader.start();
+            }
+            catch (IOException x)
+            {
+                // The server socket has been closed.
+            }
+        }
+    }
+
+    private void read(Socket socket)
+    {
+        try (socket)
+        {
+            collect(socket.getInputStream());
+        }
+        catch (IOException x)
+        {
+            // The publisher disconnected.
+        }
+        finally
+        {
+            connections.remove(socket);
+        }
+    }
+
+    /**
+     * @return the number of publishers currently connected
+     */
+    public int getConnections()
+    {
+        return connections.size();
+    }
+
+    /**
+     * @return a copy of the global interval histograms, indexed by their
+     * start timestamp in milliseconds since the epoch
+     */
+    public synchronized NavigableMap<Long, Histogram> getIntervalHistograms()
+    {
+        NavigableMap<Long, Histogram> result = new TreeMap<>();
+        for (Map.Entry<Long, Histogram> entry : intervals.entrySet())
+        {
+            result.put(entry.getKey(), entry.getValue().copy());
+        }
+        return result;
+    }
+
+    /**
+     * @return a copy of the histogram that merges all interval histograms
+     */
+    public synchronized Histogram getCumulativeHistogram()
+    {
+        return cumulative == null ? new Histogram(3) : cumulative.copy();
+    }
+
+    /**
+     * @param name the name of the snapshot
+     * @param unit the unit of the converted values
+     * @param converter the converter of the values, or null to convert nanoseconds to milliseconds
+     * @return a snapshot of the cumulative histogram
+     */
+    public HistogramSnapshot snapshot(String name, String unit, MeasureConverter converter)
+    {
+        return new HistogramSnapshot(getCumulativeHistogram(), 32, name, unit, converter);
+    }
+
+    /**
+     * Writes the global interval histograms as an HdrHistogram log.
+     *
+     * @param output the stream to write the log to
+     * @param name the tag of the histograms in the log
+     */
+    public void writeLog(OutputStream output, String name)
+    {
+        NavigableMap<Long, Histogram> histograms = getIntervalHistograms();
+        long startTime = histograms.isEmpty() ? System.currentTimeMillis() : histograms.firstKey();
+        HistogramLogWriter writer = HistogramSnapshot.newLogWriter(output, startTime);
+        for (Histogram histogram : histograms.values())
+        {
+            new HistogramSnapshot(histogram, 32, name, "ms", null).writeLog(writer);
+        }
+    }
+
+    /**
+     * Stops listening and closes the connections of the publishers.
+     *
+     * @throws IOException if the sockets cannot be closed
+     */
+    @Override
+    public void close() throws IOException
+    {
+        for (ServerSocket serverSocket : serverSockets)
+        {
+            serverSocket.close();
+        }
+        for (Socket connection : connections)
+        {
+            connection.close();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[interval=%dms,sources=%d,connections=%d]", getClass().getSimpleName(), hashCode(), interval, getSources(), getConnections());
+    }
+}
@@ -0,0 +1,554 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import org.HdrHistogram.EncodableHistogram;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramIterationValue;
+import org.HdrHistogram.HistogramLogReader;
+
+/**
+ * Compares two histograms of the same measure, typically the latencies
+ * of two benchmark runs, to decide whether the candidate run regressed
+ * with respect to the baseline run.
+ * <div>
+ * For each configured percentile, the relative delta between candidate
+ * and baseline is computed along with its one-sided lower and upper confidence
+ * bounds, estimated with a Poisson bootstrap of the histograms bucket counts.
+ * A percentile regresses when its lower confidence bound is greater than the
+ * maximum regression configured for that percentile, that is when we are
+ * confident that the regression is larger than allowed; since the gate is
+ * one-sided, with a confidence of 95% the lower bound is the 5th percentile
+ * of the bootstrap distribution of the delta.
+ * </div>
+ * <div>
+ * The Mann-Whitney U rank test is also performed on the whole distributions,
+ * and its one-sided p-value reported, to tell whether the candidate values
+ * are stochastically larger than the baseline values.
+ * </div>
+ * <div>
+ * Typical usage from the command line, with HdrHistogram logs produced for
+ * example by {@link HistogramSnapshot#writeLog(org.HdrHistogram.HistogramLogWriter)}:
+ * <pre>
+ * java -cp ... org.eclipse.jetty.toolchain.perf.HistogramComparator \
+ *     --gate 99:5 --gate 50:10 --confidence 95 baseline.hlog candidate.hlog
+ * </pre>
+ * The process exits with code 0 if no percentile regressed, 1 if a regression
+ * was detected, 2 in case of errors.
+ * </div>
+ */
+public class HistogramComparator
+{
+    private final Map<Double, Double> gates = new TreeMap<>();
+    private double confidence = 0.95;
+    private int iterations = 1000;
+    private long seed = 0x5EED;
+
+    /**
+     * @return the confidence level of the one-sided confidence bounds, between 0 and 1
+     */
+    public double getConfidence()
+    {
+        return confidence;
+    }
+
+    public void setConfidence(double confidence)
+    {
+        if (confidence <= 0 || confidence >= 1)
+            throw new IllegalArgumentException("Invalid confidence " + confidence);
+        this.confidence = confidence;
+    }
+
+    /**
+     * @return the number of bootstrap iterations
+     */
+    public int getIterations()
+    {
+        return iterations;
+    }
+
+    public void setIterations(int iterations)
+    {
+        if (iterations < 10)
+            throw new IllegalArgumentException("Invalid iterations " + iterations);
+        this.iterations = iterations;
+    }
+
+    /**
+     * @param seed the seed of the random generator used by the bootstrap, for reproducible results
+     */
+    public void setSeed(long seed)
+    {
+        this.seed = seed;
+    }
+
+    /**
+     * <p>Adds a percentile to compare, with the maximum regression allowed.</p>
+     * <p>For example, {@code addGate(99, 0.05)} means that the 99th percentile
+     * may not regress more than 5%.</p>
+     * <p>If no gate is added, the 50th, 90th, 99th and 99.9th percentiles
+     * are compared, with a maximum regression of 5%.</p>
+     *
+     * @param percentile the percentile to compare, between 0 and 100
+     * @param maxRegression the maximum relative regression allowed, for example 0.05 for 5%
+     */
+    public void addGate(double percentile, double maxRegression)
+    {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("Invalid percentile " + percentile);
+        gates.put(percentile, maxRegression);
+    }
+
+    /**
+     * Compares the given histograms.
+     *
+     * @param baseline the baseline histogram
+     * @param candidate the candidate histogram
+     * @return the result of the comparison
+     */
+    public Result compare(Histogram baseline, Histogram candidate)
+    {
+        if (baseline.getTotalCount() == 0 || candidate.getTotalCount() == 0)
+            throw new IllegalArgumentException("Cannot compare empty histograms");
+
+        Map<Double, Double> gates = this.gates;
+        if (gates.isEmpty())
+        {
+            gates = new TreeMap<>();
+            for (double percentile : new double[]{50, 90, 99, 99.9})
+            {
+                gates.put(percentile, 0.05);
+            }
+        }
+        double[] percentiles = new double[gates.size()];
+        int index = 0;
+        for (double percentile : gates.keySet())
+        {
+            percentiles[index++] = percentile;
+        }
+
+        Buckets baselineBuckets = new Buckets(baseline);
+        Buckets candidateBuckets = new Buckets(candidate);
+        double[][] deltas = new double[percentiles.length][iterations];
+        long[] baselineValues = new long[percentiles.length];
+        long[] candidateValues = new long[percentiles.length];
+        Random random = new Random(seed);
+        for (int i = 0; i < iterations; ++i)
+        {
+            baselineBuckets.resample(random);
+            baselineBuckets.percentiles(percentiles, baselineValues);
+            candidateBuckets.resample(random);
+            candidateBuckets.percentiles(percentiles, candidateValues);
+            for (int p = 0; p < percentiles.length; ++p)
+            {
+                deltas[p][i] = delta(baselineValues[p], candidateValues[p]);
+            }
+        }
+
+        Result result = new Result();
+        // The gate only tests for regressions, so the bounds are one-sided.
+        double alpha = 1 - confidence;
+        for (int p = 0; p < percentiles.length; ++p)
+        {
+            double[] samples = deltas[p];
+            Arrays.sort(samples);
+            PercentileDelta delta = new PercentileDelta();
+            delta.percentile = percentiles[p];
+            delta.baseline = baseline.getValueAtPercentile(delta.percentile);
+            delta.candidate = candidate.getValueAtPercentile(delta.percentile);
+            delta.delta = delta(delta.baseline, delta.candidate);
+            delta.lower = samples[(int)Math.floor(alpha * (iterations - 1))];
+            delta.upper = samples[(int)Math.ceil((1 - alpha) * (iterations - 1))];
+            delta.maxRegression = gates.get(delta.percentile);
+            delta.regressed = delta.lower > delta.maxRegression;
+            result.deltas.add(delta);
+        }
+        result.confidence = confidence;
+        // Rank the values at the resolution of the least precise histogram,
+        // otherwise its wider buckets would systematically rank higher.
+        Histogram coarser = baseline.getNumberOfSignificantValueDigits() <= candidate.getNumberOfSignificantValueDigits() ? baseline : candidate;
+        result.pValue = mannWhitney(coarser, baselineBuckets, candidateBuckets);
+        return result;
+    }
+
+    private static double delta(long baseline, long candidate)
+    {
+        if (baseline == 0)
+            return candidate == 0 ? 0 : Double.POSITIVE_INFINITY;
+        return (double)candidate / baseline - 1;
+    }
+
+    /**
+     * @return the one-sided p-value of the Mann-Whitney U test,
+     * with the alternative hypothesis that the candidate values
+     * are stochastically larger than the baseline values
+     */
+    private static double mannWhitney(Histogram resolution, Buckets baseline, Buckets candidate)
+    {
+        // Merge the recorded values of the two histograms in ascending order.
+        double n1 = 0;
+        double n2 = 0;
+        double u = 0;
+        double ties = 0;
+        int b = 0;
+        int c = 0;
+        while (b < baseline.values.length || c < candidate.values.length)
+        {
+            long v = Math.min(b < baseline.values.length ? resolution.highestEquivalentValue(baseline.values[b]) : Long.MAX_VALUE,
+                    c < candidate.values.length ? resolution.highestEquivalentValue(candidate.values[c]) : Long.MAX_VALUE);
+            double baselineCount = 0;
+            while (b < baseline.values.length && resolution.highestEquivalentValue(baseline.values[b]) == v)
+            {
+                baselineCount += baseline.counts[b++];
+            }
+            double candidateCount = 0;
+            while (c < candidate.values.length && resolution.highestEquivalentValue(candidate.values[c]) == v)
+            {
+                candidateCount += candidate.counts[c++];
+            }
+            u += candidateCount * (n1 + baselineCount / 2);
+            n1 += baselineCount;
+            n2 += candidateCount;
+            double t = baselineCount + candidateCount;
+            ties += t * t * t - t;
+        }
+
+        double n = n1 + n2;
+        double mean = n1 * n2 / 2;
+        double variance = n1 * n2 / 12 * ((n + 1) - ties / (n * (n - 1)));
+        if (variance <= 0)
+            return 0.5;
+        double z = (u - mean) / Math.sqrt(variance);
+        return 1 - normalCDF(z);
+    }
+
+    private static double normalCDF(double z)
+    {
+        return 0.5 * erfc(-z / Math.sqrt(2));
+    }
+
+    private static double erfc(double x)
+    {
+        // Chebyshev approximation from Numerical Recipes, relative error < 1.2e-7.
+        double z = Math.abs(x);
+        double t = 1 / (1 + 0.5 * z);
+        double r = t * Math.exp(-z * z - 1.26551223 + t * (1.00002368 + t * (0.37409196 + t * (0.09678418 +
+                t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587 +
+                t * (-0.82215223 + t * 0.17087277)))))))));
+        return x >= 0 ? r : 2 - r;
+    }
+
+    /**
+     * Loads the interval histograms of the given HdrHistogram logs and merges them in one histogram.
+     *
+     * @param tag the tag of the interval histograms to load, or null to load all the interval histograms
+     * @param logs the HdrHistogram log files
+     * @return the merged histogram
+     * @throws IOException if the logs cannot be read
+     */
+    public static Histogram load(String tag, File... logs) throws IOException
+    {
+        Histogram result = null;
+        for (File log : logs)
+        {
+            try (HistogramLogReader reader = new HistogramLogReader(log))
+            {
+                while (reader.hasNext())
+                {
+                    EncodableHistogram interval = reader.nextIntervalHistogram();
+                    if (!(interval instanceof Histogram))
+                        continue;
+                    if (tag != null && !tag.equals(interval.getTag()))
+                        continue;
+                    Histogram histogram = (Histogram)interval;
+                    if (result == null)
+                        result = new Histogram(histogram.getNumberOfSignificantValueDigits());
+                    result.add(histogram);
+                }
+            }
+        }
+        if (result == null)
+            throw new IOException("No histograms in " + Arrays.toString(logs));
+        return result;
+    }
+
+    public static void main(String[] args)
+    {
+        HistogramComparator comparator = new HistogramComparator();
+        String tag = null;
+        List<File> files = new ArrayList<>();
+        try
+        {
+            for (int i = 0; i < args.length; ++i)
+            {
+                String arg = args[i];
+                switch (arg)
+                {
+                    case "--gate":
+                        String[] gate = args[++i].split(":");
+                        comparator.addGate(Double.parseDouble(gate[0]), Double.parseDouble(gate[1]) / 100);
+                        break;
+                    case "--confidence":
+                        comparator.setConfidence(Double.parseDouble(args[++i]) / 100);
+                        break;
+                    case "--iterations":
+                        comparator.setIterations(Integer.parseInt(args[++i]));
+                        break;
+                    case "--seed":
+                        comparator.setSeed(Long.parseLong(args[++i]));
+                        break;
+                    case "--tag":
+                        tag = args[++i];
+                        break;
+                    default:
+                        files.add(new File(arg));
+                        break;
+                }
+            }
+            if (files.size() < 2)
+            {
+                System.err.printf("Usage: %s [--gate percentile:maxRegressionPercent]... [--confidence percent] " +
+                        "[--iterations n] [--seed n] [--tag tag] baseline.hlog candidate.hlog...%n",
+                        HistogramComparator.class.getName());
+                System.exit(2);
+            }
+
+            Histogram baseline = load(tag, files.get(0));
+            boolean regressed = false;
+            for (File file : files.subList(1, files.size()))
+            {
+                Result result = comparator.compare(baseline, load(tag, file));
+                System.out.printf("%s vs %s%n%s%n", files.get(0), file, result);
+                regressed |= !result.isPassed();
+            }
+            System.exit(regressed ? 1 : 0);
+        }
+        catch (Throwable x)
+        {
+            x.printStackTrace();
+            System.exit(2);
+        }
+    }
+
+    /**
+     * The bucket values and counts of a histogram, resampled by the bootstrap.
+     */
+    private static class Buckets
+    {
+        private final long[] values;
+        private final long[] counts;
+        private final long[] resampled;
+        private long total;
+
+        private Buckets(Histogram histogram)
+        {
+            int size = 0;
+            for (HistogramIterationValue ignored : histogram.recordedValues())
+            {
+                ++size;
+            }
+            values = new long[size];
+            counts = new long[size];
+            resampled = new long[size];
+            int index = 0;
+            for (HistogramIterationValue value : histogram.recordedValues())
+            {
+                values[index] = histogram.highestEquivalentValue(value.getValueIteratedTo());
+                counts[index] = value.getCountAtValueIteratedTo();
+                ++index;
+            }
+        }
+
+        private void resample(Random random)
+        {
+            total = 0;
+            for (int i = 0; i < counts.length; ++i)
+            {
+                long count = poisson(random, counts[i]);
+                resampled[i] = count;
+                total += count;
+            }
+        }
+
+        private static long poisson(Random random, long mean)
+        {
+            if (mean > 30)
+                return Math.max(0, Math.round(mean + Math.sqrt(mean) * random.nextGaussian()));
+            // Knuth's algorithm for small means.
+            double limit = Math.exp(-mean);
+            double product = random.nextDouble();
+            long result = 0;
+            while (product > limit)
+            {
+                ++result;
+                product *= random.nextDouble();
+            }
+            return result;
+        }
+
+        private void percentiles(double[] percentiles, long[] results)
+        {
+            long count = 0;
+            int index = 0;
+            for (int p = 0; p < percentiles.length; ++p)
+            {
+                long target = Math.max(1, (long)Math.ceil(percentiles[p] / 100 * total));
+                while (index < values.length - 1 && count + resampled[index] < target)
+                {
+                    count += resampled[index];
+                    ++index;
+                }
+                results[p] = values[index];
+            }
+        }
+    }
+
+    /**
+     * The comparison of a percentile between baseline and candidate.
+     */
+    public static class PercentileDelta
+    {
+        private double percentile;
+        private long baseline;
+        private long candidate;
+        private double delta;
+        private double lower;
+        private double upper;
+        private double maxRegression;
+        private boolean regressed;
+
+        public double getPercentile()
+        {
+            return percentile;
+        }
+
+        public long getBaseline()
+        {
+            return baseline;
+        }
+
+        public long getCandidate()
+        {
+            return candidate;
+        }
+
+        /**
+         * @return the relative delta between candidate and baseline, for example 0.1 for a 10% regression
+         */
+        public double getDelta()
+        {
+            return delta;
+        }
+
+        /**
+         * @return the one-sided lower confidence bound of the delta
+         */
+        public double getLower()
+        {
+            return lower;
+        }
+
+        /**
+         * @return the one-sided upper confidence bound of the delta
+         */
+        public double getUpper()
+        {
+            return upper;
+        }
+
+        public double getMaxRegression()
+        {
+            return maxRegression;
+        }
+
+        public boolean isRegressed()
+        {
+            return regressed;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("p%s: %,d -> %,d (%+.2f%%, bounds [%+.2f%%, %+.2f%%], max %+.2f%%) %s",
+                    percentile,
+                    baseline,
+                    candidate,
+                    delta * 100,
+                    lower * 100,
+                    upper * 100,
+                    maxRegression * 100,
+                    regressed ? "REGRESSED" : "ok");
+        }
+    }
+
+    /**
+     * The result of a comparison between baseline and candidate.
+     */
+    public static class Result
+    {
+        private final List<PercentileDelta> deltas = new ArrayList<>();
+        private double confidence;
+        private double pValue;
+
+        public List<PercentileDelta> getDeltas()
+        {
+            return deltas;
+        }
+
+        /**
+         * @return the one-sided p-value of the Mann-Whitney U test that
+         * the candidate values are larger than the baseline values
+         */
+        public double getPValue()
+        {
+            return pValue;
+        }
+
+        /**
+         * @return whether no percentile regressed
+         */
+        public boolean isPassed()
+        {
+            return deltas.stream().noneMatch(PercentileDelta::isRegressed);
+        }
+
+        @Override
+        public String toString()
+        {
+            String eol = System.lineSeparator();
+            StringBuilder builder = new StringBuilder();
+            for (PercentileDelta delta : deltas)
+            {
+                builder.append(delta).append(eol);
+            }
+            builder.append(String.format("Mann-Whitney U one-sided p-value: %.4f%s", pValue,
+                    pValue < 1 - confidence ? " (candidate significantly larger)" : "")).append(eol);
+            builder.append(String.format("Verdict at %.1f%% confidence: %s", confidence * 100, isPassed() ? "PASS" : "FAIL"));
+            return builder.toString();
+        }
+    }
+}
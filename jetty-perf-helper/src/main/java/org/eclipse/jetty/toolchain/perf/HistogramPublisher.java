@@ -0,0 +1,137 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+
+/**
+ * Ships interval histograms from a load generator to a {@link HistogramCollector}.
+ * <div>
+ * Histograms are written in the HdrHistogram log format, which stores each
+ * interval histogram in the HdrHistogram compressed encoding, either to a
+ * {@link HistogramCollector} socket, see {@link #connect(String, int, String)},
+ * or to a file in a directory shared with the collector, see
+ * {@link #open(File, String)}.
+ * </div>
+ * <div>
+ * Typical usage, in each load generator:
+ * <pre>
+ * LatencyRecorder recorder = new LatencyRecorder();
+ * try (HistogramPublisher publisher = HistogramPublisher.connect("collector", 9998, "generator1"))
+ * {
+ *     while (running)
+ *     {
+ *         Thread.sleep(1000);
+ *         publisher.publish(recorder.intervalHistogram());
+ *     }
+ * }
+ * </pre>
+ * </div>
+ * <div>
+ * The interval histograms must have their start and end timestamps set,
+ * in milliseconds since the epoch, as {@link LatencyRecorder#intervalHistogram()}
+ * does, so that the collector can align the intervals of different generators.
+ * </div>
+ */
+public class HistogramPublisher implements AutoCloseable
+{
+    private final OutputStream output;
+    private final HistogramLogWriter writer;
+    private final String name;
+
+    /**
+     * @param output the stream to write the histograms to
+     * @param name the name of this publisher, written as the tag of the histograms
+     */
+    public HistogramPublisher(OutputStream output, String name)
+    {
+        this.output = output;
+        this.writer = HistogramSnapshot.newLogWriter(output, System.currentTimeMillis());
+        this.name = name;
+    }
+
+    /**
+     * Creates a publisher that sends histograms to a {@link HistogramCollector}
+     * listening on the given host and port.
+     *
+     * @param host the host of the collector
+     * @param port the port of the collector
+     * @param name the name of the publisher
+     * @return a new publisher
+     * @throws IOException if the connection to the collector fails
+     * @see HistogramCollector#listen(int)
+     */
+    public static HistogramPublisher connect(String host, int port, String name) throws IOException
+    {
+        Socket socket = new Socket(host, port);
+        return new HistogramPublisher(new BufferedOutputStream(socket.getOutputStream()), name);
+    }
+
+    /**
+     * Creates a publisher that writes histograms to a file named after
+     * the publisher, in the given directory.
+     *
+     * @param directory the directory shared with the collector
+     * @param name the name of the publisher
+     * @return a new publisher
+     * @throws IOException if the file cannot be created
+     * @see HistogramCollector#collect(File)
+     */
+    public static HistogramPublisher open(File directory, String name) throws IOException
+    {
+        File file = new File(directory, name + HistogramCollector.LOG_EXTENSION);
+        return new HistogramPublisher(new BufferedOutputStream(new FileOutputStream(file)), name);
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Publishes the given interval histogram.
+     *
+     * @param interval the interval histogram, with start and end timestamps set
+     * @throws IOException if the histogram cannot be written
+     */
+    public void publish(Histogram interval) throws IOException
+    {
+        new HistogramSnapshot(interval, 32, name, "ms", null).writeLog(writer);
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        output.close();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[%s]", getClass().getSimpleName(), hashCode(), name);
+    }
+}
@@ -18,17 +18,37 @@
 
 package org.eclipse.jetty.toolchain.perf;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
 import java.util.concurrent.TimeUnit;
 import org.HdrHistogram.Histogram;
 import org.HdrHistogram.HistogramIterationValue;
+import org.HdrHistogram.HistogramLogWriter;
 
+/**
+ * Formats a {@link Histogram} as an ASCII distribution curve, see {@link #toString()}.
+ * <div>
+ * The histogram can also be exported in machine-readable formats:
+ * <ul>
+ * <li>a JSON percentile spectrum, see {@link #writeJSON(Appendable)}</li>
+ * <li>a CSV percentile distribution, see {@link #writeCSV(Appendable)}</li>
+ * <li>an interval of a HdrHistogram log, see {@link #writeLog(HistogramLogWriter)}</li>
+ * </ul>
+ * The JSON and CSV formats report both the values converted with the
+ * {@link MeasureConverter} and the raw values, so that no precision is lost.
+ * </div>
+ */
 public class HistogramSnapshot implements MeasureConverter
 {
+    private static final int PERCENTILE_TICKS_PER_HALF_DISTANCE = 5;
+
     private final Histogram histogram;
     private final long buckets;
     private final String name;
     private final String unit;
     private final MeasureConverter converter;
+    private final double unitRatio;
 
     public HistogramSnapshot(Histogram histogram)
     {
@@ -40,13 +60,42 @@ public class HistogramSnapshot implements MeasureConverter
         this(histogram, buckets, "Measures", "ms", null);
     }
 
+    /**
+     * <p>If the converter is null, values are converted from nanoseconds to milliseconds;
+     * otherwise the number of raw units per converted unit is not known, and the
+     * HdrHistogram log and the {@link HtmlReport} use the converter, with its precision,
+     * see {@link #HistogramSnapshot(Histogram, long, String, String, MeasureConverter, double)}.</p>
+     *
+     * @param histogram the histogram
+     * @param buckets the number of buckets of the ASCII distribution curve
+     * @param name the name of the histogram
+     * @param unit the unit of the converted values
+     * @param converter the converter of the raw values, or null
+     */
     public HistogramSnapshot(Histogram histogram, long buckets, String name, String unit, MeasureConverter converter)
     {
+        this(histogram, buckets, name, unit, converter, converter == null ? TimeUnit.MILLISECONDS.toNanos(1) : Double.NaN);
+    }
+
+    /**
+     * @param histogram the histogram
+     * @param buckets the number of buckets of the ASCII distribution curve
+     * @param name the name of the histogram
+     * @param unit the unit of the converted values
+     * @param converter the converter of the raw values, or null
+     * @param unitRatio the number of raw units per converted unit, for example
+     * 1000 for raw values in microseconds converted to milliseconds
+     */
+    public HistogramSnapshot(Histogram histogram, long buckets, String name, String unit, MeasureConverter converter, double unitRatio)
+    {
+        if (!Double.isNaN(unitRatio) && !(unitRatio > 0))
+            throw new IllegalArgumentException("Invalid unit ratio " + unitRatio);
         this.histogram = histogram;
         this.buckets = buckets;
         this.name = name;
         this.unit = unit;
         this.converter = converter == null ? this : converter;
+        this.unitRatio = unitRatio;
     }
 
     @Override
@@ -55,6 +104,165 @@ public class HistogramSnapshot implements MeasureConverter
         return TimeUnit.NANOSECONDS.toMillis(measure);
     }
 
+    public Histogram getHistogram()
+    {
+        return histogram;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public String getUnit()
+    {
+        return unit;
+    }
+
+    /**
+     * @return the number of raw units per converted unit, or NaN if not known
+     */
+    public double getUnitRatio()
+    {
+        return unitRatio;
+    }
+
+    /**
+     * Writes the percentile spectrum of the histogram in JSON format.
+     *
+     * @param output where to write the JSON
+     * @throws IOException if the write fails
+     */
+    public void writeJSON(Appendable output) throws IOException
+    {
+        output.append("{\"name\":\"").append(escapeJSON(name)).append("\",");
+        output.append("\"unit\":\"").append(escapeJSON(unit)).append("\",");
+        output.append("\"count\":").append(String.valueOf(histogram.getTotalCount())).append(",");
+        output.append("\"min\":").append(String.valueOf(converter.convert(histogram.getMinValue()))).append(",");
+        output.append("\"mean\":").append(String.valueOf(converter.convert(Math.round(histogram.getMean())))).append(",");
+        output.append("\"max\":").append(String.valueOf(converter.convert(histogram.getMaxValue()))).append(",");
+        output.append("\"rawMin\":").append(String.valueOf(histogram.getMinValue())).append(",");
+        output.append("\"rawMean\":").append(String.valueOf(histogram.getMean())).append(",");
+        output.append("\"rawStdDeviation\":").append(String.valueOf(histogram.getStdDeviation())).append(",");
+        output.append("\"rawMax\":").append(String.valueOf(histogram.getMaxValue())).append(",");
+        output.append("\"percentiles\":[");
+        boolean first = true;
+        if (histogram.getTotalCount() > 0)
+        {
+            for (HistogramIterationValue value : histogram.percentiles(PERCENTILE_TICKS_PER_HALF_DISTANCE))
+            {
+                if (!first)
+                    output.append(",");
+                first = false;
+                long rawValue = value.getValueIteratedTo();
+                output.append("{\"percentile\":").append(String.valueOf(value.getPercentileLevelIteratedTo()));
+                output.append(",\"value\":").append(String.valueOf(converter.convert(rawValue)));
+                output.append(",\"rawValue\":").append(String.valueOf(rawValue));
+                output.append(",\"count\":").append(String.valueOf(value.getTotalCountToThisValue()));
+                output.append("}");
+            }
+        }
+        output.append("]}");
+    }
+
+    private static String escapeJSON(String value)
+    {
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); ++i)
+        {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\')
+                builder.append('\\').append(c);
+            else if (c < ' ')
+                builder.append(String.format("\\u%04x", (int)c));
+            else
+                builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Writes the percentile distribution of the histogram in CSV format.
+     * <div>
+     * The columns are the percentile, the converted value, the raw value,
+     * the total count up to that value and {@code 1/(1-percentile)}, which
+     * is the scale usually used to plot the percentile distribution.
+     * </div>
+     *
+     * @param output where to write the CSV
+     * @throws IOException if the write fails
+     */
+    public void writeCSV(Appendable output) throws IOException
+    {
+        String eol = System.lineSeparator();
+        output.append("\"Percentile\",\"Value (").append(unit.replace("\"", "\"\"")).append(")\",\"RawValue\",\"TotalCount\",\"1/(1-Percentile)\"").append(eol);
+        if (histogram.getTotalCount() == 0)
+            return;
+        for (HistogramIterationValue value : histogram.percentiles(PERCENTILE_TICKS_PER_HALF_DISTANCE))
+        {
+            double percentile = value.getPercentileLevelIteratedTo();
+            long rawValue = value.getValueIteratedTo();
+            output.append(String.format(Locale.ROOT, "%.6f,%d,%d,%d,%s",
+                    percentile / 100D,
+                    converter.convert(rawValue),
+                    rawValue,
+                    value.getTotalCountToThisValue(),
+                    percentile < 100D ? String.format(Locale.ROOT, "%.2f", 1D / (1D - percentile / 100D)) : "Infinity"));
+            output.append(eol);
+        }
+    }
+
+    /**
+     * Writes the histogram as an interval of a HdrHistogram log.
+     * <div>
+     * The histogram is tagged with the name of this snapshot and its values
+     * are written without loss; the interval max value column is scaled
+     * using the {@link #getUnitRatio() unit ratio}, if known.
+     * If the histogram has no start timestamp, the log base time is used.
+     * </div>
+     *
+     * @param writer the log writer, typically created with {@link #newLogWriter(OutputStream, long)}
+     * @see org.HdrHistogram.HistogramLogReader
+     */
+    public void writeLog(HistogramLogWriter writer)
+    {
+        long baseTime = writer.getBaseTime();
+        long startTime = histogram.getStartTimeStamp() == Long.MAX_VALUE ? baseTime : histogram.getStartTimeStamp();
+        long endTime = Math.max(startTime, histogram.getEndTimeStamp());
+        Histogram tagged = histogram.copy();
+        tagged.setTag(name.replaceAll("[\\s,]", "_"));
+        writer.outputIntervalHistogram((startTime - baseTime) / 1000D, (endTime - baseTime) / 1000D, tagged, Double.isNaN(unitRatio) ? 1D : unitRatio);
+    }
+
+    /**
+     * @param value the raw value
+     * @return the value converted with the {@link #getUnitRatio() unit ratio},
+     * or with the {@link MeasureConverter} if the ratio is not known
+     */
+    double toUnit(long value)
+    {
+        if (Double.isNaN(unitRatio))
+            return converter.convert(value);
+        return value / unitRatio;
+    }
+
+    /**
+     * Creates a {@link HistogramLogWriter} and writes the log headers.
+     *
+     * @param output where to write the log
+     * @param startTime the start time of the log, in milliseconds since the epoch
+     * @return a log writer to pass to {@link #writeLog(HistogramLogWriter)}
+     */
+    public static HistogramLogWriter newLogWriter(OutputStream output, long startTime)
+    {
+        HistogramLogWriter writer = new HistogramLogWriter(output);
+        writer.outputLogFormatVersion();
+        writer.outputStartTime(startTime);
+        writer.setBaseTime(startTime);
+        writer.outputLegend();
+        return writer;
+    }
+
     @Override
     public String toString()
     {
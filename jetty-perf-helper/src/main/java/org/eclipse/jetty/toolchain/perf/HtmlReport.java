@@ -0,0 +1,573 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramIterationValue;
+
+/**
+ * Generates a self-contained HTML report of a benchmark run.
+ * <div>
+ * The report combines the platform information from {@link PlatformMonitor.Start},
+ * the summary from {@link PlatformMonitor.Stop}, the percentile spectrum of one
+ * or more {@link HistogramSnapshot}s, and the {@link Timeline} and GC pauses,
+ * if available, in a single HTML file where plots are inline SVG, so that it
+ * can be archived and opened without network access or external scripts.
+ * </div>
+ * <div>
+ * Typical usage:
+ * <pre>
+ * HtmlReport report = new HtmlReport("Jetty HTTP/2 Throughput");
+ * report.setStart(start);
+ * report.setStop(stop);
+ * report.addHistogram(new HistogramSnapshot(histogram, 32, "Response Time", "ms", null));
+ * report.write(Path.of("report.html"));
+ * </pre>
+ * </div>
+ */
+public class HtmlReport
+{
+    private static final String[] COLORS = {"#1f77b4", "#d62728", "#2ca02c", "#ff7f0e", "#9467bd", "#8c564b", "#e377c2", "#7f7f7f"};
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+    private static final int WIDTH = 760;
+    private static final int HEIGHT = 320;
+    private static final int MARGIN_LEFT = 70;
+    private static final int MARGIN_RIGHT = 20;
+    private static final int MARGIN_TOP = 30;
+    private static final int MARGIN_BOTTOM = 45;
+
+    private final List<HistogramSnapshot> histograms = new ArrayList<>();
+    private final String title;
+    private PlatformMonitor.Start start;
+    private PlatformMonitor.Stop stop;
+
+    public HtmlReport(String title)
+    {
+        this.title = title;
+    }
+
+    public String getTitle()
+    {
+        return title;
+    }
+
+    public PlatformMonitor.Start getStart()
+    {
+        return start;
+    }
+
+    public void setStart(PlatformMonitor.Start start)
+    {
+        this.start = start;
+    }
+
+    public PlatformMonitor.Stop getStop()
+    {
+        return stop;
+    }
+
+    public void setStop(PlatformMonitor.Stop stop)
+    {
+        this.stop = stop;
+    }
+
+    /**
+     * Adds a histogram to plot; histograms with the same unit are plotted together.
+     *
+     * @param snapshot the histogram to plot
+     */
+    public void addHistogram(HistogramSnapshot snapshot)
+    {
+        histograms.add(snapshot);
+    }
+
+    /**
+     * Writes the report to the given file, in UTF-8.
+     *
+     * @param file the file to write the report to
+     * @throws IOException if the write fails
+     */
+    public void write(Path file) throws IOException
+    {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8))
+        {
+            write(writer);
+        }
+    }
+
+    /**
+     * Writes the report in HTML format.
+     *
+     * @param output where to write the report to
+     * @throws IOException if the write fails
+     */
+    public void write(Appendable output) throws IOException
+    {
+        output.append("<!DOCTYPE html>\n<html lang=\"en\">\n<head>\n<meta charset=\"utf-8\">\n");
+        output.append("<title>").append(escape(title)).append("</title>\n");
+        output.append("<style>\n")
+                .append("body{font-family:sans-serif;margin:2em;color:#222}\n")
+                .append("table{border-collapse:collapse;margin:1em 0}\n")
+                .append("th,td{border:1px solid #ccc;padding:4px 8px;text-align:right}\n")
+                .append("th:first-child,td:first-child{text-align:left}\n")
+                .append("svg{display:block;margin:1em 0}\n")
+                .append("svg text{font-size:11px}\n")
+                .append("pre{background:#f6f6f6;padding:1em;overflow:auto}\n")
+                .append("</style>\n</head>\n<body>\n");
+        output.append("<h1>").append(escape(title)).append("</h1>\n");
+
+        if (start != null)
+            writePlatform(output);
+        if (stop != null)
+            writeSummary(output);
+        if (!histograms.isEmpty())
+            writeHistograms(output);
+        if (stop != null)
+            writeTimelines(output);
+        if (start != null || stop != null)
+            writeDetails(output);
+
+        output.append("</body>\n</html>\n");
+    }
+
+    private void writePlatform(Appendable output) throws IOException
+    {
+        output.append("<h2>Platform</h2>\n<table>\n");
+        row(output, "Started", new Date(start.date));
+        row(output, "Operative System", start.os);
+        row(output, "JVM", start.jvm);
+        row(output, "Processors", start.cores);
+        row(output, "System Memory", format("%.3f GiB", start.gibiBytes(start.totalMemory)));
+        if (start.heap != null)
+            row(output, "Max Heap Size", format("%.3f MiB", start.mebiBytes(start.heap.getMax())));
+        if (start.collectors != null)
+        {
+            for (PlatformMonitor.Collector collector : start.collectors)
+            {
+                row(output, "Garbage Collector", collector.name + " (" + collector.role + ")");
+            }
+        }
+        output.append("</table>\n");
+    }
+
+    private void writeSummary(Appendable output) throws IOException
+    {
+        output.append("<h2>Summary</h2>\n<table>\n");
+        row(output, "Elapsed Time", format("%d ms", TimeUnit.NANOSECONDS.toMillis(stop.time)));
+        if (stop.cpuTime >= 0)
+            row(output, "Average CPU Load", format("%.2f%%", stop.percent(stop.cpuTime, stop.time)));
+        row(output, "Young GC", format("%d collections, %d ms", stop.youngCount, stop.youngTime));
+        row(output, "Old GC", format("%d collections, %d ms", stop.oldCount, stop.oldTime));
+        if (stop.gcPauses != null && stop.gcPauses.getTotalCount() > 0)
+            row(output, "GC Pauses p50/p99/max", format("%.3f/%.3f/%.3f ms",
+                    stop.millis(stop.gcPauses.getValueAtPercentile(50)),
+                    stop.millis(stop.gcPauses.getValueAtPercentile(99)),
+                    stop.millis(stop.gcPauses.getMaxValue())));
+        if (stop.hiccups != null && stop.hiccups.getTotalCount() > 0)
+            row(output, "Platform Hiccups p50/p99/max", format("%.3f/%.3f/%.3f ms",
+                    stop.millis(stop.hiccups.getValueAtPercentile(50)),
+                    stop.millis(stop.hiccups.getValueAtPercentile(99)),
+                    stop.millis(stop.hiccups.getMaxValue())));
+        row(output, "JIT Compilation", format("%d ms%s", stop.jitTime, stop.isJITActive() ? " (still active)" : ""));
+        if (stop.threadAllocatedBytes >= 0)
+            row(output, "Allocated by Live Threads", format("%.3f MiB", stop.mebiBytes(stop.threadAllocatedBytes)));
+        if (stop.operations >= 0)
+        {
+            row(output, "Operations", stop.operations);
+            row(output, "Allocated Bytes/op", format("%.2f", stop.getBytesPerOperation()));
+            row(output, "CPU ns/op", format("%.2f", stop.getCPUNanosPerOperation()));
+        }
+        if (stop.throughputMeter != null && stop.throughputMeter.getSize() > 0)
+        {
+            ThroughputMeter meter = stop.throughputMeter;
+            row(output, "Throughput min/mean/max", format("%.2f/%.2f/%.2f ops/s", meter.getMinRate(), meter.getMeanRate(), meter.getMaxRate()));
+            row(output, "Throughput Coefficient of Variation", format("%.2f%%", meter.getCoefficientOfVariation() * 100));
+        }
+        output.append("</table>\n");
+
+        if (stop.collectors != null)
+        {
+            output.append("<h3>Garbage Collectors</h3>\n<table>\n<tr><th>Collector</th><th>Role</th><th>Count</th><th>Time (ms)</th></tr>\n");
+            for (PlatformMonitor.Collector collector : stop.collectors)
+            {
+                cells(output, collector.name, collector.role, collector.count, collector.time);
+            }
+            output.append("</table>\n");
+        }
+
+        if (stop.threadGroupCPUs != null)
+        {
+            output.append("<h3>CPU Time by Thread Group</h3>\n<table>\n<tr><th>Group</th><th>Threads</th><th>CPU (ms)</th><th>User (ms)</th><th>Share</th></tr>\n");
+            for (PlatformMonitor.ThreadCPU group : stop.threadGroupCPUs)
+            {
+                cells(output, group.name, group.threads, format("%.3f", stop.millis(group.cpuTime)),
+                        format("%.3f", stop.millis(group.userTime)), format("%.2f%%", stop.percent(group.cpuTime, stop.threadCPUTime)));
+            }
+            output.append("</table>\n");
+        }
+
+        if (stop.bufferPools != null)
+        {
+            output.append("<h3>Buffer Pools</h3>\n<table>\n<tr><th>Pool</th><th>Start (MiB)</th><th>Stop (MiB)</th><th>Peak (MiB)</th><th>Buffers</th><th>Allocated (MiB)</th></tr>\n");
+            for (PlatformMonitor.BufferPool pool : stop.bufferPools)
+            {
+                cells(output, pool.name, format("%.3f", pool.mebiBytes(pool.startUsed)), format("%.3f", pool.mebiBytes(pool.stopUsed)),
+                        format("%.3f", pool.mebiBytes(pool.peakUsed)), pool.stopCount, format("%.3f", pool.mebiBytes(pool.allocatedBytes)));
+            }
+            output.append("</table>\n");
+        }
+    }
+
+    private void writeHistograms(Appendable output) throws IOException
+    {
+        output.append("<h2>Latency</h2>\n<table>\n<tr><th>Histogram</th><th>Count</th><th>Min</th>");
+        for (double percentile : PERCENTILES)
+        {
+            output.append("<th>p").append(number(percentile)).append("</th>");
+        }
+        output.append("<th>Max</th><th>Unit</th></tr>\n");
+        for (HistogramSnapshot snapshot : histograms)
+        {
+            Histogram histogram = snapshot.getHistogram();
+            output.append("<tr><td>").append(escape(snapshot.getName())).append("</td><td>").append(String.valueOf(histogram.getTotalCount())).append("</td>");
+            output.append("<td>").append(format("%.3f", snapshot.toUnit(histogram.getMinValue()))).append("</td>");
+            for (double percentile : PERCENTILES)
+            {
+                output.append("<td>").append(format("%.3f", snapshot.toUnit(histogram.getValueAtPercentile(percentile)))).append("</td>");
+            }
+            output.append("<td>").append(format("%.3f", snapshot.toUnit(histogram.getMaxValue()))).append("</td>");
+            output.append("<td>").append(escape(snapshot.getUnit())).append("</td></tr>\n");
+        }
+        output.append("</table>\n");
+
+        List<String> units = new ArrayList<>();
+        for (HistogramSnapshot snapshot : histograms)
+        {
+            if (!units.contains(snapshot.getUnit()))
+                units.add(snapshot.getUnit());
+        }
+        for (String unit : units)
+        {
+            List<Series> series = new ArrayList<>();
+            for (HistogramSnapshot snapshot : histograms)
+            {
+                if (unit.equals(snapshot.getUnit()) && snapshot.getHistogram().getTotalCount() > 0)
+                    series.add(spectrum(snapshot));
+            }
+            if (!series.isEmpty())
+                chart(output, "Percentile Spectrum", "Percentile", unit, series, true);
+        }
+    }
+
+    private Series spectrum(HistogramSnapshot snapshot)
+    {
+        Series series = new Series(snapshot.getName(), false);
+        for (HistogramIterationValue value : snapshot.getHistogram().percentiles(5))
+        {
+            double percentile = value.getPercentileLevelIteratedTo();
+            if (percentile >= 100)
+                break;
+            series.add(Math.log10(100 / (100 - percentile)), snapshot.toUnit(value.getValueIteratedTo()));
+        }
+        return series;
+    }
+
+    private void writeTimelines(Appendable output) throws IOException
+    {
+        Timeline timeline = stop.timeline;
+        ThroughputMeter meter = stop.throughputMeter;
+        boolean hasPauses = stop.gcEvents != null && !stop.gcEvents.isEmpty();
+        boolean hasThroughput = meter != null && meter.getSize() > 0;
+        if (timeline == null && !hasPauses && !hasThroughput)
+            return;
+        output.append("<h2>Timeline</h2>\n");
+
+        if (hasThroughput)
+        {
+            Series rates = new Series("Throughput", false);
+            for (int i = 0; i < meter.getSize(); ++i)
+            {
+                rates.add(meter.getTime(i) / 1000D, meter.getRate(i));
+            }
+            chart(output, "Throughput", "Time (s)", "ops/s", List.of(rates), false);
+        }
+
+        if (timeline != null && timeline.getSize() > 0)
+        {
+            Series used = new Series("Heap Used", false);
+            Series committed = new Series("Heap Committed", false);
+            Series tenured = new Series("Tenured Used", false);
+            Series cpu = new Series("CPU Load", false);
+            Series gc = new Series("GC Time", false);
+            Series jit = new Series("JIT Time", false);
+            for (int i = 0; i < timeline.getSize(); ++i)
+            {
+                double seconds = timeline.get(Timeline.Column.TIME, i) / 1000D;
+                used.add(seconds, stop.mebiBytes(timeline.get(Timeline.Column.HEAP_USED, i)));
+                committed.add(seconds, stop.mebiBytes(timeline.get(Timeline.Column.HEAP_COMMITTED, i)));
+                tenured.add(seconds, stop.mebiBytes(timeline.get(Timeline.Column.TENURED_USED, i)));
+                double load = timeline.getCPULoad(i);
+                if (!Double.isNaN(load))
+                    cpu.add(seconds, load * 100);
+                gc.add(seconds, timeline.get(Timeline.Column.GC_TIME, i));
+                jit.add(seconds, timeline.get(Timeline.Column.JIT_TIME, i));
+            }
+            chart(output, "Heap", "Time (s)", "MiB", List.of(used, committed, tenured), false);
+            if (!cpu.isEmpty())
+                chart(output, "CPU Load", "Time (s)", "%", List.of(cpu), false);
+            chart(output, "Cumulative GC and JIT Time", "Time (s)", "ms", List.of(gc, jit), false);
+        }
+
+        if (hasPauses)
+        {
+            Series pauses = new Series("GC Pauses", true);
+            Series cycles = new Series("GC Concurrent Cycles", true);
+            for (PlatformMonitor.GCEvent event : stop.gcEvents)
+            {
+                double seconds = (event.date - start(stop)) / 1000D;
+                (event.pause ? pauses : cycles).add(Math.max(0, seconds), event.duration);
+            }
+            List<Series> series = new ArrayList<>();
+            series.add(pauses);
+            if (!cycles.isEmpty())
+                series.add(cycles);
+            chart(output, "Garbage Collections", "Time (s)", "ms", series, false);
+        }
+    }
+
+    private long start(PlatformMonitor.Stop stop)
+    {
+        if (start != null)
+            return start.date;
+        return stop.date - TimeUnit.NANOSECONDS.toMillis(stop.time);
+    }
+
+    private void writeDetails(Appendable output) throws IOException
+    {
+        output.append("<h2>Details</h2>\n<pre>");
+        if (start != null)
+            output.append(escape(start.toString())).append("\n");
+        if (stop != null)
+            output.append(escape(stop.toString())).append("\n");
+        for (HistogramSnapshot snapshot : histograms)
+        {
+            output.append(escape(snapshot.toString())).append("\n");
+        }
+        output.append("</pre>\n");
+    }
+
+    private void chart(Appendable output, String name, String xLabel, String yLabel, List<Series> series, boolean percentileAxis) throws IOException
+    {
+        double maxX = percentileAxis ? 2 : 0;
+        double maxY = 0;
+        for (Series s : series)
+        {
+            for (int i = 0; i < s.size; ++i)
+            {
+                maxX = Math.max(maxX, percentileAxis ? Math.ceil(s.xs[i]) : s.xs[i]);
+                maxY = Math.max(maxY, s.ys[i]);
+            }
+        }
+        if (!percentileAxis)
+            maxX = niceMax(maxX);
+        maxY = niceMax(maxY);
+        int plotWidth = WIDTH - MARGIN_LEFT - MARGIN_RIGHT;
+        int plotHeight = HEIGHT - MARGIN_TOP - MARGIN_BOTTOM;
+
+        output.append(format("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"%d\" height=\"%d\" viewBox=\"0 0 %d %d\">\n", WIDTH, HEIGHT, WIDTH, HEIGHT));
+        output.append(format("<text x=\"%d\" y=\"18\" font-weight=\"bold\">%s</text>\n", MARGIN_LEFT, escape(name)));
+        output.append(format("<rect x=\"%d\" y=\"%d\" width=\"%d\" height=\"%d\" fill=\"none\" stroke=\"#888\"/>\n", MARGIN_LEFT, MARGIN_TOP, plotWidth, plotHeight));
+
+        // Horizontal grid lines and Y axis labels.
+        for (int i = 0; i <= 5; ++i)
+        {
+            double y = MARGIN_TOP + plotHeight - plotHeight * i / 5D;
+            output.append(format("<line x1=\"%d\" y1=\"%.1f\" x2=\"%d\" y2=\"%.1f\" stroke=\"#eee\"/>\n", MARGIN_LEFT, y, MARGIN_LEFT + plotWidth, y));
+            output.append(format("<text x=\"%d\" y=\"%.1f\" text-anchor=\"end\">%s</text>\n", MARGIN_LEFT - 5, y + 4, number(maxY * i / 5)));
+        }
+        // X axis labels.
+        int ticks = percentileAxis ? (int)maxX : 5;
+        for (int i = 0; i <= ticks; ++i)
+        {
+            double value = maxX * i / ticks;
+            double x = MARGIN_LEFT + plotWidth * i / (double)ticks;
+            String label = percentileAxis ? percentileLabel(i) : number(value);
+            output.append(format("<line x1=\"%.1f\" y1=\"%d\" x2=\"%.1f\" y2=\"%d\" stroke=\"#eee\"/>\n", x, MARGIN_TOP, x, MARGIN_TOP + plotHeight));
+            output.append(format("<text x=\"%.1f\" y=\"%d\" text-anchor=\"middle\">%s</text>\n", x, MARGIN_TOP + plotHeight + 15, label));
+        }
+        output.append(format("<text x=\"%d\" y=\"%d\" text-anchor=\"middle\">%s</text>\n", MARGIN_LEFT + plotWidth / 2, HEIGHT - 8, escape(xLabel)));
+        output.append(format("<text x=\"15\" y=\"%d\" text-anchor=\"middle\" transform=\"rotate(-90 15 %d)\">%s</text>\n",
+                MARGIN_TOP + plotHeight / 2, MARGIN_TOP + plotHeight / 2, escape(yLabel)));
+
+        for (int i = 0; i < series.size(); ++i)
+        {
+            Series s = series.get(i);
+            String color = COLORS[i % COLORS.length];
+            StringBuilder points = new StringBuilder();
+            for (int j = 0; j < s.size; ++j)
+            {
+                double x = MARGIN_LEFT + (maxX == 0 ? 0 : plotWidth * s.xs[j] / maxX);
+                double y = MARGIN_TOP + plotHeight - (maxY == 0 ? 0 : plotHeight * s.ys[j] / maxY);
+                if (s.scatter)
+                    output.append(format("<circle cx=\"%.1f\" cy=\"%.1f\" r=\"3\" fill=\"%s\"/>\n", x, y, color));
+                else
+                    points.append(format("%.1f,%.1f ", x, y));
+            }
+            if (!s.scatter)
+                output.append(format("<polyline fill=\"none\" stroke=\"%s\" stroke-width=\"1.5\" points=\"%s\"/>\n", color, points.toString().trim()));
+            // Legend.
+            int legendY = MARGIN_TOP + 15 + 15 * i;
+            output.append(format("<rect x=\"%d\" y=\"%d\" width=\"10\" height=\"10\" fill=\"%s\"/>\n", MARGIN_LEFT + 10, legendY - 9, color));
+            output.append(format("<text x=\"%d\" y=\"%d\">%s</text>\n", MARGIN_LEFT + 25, legendY, escape(s.name)));
+        }
+        output.append("</svg>\n");
+    }
+
+    private static String percentileLabel(int nines)
+    {
+        // The tick at x is the percentile where 1 / (1 - percentile) = 10^x.
+        switch (nines)
+        {
+            case 0:
+                return "0%";
+            case 1:
+                return "90%";
+            case 2:
+                return "99%";
+            default:
+                return "99." + "9".repeat(nines - 2) + "%";
+        }
+    }
+
+    private static double niceMax(double value)
+    {
+        if (value <= 0)
+            return 1;
+        double magnitude = Math.pow(10, Math.floor(Math.log10(value)));
+        for (double step : new double[]{1, 2, 5, 10})
+        {
+            if (value <= step * magnitude)
+                return step * magnitude;
+        }
+        return 10 * magnitude;
+    }
+
+    private static String number(double value)
+    {
+        if (value == Math.rint(value))
+            return String.valueOf((long)value);
+        return format("%.3f", value).replaceAll("0+$", "");
+    }
+
+    private static void row(Appendable output, String name, Object value) throws IOException
+    {
+        output.append("<tr><th>").append(escape(name)).append("</th><td>").append(escape(String.valueOf(value))).append("</td></tr>\n");
+    }
+
+    private static void cells(Appendable output, Object... values) throws IOException
+    {
+        output.append("<tr>");
+        for (Object value : values)
+        {
+            output.append("<td>").append(escape(String.valueOf(value))).append("</td>");
+        }
+        output.append("</tr>\n");
+    }
+
+    private static String format(String format, Object... args)
+    {
+        return String.format(Locale.ROOT, format, args);
+    }
+
+    private static String escape(String text)
+    {
+        if (text == null)
+            return "";
+        StringBuilder builder = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); ++i)
+        {
+            char c = text.charAt(i);
+            switch (c)
+            {
+                case '<':
+                    builder.append("&lt;");
+                    break;
+                case '>':
+                    builder.append("&gt;");
+                    break;
+                case '&':
+                    builder.append("&amp;");
+                    break;
+                case '"':
+                    builder.append("&quot;");
+                    break;
+                default:
+                    builder.append(c);
+                    break;
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * A series of points to plot, stored in primitive arrays.
+     */
+    private static class Series
+    {
+        private final String name;
+        private final boolean scatter;
+        private double[] xs = new double[64];
+        private double[] ys = new double[64];
+        private int size;
+
+        private Series(String name, boolean scatter)
+        {
+            this.name = name;
+            this.scatter = scatter;
+        }
+
+        private void add(double x, double y)
+        {
+            if (size == xs.length)
+            {
+                xs = Arrays.copyOf(xs, size * 2);
+                ys = Arrays.copyOf(ys, size * 2);
+            }
+            xs[size] = x;
+            ys[size] = y;
+            ++size;
+        }
+
+        private boolean isEmpty()
+        {
+            return size == 0;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.SingleWriterRecorder;
+
+/**
+ * A concurrent recorder of measures, typically latencies in nanoseconds.
+ * <div>
+ * Each recording thread writes to its own {@link SingleWriterRecorder},
+ * so that {@link #record(long)} is wait-free, does not allocate and does
+ * not contend with other recording threads.
+ * </div>
+ * <div>
+ * Calls to {@link #intervalHistogram()} collect the measures recorded
+ * by all threads since the previous call, without blocking the recording
+ * threads; the measures are also accumulated in a total histogram, see
+ * {@link #totalHistogram()}.
+ * The recorders of the threads that have ended are discarded once their
+ * measures have been collected, so that thread pools that replace their
+ * threads do not make this object grow without bounds.
+ * </div>
+ * <div>
+ * Typical usage:
+ * <pre>
+ * LatencyRecorder recorder = new LatencyRecorder();
+ *
+ * // In the load generator threads.
+ * long begin = System.nanoTime();
+ * performRequest();
+ * recorder.record(System.nanoTime() - begin);
+ *
+ * // In the reporting thread.
+ * System.err.println(recorder.snapshot(recorder.intervalHistogram()));
+ * </pre>
+ * </div>
+ */
+public class LatencyRecorder
+{
+    private final List<Writer> writers = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<SingleWriterRecorder> recorder = ThreadLocal.withInitial(this::newRecorder);
+    private final long highestTrackableValue;
+    private final int significantDigits;
+    private final Histogram interval;
+    private final Histogram total;
+
+    /**
+     * Creates a recorder with auto-resizing histograms and 3 significant digits.
+     */
+    public LatencyRecorder()
+    {
+        this(0, 3);
+    }
+
+    /**
+     * Creates a recorder with the given histograms configuration.
+     * <div>
+     * A recorder with a fixed {@code highestTrackableValue} never allocates
+     * when recording, but throws {@link ArrayIndexOutOfBoundsException} when
+     * recording values larger than {@code highestTrackableValue}.
+     * </div>
+     *
+     * @param highestTrackableValue the highest value to track, or 0 for auto-resizing histograms
+     * @param significantDigits the number of significant decimal digits, between 0 and 5
+     */
+    public LatencyRecorder(long highestTrackableValue, int significantDigits)
+    {
+        this.highestTrackableValue = highestTrackableValue;
+        this.significantDigits = significantDigits;
+        this.interval = newHistogram();
+        this.total = newHistogram();
+    }
+
+    private SingleWriterRecorder newRecorder()
+    {
+        SingleWriterRecorder result = highestTrackableValue > 0
+                ? new SingleWriterRecorder(highestTrackableValue, significantDigits)
+                : new SingleWriterRecorder(significantDigits);
+        writers.add(new Writer(Thread.currentThread(), result));
+        return result;
+    }
+
+    private Histogram newHistogram()
+    {
+        return highestTrackableValue > 0
+                ? new Histogram(highestTrackableValue, significantDigits)
+                : new Histogram(significantDigits);
+    }
+
+    /**
+     * Records the given measure.
+     * <div>
+     * This method is wait-free and may be called concurrently by multiple threads.
+     * </div>
+     *
+     * @param measure the measure to record
+     */
+    public void record(long measure)
+    {
+        recorder.get().recordValue(measure);
+    }
+
+    /**
+     * Returns the measures recorded by all threads since the previous call
+     * to this method (or since the creation of this object), and adds them
+     * to the total histogram.
+     * <div>
+     * The histogram returned is owned by this object and its content is only
+     * valid until the next call to this method; use {@link Histogram#copy()}
+     * to retain it.
+     * </div>
+     *
+     * @return the interval histogram
+     */
+    public synchronized Histogram intervalHistogram()
+    {
+        interval.reset();
+        for (Writer writer : writers)
+        {
+            // Check before collecting, so that an ended
+            // thread has no measures left to collect.
+            boolean ended = writer.isEnded();
+            writer.recycled = writer.recorder.getIntervalHistogram(writer.recycled);
+            interval.add(writer.recycled);
+            interval.setStartTimeStamp(Math.min(interval.getStartTimeStamp(), writer.recycled.getStartTimeStamp()));
+            interval.setEndTimeStamp(Math.max(interval.getEndTimeStamp(), writer.recycled.getEndTimeStamp()));
+            if (ended)
+                writers.remove(writer);
+        }
+        total.add(interval);
+        total.setStartTimeStamp(Math.min(total.getStartTimeStamp(), interval.getStartTimeStamp()));
+        total.setEndTimeStamp(Math.max(total.getEndTimeStamp(), interval.getEndTimeStamp()));
+        return interval;
+    }
+
+    /**
+     * Returns the measures accumulated by the calls to {@link #intervalHistogram()}.
+     * <div>
+     * The histogram returned is owned by this object; use {@link Histogram#copy()}
+     * to retain it.
+     * </div>
+     *
+     * @return the total histogram
+     */
+    public synchronized Histogram totalHistogram()
+    {
+        return total;
+    }
+
+    /**
+     * Resets the total histogram and discards the measures recorded
+     * since the last call to {@link #intervalHistogram()}.
+     */
+    public synchronized void reset()
+    {
+        for (Writer writer : writers)
+        {
+            writer.recorder.reset();
+        }
+        interval.reset();
+        total.reset();
+    }
+
+    /**
+     * @return the number of recording threads whose recorders are retained
+     */
+    int getWriterCount()
+    {
+        return writers.size();
+    }
+
+    /**
+     * @param histogram the histogram to format, in nanoseconds
+     * @return a {@link HistogramSnapshot} formatting the given histogram in milliseconds
+     */
+    public HistogramSnapshot snapshot(Histogram histogram)
+    {
+        return new HistogramSnapshot(histogram.copy());
+    }
+
+    private static class Writer
+    {
+        private final WeakReference<Thread> thread;
+        private final SingleWriterRecorder recorder;
+        private Histogram recycled;
+
+        private Writer(Thread thread, SingleWriterRecorder recorder)
+        {
+            this.thread = new WeakReference<>(thread);
+            this.recorder = recorder;
+        }
+
+        private boolean isEnded()
+        {
+            Thread thread = this.thread.get();
+            return thread == null || !thread.isAlive();
+        }
+    }
+}
@@ -26,9 +26,10 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * @deprecated Use {@link org.HdrHistogram.Histogram} to record measures instead,
- *             and {@link org.eclipse.jetty.toolchain.perf.HistogramSnapshot} to
- *             format the histogram values.
+ * @deprecated Use {@link LatencyRecorder} to record measures concurrently,
+ *             or {@link org.HdrHistogram.Histogram} from a single thread,
+ *             and {@link org.eclipse.jetty.toolchain.perf.HistogramSnapshot}
+ *             to format the histogram values.
  */
 @Deprecated
 public class MeasureRecorder
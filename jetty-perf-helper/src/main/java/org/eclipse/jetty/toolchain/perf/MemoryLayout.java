@@ -0,0 +1,157 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * <p>Classifies the memory pools and the garbage collectors of the JVM,
+ * for {@link PlatformMonitor}, independently of the collector in use.</p>
+ * <p>Heap pools are classified by {@link MemoryPoolMXBean#getType() type}
+ * and name as eden (including the young generation of generational ZGC),
+ * survivor or tenured; when the heap has a single pool, as with
+ * non-generational ZGC, Shenandoah and Epsilon, that pool is tenured.</p>
+ * <p>Collectors that report concurrent cycles rather than pauses, such as
+ * {@code "ZGC Major Cycles"} or {@code "G1 Concurrent GC"}, are classified
+ * as concurrent. The other collectors are classified as young if they do not
+ * manage the tenured pool, as with Serial and Parallel, or if their name
+ * denotes a young or minor collection, as with G1 and generational ZGC;
+ * otherwise they are classified as old.</p>
+ */
+class MemoryLayout
+{
+    static final String EDEN = "eden";
+    static final String SURVIVOR = "survivor";
+    static final String TENURED = "tenured";
+    static final String OTHER = "other";
+    static final String YOUNG = "young";
+    static final String OLD = "old";
+    static final String CONCURRENT = "concurrent";
+
+    final Map<MemoryPoolMXBean, String> pools = new LinkedHashMap<>();
+    final Map<GarbageCollectorMXBean, String> collectors = new LinkedHashMap<>();
+    MemoryPoolMXBean eden;
+    MemoryPoolMXBean survivor;
+    MemoryPoolMXBean tenured;
+
+    MemoryLayout()
+    {
+        this(ManagementFactory.getMemoryPoolMXBeans(), ManagementFactory.getGarbageCollectorMXBeans());
+    }
+
+    MemoryLayout(List<MemoryPoolMXBean> memoryPools, List<GarbageCollectorMXBean> garbageCollectors)
+    {
+        List<MemoryPoolMXBean> others = new ArrayList<>();
+        for (MemoryPoolMXBean pool : memoryPools)
+        {
+            String role = OTHER;
+            if (pool.getType() == MemoryType.HEAP)
+            {
+                role = classifyPool(pool.getName());
+                if (EDEN.equals(role) && eden == null)
+                    eden = pool;
+                else if (SURVIVOR.equals(role) && survivor == null)
+                    survivor = pool;
+                else if (TENURED.equals(role) && tenured == null)
+                    tenured = pool;
+                else if (OTHER.equals(role))
+                    others.add(pool);
+            }
+            pools.put(pool, role);
+        }
+        if (tenured == null && eden == null && others.size() == 1)
+        {
+            tenured = others.get(0);
+            pools.put(tenured, TENURED);
+        }
+
+        for (GarbageCollectorMXBean collector : garbageCollectors)
+        {
+            collectors.put(collector, classifyCollector(collector.getName(), Arrays.asList(collector.getMemoryPoolNames())));
+        }
+    }
+
+    private static String classifyPool(String name)
+    {
+        String lower = name.toLowerCase(Locale.ROOT);
+        if (lower.contains("eden") || lower.contains("young"))
+            return EDEN;
+        if (lower.contains("survivor"))
+            return SURVIVOR;
+        if (lower.contains("old") || lower.contains("tenured"))
+            return TENURED;
+        return OTHER;
+    }
+
+    private String classifyCollector(String name, List<String> poolNames)
+    {
+        if (isConcurrent(name))
+            return CONCURRENT;
+        if (tenured != null && !poolNames.contains(tenured.getName()))
+            return YOUNG;
+        String lower = name.toLowerCase(Locale.ROOT);
+        if (lower.contains("young") || lower.contains("minor"))
+            return YOUNG;
+        return OLD;
+    }
+
+    /**
+     * @param collectorName the name of a garbage collector
+     * @return whether the collector reports concurrent cycles rather than pauses
+     */
+    static boolean isConcurrent(String collectorName)
+    {
+        // "ZGC" is the name of the collector reporting cycles before JDK 17.
+        return collectorName.endsWith(" Cycles") || collectorName.contains("Concurrent") || "ZGC".equals(collectorName);
+    }
+
+    /**
+     * @param role the collector role
+     * @return the collectors with the given role
+     */
+    List<GarbageCollectorMXBean> collectors(String role)
+    {
+        return collectors.entrySet().stream()
+                .filter(entry -> entry.getValue().equals(role))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the names of the tenured pools
+     */
+    Set<String> tenuredPools()
+    {
+        return pools.entrySet().stream()
+                .filter(entry -> entry.getValue().equals(TENURED))
+                .map(entry -> entry.getKey().getName())
+                .collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,345 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.lang.management.MemoryUsage;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import org.HdrHistogram.Histogram;
+
+/**
+ * <p>Converts {@link PlatformMonitor.Start} and {@link PlatformMonitor.Stop}
+ * objects to and from {@link Properties}, for {@link PlatformMonitorServer}
+ * and {@link PlatformMonitorClient}.</p>
+ * <p>Each field is stored with its name as key; numbers, booleans and strings
+ * are stored as text, {@link MemoryUsage} fields as four keys suffixed with
+ * {@code .init}, {@code .used}, {@code .committed} and {@code .max}, and
+ * {@link Histogram} fields in the HdrHistogram compressed encoding, in Base64.</p>
+ * <p>{@link List} fields are stored as a key suffixed with {@code .size} and
+ * one key per element, suffixed with the element index, for example
+ * {@code gcEvents.0}; {@link Map} fields are stored likewise, with the key
+ * and the value of each entry suffixed with {@code .key} and {@code .value}.
+ * Elements of the nested classes of {@link PlatformMonitor}, such as
+ * {@link PlatformMonitor.GCEvent}, are stored field by field, with their
+ * key as prefix, for example {@code gcEvents.0.duration}.</p>
+ * <p>{@link ThroughputMeter} fields are stored as their counters and moving
+ * averages, and the count, the elapsed time and the end time of each retained
+ * period, for example {@code throughputMeter.0.count}.</p>
+ * <p>Fields of other types, such as {@link Timeline} and the profilers, are not converted.</p>
+ */
+class MonitorPayload
+{
+    private MonitorPayload()
+    {
+    }
+
+    static void write(Object source, Properties properties)
+    {
+        write(source, "", properties);
+    }
+
+    private static void write(Object source, String prefix, Properties properties)
+    {
+        try
+        {
+            for (Field field : fields(source.getClass()))
+            {
+                Object value = field.get(source);
+                if (value != null)
+                    writeValue(prefix + field.getName(), field.getGenericType(), value, properties);
+            }
+        }
+        catch (IllegalAccessException x)
+        {
+            throw new IllegalStateException(x);
+        }
+    }
+
+    private static void writeValue(String key, Type type, Object value, Properties properties)
+    {
+        Class<?> rawType = rawType(type);
+        if (isText(rawType))
+        {
+            properties.setProperty(key, String.valueOf(value));
+        }
+        else if (rawType == MemoryUsage.class)
+        {
+            MemoryUsage usage = (MemoryUsage)value;
+            properties.setProperty(key + ".init", String.valueOf(usage.getInit()));
+            properties.setProperty(key + ".used", String.valueOf(usage.getUsed()));
+            properties.setProperty(key + ".committed", String.valueOf(usage.getCommitted()));
+            properties.setProperty(key + ".max", String.valueOf(usage.getMax()));
+        }
+        else if (rawType == Histogram.class)
+        {
+            properties.setProperty(key, encode((Histogram)value));
+        }
+        else if (rawType == List.class)
+        {
+            List<?> list = (List<?>)value;
+            properties.setProperty(key + ".size", String.valueOf(list.size()));
+            for (int i = 0; i < list.size(); ++i)
+            {
+                Object element = list.get(i);
+                if (element != null)
+                    writeValue(key + "." + i, typeArgument(type, 0), element, properties);
+            }
+        }
+        else if (rawType == Map.class)
+        {
+            int index = 0;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>)value).entrySet())
+            {
+                writeValue(key + "." + index + ".key", typeArgument(type, 0), entry.getKey(), properties);
+                if (entry.getValue() != null)
+                    writeValue(key + "." + index + ".value", typeArgument(type, 1), entry.getValue(), properties);
+                ++index;
+            }
+            properties.setProperty(key + ".size", String.valueOf(index));
+        }
+        else if (rawType == ThroughputMeter.class)
+        {
+            writeThroughputMeter(key, (ThroughputMeter)value, properties);
+        }
+        else if (isNested(rawType))
+        {
+            write(value, key + ".", properties);
+        }
+    }
+
+    static <T> T read(Properties properties, T target)
+    {
+        return read(properties, "", target);
+    }
+
+    private static <T> T read(Properties properties, String prefix, T target)
+    {
+        try
+        {
+            for (Field field : fields(target.getClass()))
+            {
+                Object value = readValue(prefix + field.getName(), field.getGenericType(), properties);
+                if (value != null)
+                    field.set(target, value);
+            }
+            return target;
+        }
+        catch (IllegalAccessException x)
+        {
+            throw new IllegalStateException(x);
+        }
+    }
+
+    private static Object readValue(String key, Type type, Properties properties)
+    {
+        Class<?> rawType = rawType(type);
+        if (isText(rawType))
+        {
+            String value = properties.getProperty(key);
+            return value == null ? null : parse(rawType, value);
+        }
+        if (rawType == MemoryUsage.class)
+        {
+            String used = properties.getProperty(key + ".used");
+            if (used == null)
+                return null;
+            return new MemoryUsage(
+                    Long.parseLong(properties.getProperty(key + ".init")),
+                    Long.parseLong(used),
+                    Long.parseLong(properties.getProperty(key + ".committed")),
+                    Long.parseLong(properties.getProperty(key + ".max")));
+        }
+        if (rawType == Histogram.class)
+        {
+            String value = properties.getProperty(key);
+            return value == null ? null : decode(value);
+        }
+        if (rawType == List.class || rawType == Map.class)
+        {
+            String size = properties.getProperty(key + ".size");
+            if (size == null)
+                return null;
+            int length = Integer.parseInt(size);
+            if (rawType == List.class)
+            {
+                List<Object> list = new ArrayList<>(length);
+                for (int i = 0; i < length; ++i)
+                {
+                    list.add(readValue(key + "." + i, typeArgument(type, 0), properties));
+                }
+                return list;
+            }
+            Map<Object, Object> map = new LinkedHashMap<>();
+            for (int i = 0; i < length; ++i)
+            {
+                map.put(readValue(key + "." + i + ".key", typeArgument(type, 0), properties),
+                        readValue(key + "." + i + ".value", typeArgument(type, 1), properties));
+            }
+            return map;
+        }
+        if (rawType == ThroughputMeter.class)
+            return readThroughputMeter(key, properties);
+        if (isNested(rawType))
+        {
+            try
+            {
+                return read(properties, key + ".", rawType.getConstructor().newInstance());
+            }
+            catch (ReflectiveOperationException x)
+            {
+                throw new IllegalStateException(x);
+            }
+        }
+        return null;
+    }
+
+    private static void writeThroughputMeter(String key, ThroughputMeter meter, Properties properties)
+    {
+        // Synchronize so that the periods are consistent with the size and the rates.
+        synchronized (meter)
+        {
+            properties.setProperty(key + ".period", String.valueOf(meter.getPeriod()));
+            properties.setProperty(key + ".capacity", String.valueOf(meter.getCapacity()));
+            properties.setProperty(key + ".count", String.valueOf(meter.getCount()));
+            properties.setProperty(key + ".dropped", String.valueOf(meter.getDroppedSamples()));
+            properties.setProperty(key + ".oneSecondRate", String.valueOf(meter.getOneSecondRate()));
+            properties.setProperty(key + ".fiveSecondRate", String.valueOf(meter.getFiveSecondRate()));
+            properties.setProperty(key + ".fifteenSecondRate", String.valueOf(meter.getFifteenSecondRate()));
+            int size = meter.getSize();
+            properties.setProperty(key + ".size", String.valueOf(size));
+            for (int i = 0; i < size; ++i)
+            {
+                properties.setProperty(key + "." + i + ".count", String.valueOf(meter.get(i)));
+                properties.setProperty(key + "." + i + ".interval", String.valueOf(meter.getInterval(i)));
+                properties.setProperty(key + "." + i + ".time", String.valueOf(meter.getNanoTime(i)));
+            }
+        }
+    }
+
+    private static ThroughputMeter readThroughputMeter(String key, Properties properties)
+    {
+        String period = properties.getProperty(key + ".period");
+        if (period == null)
+            return null;
+        ThroughputMeter meter = new ThroughputMeter(Long.parseLong(period), TimeUnit.MILLISECONDS,
+                Integer.parseInt(properties.getProperty(key + ".capacity")));
+        meter.restore(Long.parseLong(properties.getProperty(key + ".count")),
+                Long.parseLong(properties.getProperty(key + ".dropped")),
+                Double.parseDouble(properties.getProperty(key + ".oneSecondRate")),
+                Double.parseDouble(properties.getProperty(key + ".fiveSecondRate")),
+                Double.parseDouble(properties.getProperty(key + ".fifteenSecondRate")));
+        int size = Integer.parseInt(properties.getProperty(key + ".size"));
+        for (int i = 0; i < size; ++i)
+        {
+            meter.append(Long.parseLong(properties.getProperty(key + "." + i + ".count")),
+                    Long.parseLong(properties.getProperty(key + "." + i + ".interval")),
+                    Long.parseLong(properties.getProperty(key + "." + i + ".time")));
+        }
+        return meter;
+    }
+
+    private static boolean isText(Class<?> type)
+    {
+        return type.isPrimitive() || type == String.class || type == Boolean.class || Number.class.isAssignableFrom(type);
+    }
+
+    private static Object parse(Class<?> type, String value)
+    {
+        if (type == long.class || type == Long.class)
+            return Long.valueOf(value);
+        if (type == int.class || type == Integer.class)
+            return Integer.valueOf(value);
+        if (type == float.class || type == Float.class)
+            return Float.valueOf(value);
+        if (type == double.class || type == Double.class)
+            return Double.valueOf(value);
+        if (type == boolean.class || type == Boolean.class)
+            return Boolean.valueOf(value);
+        if (type == String.class)
+            return value;
+        return null;
+    }
+
+    private static boolean isNested(Class<?> type)
+    {
+        return type.getEnclosingClass() == PlatformMonitor.class && Modifier.isPublic(type.getModifiers());
+    }
+
+    private static Class<?> rawType(Type type)
+    {
+        if (type instanceof Class)
+            return (Class<?>)type;
+        if (type instanceof ParameterizedType)
+            return (Class<?>)((ParameterizedType)type).getRawType();
+        return Object.class;
+    }
+
+    private static Type typeArgument(Type type, int index)
+    {
+        if (type instanceof ParameterizedType)
+            return ((ParameterizedType)type).getActualTypeArguments()[index];
+        return Object.class;
+    }
+
+    static String encode(Histogram histogram)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+        return Base64.getEncoder().encodeToString(Arrays.copyOf(buffer.array(), length));
+    }
+
+    static Histogram decode(String value)
+    {
+        try
+        {
+            ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(value));
+            return Histogram.decodeFromCompressedByteBuffer(buffer, 0);
+        }
+        catch (DataFormatException x)
+        {
+            throw new IllegalArgumentException(x);
+        }
+    }
+
+    private static List<Field> fields(Class<?> type)
+    {
+        List<Field> result = new ArrayList<>();
+        for (Field field : type.getDeclaredFields())
+        {
+            int modifiers = field.getModifiers();
+            if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers))
+                continue;
+            field.setAccessible(true);
+            result.add(field);
+        }
+        return result;
+    }
+}
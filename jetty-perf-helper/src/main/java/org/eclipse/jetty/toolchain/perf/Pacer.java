@@ -0,0 +1,140 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces a loop at a fixed period without drift.
+ * <div>
+ * Deadlines are computed from a fixed origin as {@code origin + n * period},
+ * so that the time spent between two calls to {@link #await()}, and the error
+ * of each individual wait, do not accumulate over the iterations.
+ * The period may be a fraction of nanoseconds, such as one third of a second
+ * for 3 deadlines per second, see {@link PlatformTimer#newPacer(long, long, TimeUnit)};
+ * the deadlines are then computed exactly, rather than accumulating a period
+ * truncated to a whole number of nanoseconds.
+ * When the loop falls behind, {@link #await()} returns immediately until the
+ * loop has caught up with the deadlines, and the deadline it returns can be used
+ * as the intended start time to correct for coordinated omission.
+ * </div>
+ * <div>
+ * Waits are performed by {@link PlatformTimer#sleepUntil(long)}, which parks the
+ * thread for most of the wait, so pacers can also be used from virtual threads, where available.
+ * </div>
+ * <div>
+ * Instances are not thread-safe and must be used by a single thread.
+ * </div>
+ */
+public class Pacer
+{
+    private final PlatformTimer timer;
+    private final long origin;
+    private final long interval;
+    private final long deadlines;
+    private long count;
+
+    Pacer(PlatformTimer timer, long origin, long period)
+    {
+        this(timer, origin, period, 1);
+    }
+
+    /**
+     * @param timer the timer to wait with
+     * @param origin the first deadline
+     * @param interval the nanoseconds in which the given number of deadlines are evenly spread
+     * @param deadlines the number of deadlines in the interval
+     */
+    Pacer(PlatformTimer timer, long origin, long interval, long deadlines)
+    {
+        if (interval <= 0 || deadlines <= 0 || interval > Long.MAX_VALUE / deadlines)
+            throw new IllegalArgumentException("Invalid period " + interval + "/" + deadlines);
+        this.timer = timer;
+        this.origin = origin;
+        this.interval = interval;
+        this.deadlines = deadlines;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} value of the first deadline
+     */
+    public long getOrigin()
+    {
+        return origin;
+    }
+
+    /**
+     * @return the interval between two deadlines, in nanoseconds,
+     * truncated to a whole number of nanoseconds
+     */
+    public long getPeriod()
+    {
+        return interval / deadlines;
+    }
+
+    /**
+     * @return the number of deadlines returned by {@link #await()}
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} value of the next deadline
+     */
+    public long getNextDeadline()
+    {
+        return getDeadline(count);
+    }
+
+    /**
+     * <p>Returns the {@link System#nanoTime()} value of the given deadline,
+     * that is {@code origin + deadline * interval / deadlines}.</p>
+     * <p>The computation is split in the quotient and the remainder of
+     * {@code deadline / deadlines} so that it is exact and does not overflow.</p>
+     *
+     * @param deadline the index of the deadline, 0 being the origin
+     * @return the {@link System#nanoTime()} value of the given deadline
+     */
+    long getDeadline(long deadline)
+    {
+        return origin + deadline / deadlines * interval + deadline % deadlines * interval / deadlines;
+    }
+
+    /**
+     * Waits until the next deadline, or returns immediately if the deadline has already passed.
+     *
+     * @return the {@link System#nanoTime()} value of the deadline, that is the intended start time
+     */
+    public long await()
+    {
+        long deadline = getNextDeadline();
+        ++count;
+        if (deadline - System.nanoTime() > 0)
+            timer.sleepUntil(deadline);
+        return deadline;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[period=%dus,count=%d]", getClass().getSimpleName(), hashCode(), TimeUnit.NANOSECONDS.toMicros(getPeriod()), count);
+    }
+}
@@ -23,16 +23,26 @@ import java.lang.management.GarbageCollectorMXBean;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
 import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
 import java.lang.management.MemoryUsage;
 import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Supplier;
+import org.HdrHistogram.Histogram;
 
 /**
  * Helper class that reports a number of information about the JVM and the OS,
@@ -66,12 +76,51 @@ import java.util.function.Supplier;
  * and a {@link Start} object is returned for the first paired {@link #start()}
  * call, and a {@link Stop} object is returned for the last paired
  * {@link #stop()} call.
+ * {@link PlatformMonitorServer} exposes {@link #start()} and {@link #stop()}
+ * over TCP, to be called remotely via {@link PlatformMonitorClient}.
  * </div>
  * <div>
  * GC activity is being polled, by default every 250 ms, see
  * {@link #setMemoryPollInterval(long)}.
  * If the benchmark triggers GC at a higher rate, the results reported
  * by this class may be inaccurate.
+ * Optionally, the {@code direct} and {@code mapped} buffer pools, the thread
+ * CPU times and the process metrics, such as the per-thread context switches,
+ * are polled at the same interval, see {@link #setBufferPoolsEnabled(boolean)},
+ * {@link #setThreadCPUEnabled(boolean)} and {@link #setProcessMetricsEnabled(boolean)}.
+ * </div>
+ * <div>
+ * Memory pools and garbage collectors are classified independently of the
+ * collector in use, including Serial, Parallel, G1, ZGC, Shenandoah and
+ * Epsilon; {@link Start} and {@link Stop} report every pool and collector,
+ * distinguishing collectors that report pauses from those that report
+ * concurrent cycles.
+ * </div>
+ * <div>
+ * Every garbage collection is also recorded via the GC notifications,
+ * see {@link Stop#gcEvents}, along with the distribution of the GC pauses,
+ * the bytes reclaimed, the bytes promoted to the old generation, and the
+ * heap usage after the last collection.
+ * </div>
+ * <div>
+ * Alternatively, GC activity can be recorded exactly by streaming JFR events,
+ * see {@link #setFlightRecorderEnabled(boolean)}; in this mode there is no
+ * polling, and {@link Stop} also reports the GC pauses distribution and the
+ * bytes reclaimed by the GC recorded by JFR, in separate fields, and the bytes
+ * allocated, sampled by JFR, while buffer
+ * pools, thread CPU times and context switches, if enabled, are only sampled at start and stop.
+ * </div>
+ * <div>
+ * Optionally, heap and memory pools usage, CPU time, GC counts, thread count
+ * and JIT time can be sampled periodically into a {@link Timeline}, reported
+ * by {@link Stop#timeline}, to show how the platform evolved during the
+ * monitoring, see {@link #setSamplingPeriod(long)}.
+ * </div>
+ * <div>
+ * Optionally, a dedicated thread measures the stalls imposed by the platform,
+ * such as safepoints, page faults or scheduling delays, reported by {@link Stop#hiccups},
+ * so that the latency floor of the environment can be told apart from the
+ * latency of the code being benchmarked, see {@link #setHiccupResolution(long)}.
  * </div>
  */
 public class PlatformMonitor implements Runnable
@@ -81,15 +130,43 @@ public class PlatformMonitor implements Runnable
     private final OperatingSystemMXBean operatingSystem;
     private final CompilationMXBean jitCompiler;
     private final MemoryMXBean heapMemory;
+    private final ThreadMXBean threads;
     private final AtomicInteger starts = new AtomicInteger();
     private final Supplier<MemoryUsage> edenMemoryPool;
     private final Supplier<MemoryUsage> survivorMemoryPool;
     private final Supplier<MemoryUsage> tenuredMemoryPool;
     private final GarbageCollector youngCollector;
     private final GarbageCollector oldCollector;
+    private final List<GarbageCollectorMXBean> garbageCollectors;
+    private final MemoryLayout memoryLayout;
+    private final Set<String> oldMemoryPools;
+    private GarbageCollectionListener gcListener;
     private ScheduledFuture<?> memoryPoller;
+    private ScheduledFuture<?> sampler;
+    private ScheduledFuture<?> platformPoller;
     private ScheduledExecutorService scheduler;
     private long memoryPollInterval = 250;
+    private long samplingPeriod;
+    private int samplingCapacity = 3600;
+    private int gcEventCapacity = 1000;
+    private Timeline timeline;
+    private boolean flightRecorderEnabled;
+    private FlightRecorderMonitor flightRecorder;
+    private StackProfiler stackProfiler;
+    private AllocationProfiler allocationProfiler;
+    private ThroughputMeter throughputMeter;
+    private long contentionSamplingPeriod;
+    private ContentionTracker contentionTracker;
+    private boolean bufferPoolsEnabled;
+    private BufferPoolTracker bufferPoolTracker;
+    private boolean threadCPUEnabled;
+    private String[] threadGroups = {"qtp*", "HttpClient*", "Scheduler*"};
+    private ThreadCPUTracker threadCPUTracker;
+    private long hiccupResolution;
+    private PlatformTimer platformTimer;
+    private HiccupMeter hiccupMeter;
+    private int classHistogramSize;
+    private ClassHistogramTracker classHistogramTracker;
     private long youngCount;
     private long youngTime;
     private long oldCount;
@@ -100,6 +177,13 @@ public class PlatformMonitor implements Runnable
     private long time;
     private long cpuTime;
     private long jitTime;
+    private List<Collector> startCollectors;
+    private long gcCount;
+    private long gcTime;
+    private Map<Long, Long> threadAllocations;
+    private boolean processMetricsEnabled;
+    private ProcessMetrics processMetrics;
+    private ProcessMetrics processStart;
     private Stop stop;
 
     public PlatformMonitor()
@@ -107,53 +191,26 @@ public class PlatformMonitor implements Runnable
         this.operatingSystem = ManagementFactory.getOperatingSystemMXBean();
         this.jitCompiler = ManagementFactory.getCompilationMXBean();
         this.heapMemory = ManagementFactory.getMemoryMXBean();
-
-        List<MemoryPoolMXBean> memoryPools = ManagementFactory.getMemoryPoolMXBeans();
-        MemoryPoolMXBean emp = null;
-        MemoryPoolMXBean smp = null;
-        MemoryPoolMXBean omp = null;
-        for (MemoryPoolMXBean memoryPool : memoryPools)
+        this.threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean)
         {
-            String memoryPoolName = memoryPool.getName();
-            if ("PS Eden Space".equals(memoryPoolName) ||
-                    "Par Eden Space".equals(memoryPoolName) ||
-                    "G1 Eden Space".equals(memoryPoolName))
-                emp = memoryPool;
-            else if ("PS Survivor Space".equals(memoryPoolName) ||
-                    "Par Survivor Space".equals(memoryPoolName) ||
-                    "G1 Survivor Space".equals(memoryPoolName))
-                smp = memoryPool;
-            else if ("PS Old Gen".equals(memoryPoolName) ||
-                    "CMS Old Gen".equals(memoryPoolName) ||
-                    "G1 Old Gen".equals(memoryPoolName) ||
-                    "Shenandoah".equals(memoryPoolName) ||
-                    "ZHeap".equals(memoryPoolName))
-                omp = memoryPool;
+            com.sun.management.ThreadMXBean tmx = (com.sun.management.ThreadMXBean)threads;
+            if (tmx.isThreadAllocatedMemorySupported() && !tmx.isThreadAllocatedMemoryEnabled())
+                tmx.setThreadAllocatedMemoryEnabled(true);
         }
+
+        memoryLayout = new MemoryLayout();
+        MemoryPoolMXBean emp = memoryLayout.eden;
+        MemoryPoolMXBean smp = memoryLayout.survivor;
+        MemoryPoolMXBean omp = memoryLayout.tenured;
         edenMemoryPool = emp == null ? () -> ZERO_MEMORY_USAGE : emp::getUsage;
         survivorMemoryPool = smp == null ? () -> ZERO_MEMORY_USAGE : smp::getUsage;
         tenuredMemoryPool = omp == null ? () -> ZERO_MEMORY_USAGE : omp::getUsage;
+        oldMemoryPools = memoryLayout.tenuredPools();
 
-        List<GarbageCollectorMXBean> garbageCollectors = ManagementFactory.getGarbageCollectorMXBeans();
-        GarbageCollectorMXBean yc = null;
-        GarbageCollectorMXBean oc = null;
-        for (GarbageCollectorMXBean garbageCollector : garbageCollectors)
-        {
-            String gcName = garbageCollector.getName();
-            if ("PS Scavenge".equals(gcName) ||
-                    "ParNew".equals(gcName) ||
-                    "G1 Young Generation".equals(gcName) ||
-                    "Shenandoah Pauses".equals(gcName))
-                yc = garbageCollector;
-            else if ("PS MarkSweep".equals(gcName) ||
-                    "ConcurrentMarkSweep".equals(gcName) ||
-                    "G1 Old Generation".equals(gcName) ||
-                    "Shenandoah Cycles".equals(gcName) ||
-                    "ZGC".equals(gcName))
-                oc = garbageCollector;
-        }
-        youngCollector = yc == null ? GarbageCollector.NO_GARBAGE_COLLECTOR : GarbageCollector.from(yc);
-        oldCollector = oc == null ? GarbageCollector.NO_GARBAGE_COLLECTOR : GarbageCollector.from(oc);
+        garbageCollectors = new ArrayList<>(memoryLayout.collectors.keySet());
+        youngCollector = GarbageCollector.from(memoryLayout.collectors(MemoryLayout.YOUNG));
+        oldCollector = GarbageCollector.from(memoryLayout.collectors(MemoryLayout.OLD));
     }
 
     public long getMemoryPollInterval()
@@ -166,6 +223,303 @@ public class PlatformMonitor implements Runnable
         this.memoryPollInterval = gcPollInterval;
     }
 
+    public long getSamplingPeriod()
+    {
+        return samplingPeriod;
+    }
+
+    /**
+     * <p>Sets the period, in milliseconds, at which the platform is sampled
+     * into a {@link Timeline}, reported by {@link Stop#timeline}.</p>
+     * <p>A non-positive value, the default, disables the sampling.</p>
+     *
+     * @param samplingPeriod the sampling period in milliseconds
+     * @see #setSamplingCapacity(int)
+     */
+    public void setSamplingPeriod(long samplingPeriod)
+    {
+        this.samplingPeriod = samplingPeriod;
+    }
+
+    public int getSamplingCapacity()
+    {
+        return samplingCapacity;
+    }
+
+    /**
+     * <p>Sets the max number of samples retained by the {@link Timeline};
+     * when more samples are taken, the oldest are discarded.</p>
+     * <p>The default capacity retains one hour of samples taken every second.</p>
+     *
+     * @param samplingCapacity the max number of samples retained
+     */
+    public void setSamplingCapacity(int samplingCapacity)
+    {
+        this.samplingCapacity = samplingCapacity;
+    }
+
+    public int getGCEventCapacity()
+    {
+        return gcEventCapacity;
+    }
+
+    /**
+     * <p>Sets the max number of GC events retained in {@link Stop#gcEvents};
+     * when more collections happen, the oldest events are discarded and
+     * counted by {@link Stop#droppedGCEvents}.</p>
+     * <p>The GC pauses distribution and the reclaimed and promoted bytes
+     * account for all the collections, regardless of this capacity.</p>
+     *
+     * @param gcEventCapacity the max number of GC events retained
+     */
+    public void setGCEventCapacity(int gcEventCapacity)
+    {
+        this.gcEventCapacity = gcEventCapacity;
+    }
+
+    public boolean isFlightRecorderEnabled()
+    {
+        return flightRecorderEnabled;
+    }
+
+    /**
+     * <p>Enables or disables the collection of GC, allocation, JIT and
+     * thread CPU load information via in-process JFR event streaming,
+     * instead of polling the memory pools.</p>
+     * <p>When enabled, {@link #stop()} may block for a couple of seconds,
+     * waiting for JFR to deliver the events up to the stop time.
+     * The GC pauses and reclaimed bytes reported by JFR, which have
+     * nanosecond resolution, are reported by {@link Stop#flightRecorderGCPauses}
+     * and {@link Stop#flightRecorderReclaimedBytes}, along with those from the
+     * GC notifications, which have the same meaning in both modes.</p>
+     * <p>To not perturb the measurement with polling, in this mode the buffer
+     * pools, the thread CPU times and the context switches, if enabled, are only sampled at
+     * start and stop, at the cost of precision: the buffer pools peak usage and
+     * churn only account for the difference between start and stop, and the CPU
+     * time and the context switches of the threads that end before stop are not
+     * reported.</p>
+     *
+     * @param flightRecorderEnabled whether to use JFR event streaming
+     */
+    public void setFlightRecorderEnabled(boolean flightRecorderEnabled)
+    {
+        this.flightRecorderEnabled = flightRecorderEnabled;
+    }
+
+    public long getContentionSamplingPeriod()
+    {
+        return contentionSamplingPeriod;
+    }
+
+    /**
+     * <p>Sets the period, in milliseconds, at which the threads are sampled
+     * to detect which locks and monitors are contended, reported by
+     * {@link Stop#lockContentions}, along with the blocked and waited counts
+     * and times of all threads, and of each thread, see {@link Stop#threadContentions}.</p>
+     * <p>Thread contention monitoring is enabled during the monitoring, and
+     * may slightly slow down lock acquisition.</p>
+     * <p>A non-positive value, the default, disables contention tracking.</p>
+     *
+     * @param contentionSamplingPeriod the sampling period in milliseconds
+     */
+    public void setContentionSamplingPeriod(long contentionSamplingPeriod)
+    {
+        this.contentionSamplingPeriod = contentionSamplingPeriod;
+    }
+
+    public boolean isBufferPoolsEnabled()
+    {
+        return bufferPoolsEnabled;
+    }
+
+    /**
+     * <p>Enables or disables the polling of the {@code direct} and {@code mapped}
+     * buffer pools, to report their peak usage and churn, see {@link Stop#bufferPools}.</p>
+     * <p>Disabled by default.</p>
+     *
+     * @param bufferPoolsEnabled whether to track the buffer pools
+     */
+    public void setBufferPoolsEnabled(boolean bufferPoolsEnabled)
+    {
+        this.bufferPoolsEnabled = bufferPoolsEnabled;
+    }
+
+    public boolean isThreadCPUEnabled()
+    {
+        return threadCPUEnabled;
+    }
+
+    /**
+     * <p>Enables or disables the polling of the CPU and user time of all
+     * threads, to report the CPU time of each thread and thread group,
+     * including the threads that end before the end of the monitoring,
+     * see {@link Stop#threadCPUs} and {@link Stop#threadGroupCPUs}.</p>
+     * <p>Each poll reads the times of all threads, which may perturb
+     * benchmarks with many threads; disabled by default.</p>
+     *
+     * @param threadCPUEnabled whether to track the thread CPU times
+     */
+    public void setThreadCPUEnabled(boolean threadCPUEnabled)
+    {
+        this.threadCPUEnabled = threadCPUEnabled;
+    }
+
+    public boolean isProcessMetricsEnabled()
+    {
+        return processMetricsEnabled;
+    }
+
+    /**
+     * <p>Enables or disables the process metrics read from {@code /proc},
+     * where available: page faults, context switches, resident set size
+     * and I/O, see {@link Stop#voluntaryContextSwitches}.</p>
+     * <p>The status file of each thread is read at every poll, to account
+     * the context switches of the threads that exit; disabled by default.</p>
+     *
+     * @param processMetricsEnabled whether to read the process metrics
+     */
+    public void setProcessMetricsEnabled(boolean processMetricsEnabled)
+    {
+        this.processMetricsEnabled = processMetricsEnabled;
+    }
+
+    public String[] getThreadGroups()
+    {
+        return threadGroups.clone();
+    }
+
+    /**
+     * <p>Sets the glob patterns, such as {@code qtp*}, that group threads
+     * by name to report their CPU time, see {@link Stop#threadGroupCPUs}
+     * and {@link #setThreadCPUEnabled(boolean)}.</p>
+     * <p>Threads are assigned to the first matching pattern; threads that
+     * do not match any pattern are grouped as {@code other}.</p>
+     *
+     * @param threadGroups the glob patterns of the thread names
+     */
+    public void setThreadGroups(String... threadGroups)
+    {
+        this.threadGroups = threadGroups.clone();
+    }
+
+    public StackProfiler getStackProfiler()
+    {
+        return stackProfiler;
+    }
+
+    /**
+     * <p>Sets the profiler that samples the stack traces of the threads
+     * between {@link #start()} and {@link #stop()}, reported by
+     * {@link Stop#stackProfiler}.</p>
+     *
+     * @param stackProfiler the profiler, or null to disable profiling
+     */
+    public void setStackProfiler(StackProfiler stackProfiler)
+    {
+        this.stackProfiler = stackProfiler;
+    }
+
+    public AllocationProfiler getAllocationProfiler()
+    {
+        return allocationProfiler;
+    }
+
+    /**
+     * <p>Sets the profiler that aggregates the allocation samples taken
+     * by JFR between {@link #start()} and {@link #stop()}, reported by
+     * {@link Stop#allocationProfiler}.</p>
+     * <p>When set, {@link #stop()} may block for a couple of seconds,
+     * waiting for JFR to deliver the samples up to the stop time.</p>
+     *
+     * @param allocationProfiler the profiler, or null to disable allocation profiling
+     */
+    public void setAllocationProfiler(AllocationProfiler allocationProfiler)
+    {
+        this.allocationProfiler = allocationProfiler;
+    }
+
+    public ThroughputMeter getThroughputMeter()
+    {
+        return throughputMeter;
+    }
+
+    /**
+     * <p>Sets the meter that records the throughput of the operations
+     * between {@link #start()} and {@link #stop()}, reported by
+     * {@link Stop#throughputMeter}.</p>
+     * <p>When the number of operations is not passed to {@link #stop(long)},
+     * the operations counted by the meter are reported instead.</p>
+     *
+     * @param throughputMeter the meter, or null to disable throughput recording
+     */
+    public void setThroughputMeter(ThroughputMeter throughputMeter)
+    {
+        this.throughputMeter = throughputMeter;
+    }
+
+    public long getHiccupResolution()
+    {
+        return hiccupResolution;
+    }
+
+    /**
+     * <p>Sets the interval, in microseconds, at which a dedicated thread
+     * wakes up to measure the stalls imposed by the platform, reported
+     * by {@link Stop#hiccups}.</p>
+     * <p>A value of 1000 microseconds is a good compromise between precision
+     * and overhead; a non-positive value, the default, disables the measurement.</p>
+     *
+     * @param hiccupResolution the wake-up interval in microseconds
+     * @see #setPlatformTimer(PlatformTimer)
+     */
+    public void setHiccupResolution(long hiccupResolution)
+    {
+        this.hiccupResolution = hiccupResolution;
+    }
+
+    public PlatformTimer getPlatformTimer()
+    {
+        return platformTimer;
+    }
+
+    /**
+     * <p>Sets the timer used to measure the stalls of the platform,
+     * when enabled via {@link #setHiccupResolution(long)}.</p>
+     * <p>If not set, a timer is detected via {@link PlatformTimer#detect()}
+     * the first time it is needed, and shared by all monitors; the detection
+     * takes about a second and performs a few GCs, so it is better done
+     * before the warm-up, by setting the detected timer explicitly.</p>
+     *
+     * @param platformTimer the timer to measure the stalls of the platform with
+     */
+    public void setPlatformTimer(PlatformTimer platformTimer)
+    {
+        this.platformTimer = platformTimer;
+    }
+
+    public int getClassHistogramSize()
+    {
+        return classHistogramSize;
+    }
+
+    /**
+     * <p>Sets the number of classes reported by {@link Stop#classesByInstances}
+     * and {@link Stop#classesByBytes}, the classes whose live instances and
+     * bytes grew the most between {@link #start()} and {@link #stop()}.</p>
+     * <p>The heap class histogram is captured at start and at stop, which
+     * performs a full GC each time and may take a while on large heaps;
+     * the capture at start happens before the monitoring starts, and the
+     * capture at stop after the monitoring ended, so the full GCs are not
+     * reported.</p>
+     * <p>A non-positive value, the default, disables the class histogram.</p>
+     *
+     * @param classHistogramSize the number of classes to report
+     */
+    public void setClassHistogramSize(int classHistogramSize)
+    {
+        this.classHistogramSize = classHistogramSize;
+    }
+
     public void run()
     {
         long eden = edenMemoryPool.get().getUsed();
@@ -217,15 +571,43 @@ public class PlatformMonitor implements Runnable
             Start start = new Start();
             stop = new Stop();
 
+            // Resolve the timer before the baselines are taken, since the
+            // detection, if hiccups are enabled without a timer, takes a
+            // while, allocates and triggers GCs.
+            PlatformTimer hiccupTimer = null;
+            if (hiccupResolution > 0)
+                hiccupTimer = platformTimer != null ? platformTimer : DetectedTimer.INSTANCE;
+
+            if (classHistogramSize > 0)
+            {
+                classHistogramTracker = new ClassHistogramTracker(classHistogramSize);
+                classHistogramTracker.start();
+            }
+
+            if (flightRecorderEnabled)
+                flightRecorder = new FlightRecorderMonitor();
+
             System.gc();
 
             time = System.nanoTime();
+            Instant startInstant = Instant.now();
+
+            gcListener = new GarbageCollectionListener(garbageCollectors, oldMemoryPools, gcEventCapacity);
+            gcListener.start();
 
-            lastEden = edenMemoryPool.get().getUsed();
-            lastSurvivor = survivorMemoryPool.get().getUsed();
-            lastTenured = tenuredMemoryPool.get().getUsed();
             scheduler = Executors.newSingleThreadScheduledExecutor();
-            memoryPoller = scheduler.scheduleWithFixedDelay(this, memoryPollInterval, memoryPollInterval, TimeUnit.MILLISECONDS);
+
+            if (flightRecorder != null)
+            {
+                flightRecorder.start(startInstant);
+            }
+            else
+            {
+                lastEden = edenMemoryPool.get().getUsed();
+                lastSurvivor = survivorMemoryPool.get().getUsed();
+                lastTenured = tenuredMemoryPool.get().getUsed();
+                memoryPoller = scheduler.scheduleWithFixedDelay(this, memoryPollInterval, memoryPollInterval, TimeUnit.MILLISECONDS);
+            }
 
             youngCount = youngCollector.getCollectionCount();
             youngTime = youngCollector.getCollectionTime();
@@ -240,6 +622,72 @@ public class PlatformMonitor implements Runnable
 
             jitTime = jitCompiler.getTotalCompilationTime();
 
+            ProcessMetrics process = processMetrics = processMetricsEnabled ? new ProcessMetrics() : null;
+            if (process != null)
+            {
+                process.sample();
+                processStart = process.copy();
+            }
+
+            BufferPoolTracker bufferPools = bufferPoolTracker = bufferPoolsEnabled ? new BufferPoolTracker() : null;
+            if (bufferPools != null)
+                bufferPools.start();
+            ThreadCPUTracker threadCPUs = threadCPUTracker = threadCPUEnabled ? new ThreadCPUTracker(threads, threadGroups) : null;
+            if (threadCPUs != null)
+                threadCPUs.start();
+            if (flightRecorder == null && (process != null || bufferPools != null || threadCPUs != null))
+            {
+                platformPoller = scheduler.scheduleWithFixedDelay(() ->
+                {
+                    if (bufferPools != null)
+                        bufferPools.sample();
+                    if (threadCPUs != null)
+                        threadCPUs.sample();
+                    // Sampled periodically to account the
+                    // context switches of the exited threads.
+                    if (process != null)
+                        process.sample();
+                }, memoryPollInterval, memoryPollInterval, TimeUnit.MILLISECONDS);
+            }
+
+            gcCount = 0;
+            gcTime = 0;
+            for (GarbageCollectorMXBean garbageCollector : garbageCollectors)
+            {
+                gcCount += Math.max(0, garbageCollector.getCollectionCount());
+                gcTime += Math.max(0, garbageCollector.getCollectionTime());
+            }
+
+            threadAllocations = threadAllocatedBytes();
+
+            if (samplingPeriod > 0)
+            {
+                Timeline timeline = this.timeline = new Timeline(samplingCapacity, operatingSystem.getAvailableProcessors(), samplingPeriod);
+                sample(timeline);
+                sampler = scheduler.scheduleAtFixedRate(() -> sample(timeline), samplingPeriod, samplingPeriod, TimeUnit.MILLISECONDS);
+            }
+
+            if (contentionSamplingPeriod > 0)
+            {
+                contentionTracker = new ContentionTracker(threads, contentionSamplingPeriod);
+                contentionTracker.start();
+            }
+
+            if (stackProfiler != null)
+                stackProfiler.start();
+
+            if (allocationProfiler != null)
+                allocationProfiler.start();
+
+            if (throughputMeter != null)
+                throughputMeter.start();
+
+            if (hiccupTimer != null)
+            {
+                hiccupMeter = new HiccupMeter(hiccupTimer, hiccupResolution);
+                hiccupMeter.start();
+            }
+
             start.date = System.currentTimeMillis();
             start.os = String.format("%s %s %s", operatingSystem.getName(), operatingSystem.getVersion(), operatingSystem.getArch());
             start.cores = stop.cores = operatingSystem.getAvailableProcessors();
@@ -254,6 +702,10 @@ public class PlatformMonitor implements Runnable
             start.eden = edenMemoryPool.get();
             start.survivor = survivorMemoryPool.get();
             start.tenured = tenuredMemoryPool.get();
+            if (processStart != null)
+                start.rss = processStart.rss;
+            start.memoryPools = memoryPools();
+            start.collectors = startCollectors = collectors();
 
             return start;
         }
@@ -266,21 +718,69 @@ public class PlatformMonitor implements Runnable
      * null for calls to this method not paired with
      * the first {@link #start()} call.
      * @see #start()
+     * @see #stop(long)
      */
     public Stop stop()
+    {
+        return stop(-1);
+    }
+
+    /**
+     * Stops the monitoring of the platform, reading the number of operations
+     * performed during the monitoring from the given {@link LongAdder}.
+     *
+     * @param operations the counter of the operations performed
+     * @return a {@link Stop} object if the monitoring stopped,
+     * null for calls to this method not paired with
+     * the first {@link #start()} call.
+     * @see #stop(long)
+     */
+    public Stop stop(LongAdder operations)
+    {
+        return stop(operations.sum());
+    }
+
+    /**
+     * Stops the monitoring of the platform.
+     * <div>
+     * The given number of operations performed during the monitoring is used
+     * to report normalized metrics such as allocated bytes per operation,
+     * CPU time per operation and GC time per 1000 operations.
+     * Only the value passed to the last paired call is used.
+     * </div>
+     *
+     * @param operations the number of operations performed, or a negative
+     * value if unknown
+     * @return a {@link Stop} object if the monitoring stopped,
+     * null for calls to this method not paired with
+     * the first {@link #start()} call.
+     * @see #start()
+     */
+    public Stop stop(long operations)
     {
         synchronized (this)
         {
             if (starts.decrementAndGet() > 0)
                 return null;
 
+            if (throughputMeter != null)
+            {
+                throughputMeter.stop();
+                stop.throughputMeter = throughputMeter.copy();
+                if (operations < 0)
+                    operations = throughputMeter.getCount();
+            }
+
+            stop.operations = operations;
+
+            // Take all the readings relative to the start baselines at
+            // the same instant of the elapsed time, before tearing down
+            // the profilers, which may block for a while.
             stop.date = System.currentTimeMillis();
             stop.time = System.nanoTime() - time;
+            Instant stopInstant = Instant.now();
             stop.jitTime = jitCompiler.getTotalCompilationTime() - jitTime;
 
-            memoryPoller.cancel(false);
-            scheduler.shutdown();
-
             stop.youngTime = youngCollector.getCollectionTime() - youngTime;
             stop.oldTime = oldCollector.getCollectionTime() - oldTime;
             stop.youngCount = youngCollector.getCollectionCount() - youngCount;
@@ -296,29 +796,255 @@ public class PlatformMonitor implements Runnable
                 stop.cpuTime = -1;
             }
 
-            return stop;
-        }
-    }
+            Map<Long, Long> allocations = threadAllocatedBytes();
+            if (allocations != null)
+            {
+                long allocated = 0;
+                for (Map.Entry<Long, Long> entry : allocations.entrySet())
+                {
+                    allocated += entry.getValue() - threadAllocations.getOrDefault(entry.getKey(), 0L);
+                }
+                stop.threadAllocatedBytes = allocated;
+            }
+            threadAllocations = null;
 
-    private static class Base
-    {
-        public String EOL = System.lineSeparator();
+            if (processMetrics != null)
+            {
+                processMetrics.sample();
+                ProcessMetrics processStop = processMetrics.copy();
+                stop.minorPageFaults = delta(processStop.minorPageFaults, processStart.minorPageFaults);
+                stop.majorPageFaults = delta(processStop.majorPageFaults, processStart.majorPageFaults);
+                stop.voluntaryContextSwitches = delta(processStop.voluntaryContextSwitches, processStart.voluntaryContextSwitches);
+                stop.involuntaryContextSwitches = delta(processStop.involuntaryContextSwitches, processStart.involuntaryContextSwitches);
+                stop.readChars = delta(processStop.readChars, processStart.readChars);
+                stop.writeChars = delta(processStop.writeChars, processStart.writeChars);
+                stop.readBytes = delta(processStop.readBytes, processStart.readBytes);
+                stop.writeBytes = delta(processStop.writeBytes, processStart.writeBytes);
+                stop.startRSS = processStart.rss;
+                stop.stopRSS = processStop.rss;
+                stop.peakRSS = processStop.peakRSS;
+                processStart = null;
+            }
 
-        public float percent(long dividend, long divisor)
-        {
-            if (divisor != 0)
-                return (float)dividend * 100 / divisor;
-            return Float.NaN;
-        }
+            stop.memoryPools = memoryPools();
+            List<Collector> collectors = collectors();
+            for (int i = 0; i < collectors.size(); ++i)
+            {
+                Collector collector = collectors.get(i);
+                collector.count -= startCollectors.get(i).count;
+                collector.time -= startCollectors.get(i).time;
+            }
+            stop.collectors = collectors;
+            startCollectors = null;
 
-        public float mebiBytes(long bytes)
-        {
-            return (float)bytes / 1024 / 1024;
-        }
+            if (memoryPoller != null)
+            {
+                memoryPoller.cancel(false);
+                memoryPoller = null;
+            }
+            if (platformPoller != null)
+            {
+                platformPoller.cancel(false);
+                platformPoller = null;
+            }
+            if (sampler != null)
+                sampler.cancel(false);
+            // Wait for a poll that is already running,
+            // so that it does not modify the stop.
+            scheduler.shutdown();
+            try
+            {
+                scheduler.awaitTermination(5, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException x)
+            {
+                Thread.currentThread().interrupt();
+            }
+            scheduler = null;
+            if (processMetrics != null)
+            {
+                processMetrics.close();
+                processMetrics = null;
+            }
+            if (bufferPoolTracker != null)
+            {
+                bufferPoolTracker.stop(stop);
+                bufferPoolTracker = null;
+            }
+            if (threadCPUTracker != null)
+            {
+                threadCPUTracker.stop(stop);
+                threadCPUTracker = null;
+            }
+            if (sampler != null)
+            {
+                sampler = null;
+                sample(timeline);
+                stop.timeline = timeline;
+                timeline = null;
+            }
 
-        public float gibiBytes(long bytes)
-        {
-            return (float)bytes / 1024 / 1024 / 1024;
+            gcListener.stop(stop);
+            gcListener = null;
+
+            if (contentionTracker != null)
+            {
+                contentionTracker.stop(stop);
+                contentionTracker = null;
+            }
+
+            if (hiccupMeter != null)
+            {
+                hiccupMeter.stop(stop);
+                hiccupMeter = null;
+            }
+
+            if (stackProfiler != null)
+            {
+                stackProfiler.stop();
+                stop.stackProfiler = stackProfiler.copy();
+            }
+
+            if (allocationProfiler != null)
+            {
+                allocationProfiler.stop();
+                stop.allocationProfiler = allocationProfiler.copy();
+            }
+
+            if (flightRecorder != null)
+            {
+                flightRecorder.stop(stopInstant, stop);
+                flightRecorder = null;
+                stop.edenBytes = stop.survivorBytes = stop.tenuredBytes = -1;
+            }
+
+            if (classHistogramTracker != null)
+            {
+                classHistogramTracker.stop(stop);
+                classHistogramTracker = null;
+            }
+
+            return stop;
+        }
+    }
+
+    private void sample(Timeline timeline)
+    {
+        // Serialize the periodic samples with the last one taken by stop().
+        synchronized (timeline)
+        {
+            long now = System.nanoTime();
+            MemoryUsage heap = heapMemory.getHeapMemoryUsage();
+            long processCPUTime = -1;
+            if (operatingSystem instanceof com.sun.management.OperatingSystemMXBean)
+                processCPUTime = ((com.sun.management.OperatingSystemMXBean)operatingSystem).getProcessCpuTime() - cpuTime;
+            long collections = 0;
+            long collectionTime = 0;
+            for (GarbageCollectorMXBean garbageCollector : garbageCollectors)
+            {
+                collections += Math.max(0, garbageCollector.getCollectionCount());
+                collectionTime += Math.max(0, garbageCollector.getCollectionTime());
+            }
+            timeline.record(TimeUnit.NANOSECONDS.toMillis(now - time),
+                    heap.getUsed(),
+                    heap.getCommitted(),
+                    edenMemoryPool.get().getUsed(),
+                    survivorMemoryPool.get().getUsed(),
+                    tenuredMemoryPool.get().getUsed(),
+                    processCPUTime,
+                    collections - gcCount,
+                    collectionTime - gcTime,
+                    threads.getThreadCount(),
+                    jitCompiler.getTotalCompilationTime() - jitTime);
+        }
+    }
+
+    private List<MemoryPool> memoryPools()
+    {
+        List<MemoryPool> result = new ArrayList<>();
+        for (Map.Entry<MemoryPoolMXBean, String> entry : memoryLayout.pools.entrySet())
+        {
+            MemoryPoolMXBean mxBean = entry.getKey();
+            MemoryPool pool = new MemoryPool();
+            pool.name = mxBean.getName();
+            pool.heap = mxBean.getType() == MemoryType.HEAP;
+            pool.role = entry.getValue();
+            pool.usage = mxBean.getUsage();
+            result.add(pool);
+        }
+        return result;
+    }
+
+    private List<Collector> collectors()
+    {
+        List<Collector> result = new ArrayList<>();
+        for (Map.Entry<GarbageCollectorMXBean, String> entry : memoryLayout.collectors.entrySet())
+        {
+            GarbageCollectorMXBean mxBean = entry.getKey();
+            Collector collector = new Collector();
+            collector.name = mxBean.getName();
+            collector.role = entry.getValue();
+            collector.count = Math.max(0, mxBean.getCollectionCount());
+            collector.time = Math.max(0, mxBean.getCollectionTime());
+            result.add(collector);
+        }
+        return result;
+    }
+
+    private static long delta(long stop, long start)
+    {
+        return stop < 0 || start < 0 ? -1 : stop - start;
+    }
+
+    private Map<Long, Long> threadAllocatedBytes()
+    {
+        if (!(threads instanceof com.sun.management.ThreadMXBean))
+            return null;
+        com.sun.management.ThreadMXBean tmx = (com.sun.management.ThreadMXBean)threads;
+        if (!tmx.isThreadAllocatedMemoryEnabled())
+            return null;
+        long[] ids = tmx.getAllThreadIds();
+        long[] bytes = tmx.getThreadAllocatedBytes(ids);
+        Map<Long, Long> result = new HashMap<>(ids.length * 2);
+        for (int i = 0; i < ids.length; ++i)
+        {
+            // Threads that died in the meantime report -1.
+            if (bytes[i] >= 0)
+                result.put(ids[i], bytes[i]);
+        }
+        return result;
+    }
+
+    private static class DetectedTimer
+    {
+        // Detected lazily, since the detection takes a while.
+        private static final PlatformTimer INSTANCE = PlatformTimer.detect();
+    }
+
+    private static class Base
+    {
+        public String EOL = System.lineSeparator();
+
+        public float percent(long dividend, long divisor)
+        {
+            if (divisor != 0)
+                return (float)dividend * 100 / divisor;
+            return Float.NaN;
+        }
+
+        public float mebiBytes(long bytes)
+        {
+            return (float)bytes / 1024 / 1024;
+        }
+
+        public float gibiBytes(long bytes)
+        {
+            return (float)bytes / 1024 / 1024 / 1024;
+        }
+
+        public float millis(long nanos)
+        {
+            return (float)nanos / 1_000_000;
         }
     }
 
@@ -334,6 +1060,12 @@ public class PlatformMonitor implements Runnable
         public MemoryUsage eden;
         public MemoryUsage survivor;
         public MemoryUsage tenured;
+        public long rss = -1;
+        public List<MemoryPool> memoryPools;
+        /**
+         * The garbage collectors, with the collection counts and times since the JVM start.
+         */
+        public List<Collector> collectors;
 
         @Override
         public String toString()
@@ -353,6 +1085,25 @@ public class PlatformMonitor implements Runnable
                     .append(" MiB").append(EOL);
             builder.append("Young Generation Heap Size: ").append(mebiBytes(heap.getMax() - tenured.getMax()))
                     .append(" MiB").append(EOL);
+            if (rss >= 0)
+                builder.append("Resident Set Size: ").append(mebiBytes(rss))
+                        .append(" MiB").append(EOL);
+            if (memoryPools != null)
+            {
+                builder.append("Memory Pools:").append(EOL);
+                for (MemoryPool pool : memoryPools)
+                {
+                    builder.append("\t").append(pool).append(EOL);
+                }
+            }
+            if (collectors != null)
+            {
+                builder.append("Garbage Collectors:").append(EOL);
+                for (Collector collector : collectors)
+                {
+                    builder.append("\t").append(collector).append(EOL);
+                }
+            }
             builder.append("- - - - - - - - - - - - - - - - - - - - ");
             return builder.toString();
         }
@@ -360,6 +1111,12 @@ public class PlatformMonitor implements Runnable
 
     public static class Stop extends Base
     {
+        /**
+         * The fraction of the elapsed time spent in JIT compilation
+         * above which the JIT is considered still active.
+         */
+        public static final double JIT_ACTIVITY_THRESHOLD = 0.01;
+
         private int cores;
         public long date;
         public long time;
@@ -372,6 +1129,213 @@ public class PlatformMonitor implements Runnable
         public long survivorBytes;
         public long tenuredBytes;
         public long cpuTime;
+        /**
+         * The number of collections that paused the application,
+         * from the GC notifications, with millisecond resolution.
+         */
+        public long gcCount;
+        /**
+         * The time, in nanoseconds, of the collections that paused the application.
+         */
+        public long gcPauseTime;
+        /**
+         * The distribution, in nanoseconds, of the durations of the
+         * collections that paused the application.
+         */
+        public Histogram gcPauses;
+        /**
+         * The number of collections recorded by JFR, including concurrent
+         * cycles, or -1 if JFR was disabled, see {@link PlatformMonitor#setFlightRecorderEnabled(boolean)}.
+         */
+        public long flightRecorderGCCount = -1;
+        /**
+         * The sum of the pauses, in nanoseconds, of the collections recorded by JFR, or -1 if JFR was disabled.
+         */
+        public long flightRecorderGCPauseTime = -1;
+        /**
+         * The distribution, in nanoseconds, of the sum of the pauses of each
+         * collection recorded by JFR, or null if JFR was disabled.
+         */
+        public Histogram flightRecorderGCPauses;
+        /**
+         * The bytes reclaimed by the collections recorded by JFR, or -1 if JFR was disabled.
+         */
+        public long flightRecorderReclaimedBytes = -1;
+        /**
+         * The most recent garbage collections, in order, up to
+         * {@link PlatformMonitor#setGCEventCapacity(int) a capacity}.
+         */
+        public List<GCEvent> gcEvents;
+        /**
+         * The number of garbage collections not retained in {@link #gcEvents}.
+         */
+        public long droppedGCEvents;
+        public long reclaimedBytes = -1;
+        public long promotedBytes = -1;
+        public long liveBytes = -1;
+        public long allocatedBytes = -1;
+        public long jitCount = -1;
+        public Map<String, Float> threadCPULoads;
+        public long threadAllocatedBytes = -1;
+        public long operations = -1;
+        public long minorPageFaults = -1;
+        public long majorPageFaults = -1;
+        /**
+         * The voluntary context switches of the threads alive at the end of the
+         * monitoring, and of the threads that exited, up to their last poll,
+         * or -1 if not available or disabled,
+         * see {@link PlatformMonitor#setProcessMetricsEnabled(boolean)}.
+         */
+        public long voluntaryContextSwitches = -1;
+        public long involuntaryContextSwitches = -1;
+        public long startRSS = -1;
+        public long stopRSS = -1;
+        public long peakRSS = -1;
+        public long readChars = -1;
+        public long writeChars = -1;
+        public long readBytes = -1;
+        public long writeBytes = -1;
+        /**
+         * The periodic samples, or null if sampling was disabled,
+         * see {@link PlatformMonitor#setSamplingPeriod(long)}.
+         */
+        public Timeline timeline;
+        /**
+         * The delays, in nanoseconds, of the wake-ups of a thread that does
+         * no work, that is the stalls imposed by the platform, or null if
+         * disabled, see {@link PlatformMonitor#setHiccupResolution(long)}.
+         */
+        public Histogram hiccups;
+        /**
+         * The wake-up interval, in microseconds, of the {@link #hiccups} measurement.
+         */
+        public long hiccupResolution = -1;
+        /**
+         * A copy of the stack profile, or null if profiling was disabled,
+         * see {@link PlatformMonitor#setStackProfiler(StackProfiler)}.
+         */
+        public StackProfiler stackProfiler;
+        /**
+         * A copy of the throughput over time, or null if throughput recording was disabled,
+         * see {@link PlatformMonitor#setThroughputMeter(ThroughputMeter)}.
+         */
+        public ThroughputMeter throughputMeter;
+        /**
+         * A copy of the allocation profile, or null if allocation profiling was disabled,
+         * see {@link PlatformMonitor#setAllocationProfiler(AllocationProfiler)}.
+         */
+        public AllocationProfiler allocationProfiler;
+        public long blockedCount = -1;
+        /**
+         * The time, in milliseconds, threads were blocked entering
+         * a monitor, or -1 if not available.
+         */
+        public long blockedTime = -1;
+        public long waitedCount = -1;
+        /**
+         * The time, in milliseconds, threads waited, including
+         * waits on locks and conditions, or -1 if not available.
+         */
+        public long waitedTime = -1;
+        public long contentionSamples = -1;
+        /**
+         * The contended locks, most contended first, or null if contention
+         * tracking was disabled, see {@link PlatformMonitor#setContentionSamplingPeriod(long)}.
+         */
+        public List<LockContention> lockContentions;
+        /**
+         * The blocked and waited counts and times of each thread that was blocked
+         * or waited during the monitoring, longest blocked first, or null if contention
+         * tracking was disabled, see {@link PlatformMonitor#setContentionSamplingPeriod(long)}.
+         */
+        public List<ThreadContention> threadContentions;
+        /**
+         * The usage of the buffer pools, typically {@code direct} and {@code mapped},
+         * or null if disabled, see {@link PlatformMonitor#setBufferPoolsEnabled(boolean)}.
+         */
+        public List<BufferPool> bufferPools;
+        /**
+         * The classes whose live instances grew the most, or null if the class
+         * histogram was disabled, see {@link PlatformMonitor#setClassHistogramSize(int)}.
+         */
+        public List<ClassGrowth> classesByInstances;
+        /**
+         * The classes whose live bytes grew the most, or null if the class
+         * histogram was disabled, see {@link PlatformMonitor#setClassHistogramSize(int)}.
+         */
+        public List<ClassGrowth> classesByBytes;
+        /**
+         * The memory pools at the end of the monitoring.
+         */
+        public List<MemoryPool> memoryPools;
+        /**
+         * The garbage collectors, with the collection counts and times during the monitoring.
+         */
+        public List<Collector> collectors;
+        /**
+         * The CPU time, in nanoseconds, of all threads, including those
+         * that ended before the end of the monitoring, or -1 if not available.
+         */
+        public long threadCPUTime = -1;
+        /**
+         * The CPU time of each thread, highest first, or null if
+         * disabled, see {@link PlatformMonitor#setThreadCPUEnabled(boolean)}.
+         */
+        public List<ThreadCPU> threadCPUs;
+        /**
+         * The CPU time of each thread group, highest first,
+         * see {@link PlatformMonitor#setThreadGroups(String...)}.
+         */
+        public List<ThreadCPU> threadGroupCPUs;
+        /**
+         * The names of the threads started during the monitoring.
+         */
+        public List<String> startedThreads;
+
+        /**
+         * @return whether the time spent in JIT compilation exceeded
+         * {@link #JIT_ACTIVITY_THRESHOLD} of the elapsed time, which
+         * indicates that the measurement included part of the warm-up
+         * @see SteadyStateDetector
+         */
+        public boolean isJITActive()
+        {
+            return time > 0 && TimeUnit.MILLISECONDS.toNanos(jitTime) > JIT_ACTIVITY_THRESHOLD * time;
+        }
+
+        /**
+         * @return the bytes allocated by the threads alive at the end
+         * of the monitoring, per operation, or NaN if not available
+         */
+        public double getBytesPerOperation()
+        {
+            if (operations <= 0 || threadAllocatedBytes < 0)
+                return Double.NaN;
+            return (double)threadAllocatedBytes / operations;
+        }
+
+        /**
+         * @return the process CPU time in nanoseconds per operation,
+         * or NaN if not available
+         */
+        public double getCPUNanosPerOperation()
+        {
+            if (operations <= 0 || cpuTime < 0)
+                return Double.NaN;
+            return (double)cpuTime / operations;
+        }
+
+        /**
+         * @return the GC pause time in milliseconds per 1000 operations,
+         * or NaN if not available
+         */
+        public double getGCMillisPerKiloOperations()
+        {
+            if (operations <= 0)
+                return Double.NaN;
+            double gcMillis = gcPauses != null ? millis(gcPauseTime) : youngTime + oldTime;
+            return gcMillis * 1000 / operations;
+        }
 
         @Override
         public String toString()
@@ -381,43 +1345,592 @@ public class PlatformMonitor implements Runnable
             builder.append("Monitoring Ended at ").append(new Date(date)).append(EOL);
             builder.append("Elapsed Time: ").append(TimeUnit.NANOSECONDS.toMillis(time)).append(" ms").append(EOL);
             builder.append("\tTime in JIT Compilation: ").append(jitTime).append(" ms").append(EOL);
+            if (isJITActive())
+                builder.append("\tWARNING: JIT compilation still active during the measurement (")
+                        .append(percent(TimeUnit.MILLISECONDS.toNanos(jitTime), time))
+                        .append("% of the elapsed time), consider a longer warm-up").append(EOL);
             builder.append("\tTime in Young GC: ").append(youngTime).append(" ms (")
                     .append(youngCount).append(" collections)").append(EOL);
             builder.append("\tTime in Old GC: ").append(oldTime).append(" ms (")
                     .append(oldCount).append(" collections)").append(EOL);
-            builder.append("Garbage Generated in Eden Space: ").append(mebiBytes(edenBytes))
-                    .append(" MiB").append(EOL);
-            builder.append("Garbage Generated in Survivor Space: ").append(mebiBytes(survivorBytes))
-                    .append(" MiB").append(EOL);
-            builder.append("Garbage Generated in Tenured Space: ").append(mebiBytes(tenuredBytes))
-                    .append(" MiB").append(EOL);
+            if (jitCount >= 0)
+                builder.append("\tJIT Compilations: ").append(jitCount).append(EOL);
+            if (gcPauses != null)
+            {
+                builder.append("\tGC Pauses: ").append(gcCount).append(" collections, total/p50/p99/max = ")
+                        .append(TimeUnit.NANOSECONDS.toMillis(gcPauseTime)).append("/")
+                        .append(millis(gcPauses.getValueAtPercentile(50D))).append("/")
+                        .append(millis(gcPauses.getValueAtPercentile(99D))).append("/")
+                        .append(millis(gcPauses.getMaxValue())).append(" ms").append(EOL);
+            }
+            if (flightRecorderGCPauses != null)
+            {
+                builder.append("\tGC Pauses (JFR): ").append(flightRecorderGCCount).append(" collections, total/p50/p99/max = ")
+                        .append(TimeUnit.NANOSECONDS.toMillis(flightRecorderGCPauseTime)).append("/")
+                        .append(millis(flightRecorderGCPauses.getValueAtPercentile(50D))).append("/")
+                        .append(millis(flightRecorderGCPauses.getValueAtPercentile(99D))).append("/")
+                        .append(millis(flightRecorderGCPauses.getMaxValue())).append(" ms").append(EOL);
+            }
+            if (gcEvents != null && !gcEvents.isEmpty())
+            {
+                List<GCEvent> longest = new ArrayList<>(gcEvents);
+                longest.sort(Comparator.comparingLong((GCEvent event) -> event.duration).reversed());
+                for (GCEvent event : longest.subList(0, Math.min(3, longest.size())))
+                {
+                    builder.append("\tLongest GC: ").append(event).append(EOL);
+                }
+                if (droppedGCEvents > 0)
+                    builder.append("\tGC Events: ").append(droppedGCEvents).append(" dropped, last ")
+                            .append(gcEvents.size()).append(" retained").append(EOL);
+            }
+            if (collectors != null)
+            {
+                for (Collector collector : collectors)
+                {
+                    builder.append("\tCollector ").append(collector).append(EOL);
+                }
+            }
+            if (edenBytes >= 0)
+            {
+                builder.append("Garbage Generated in Eden Space: ").append(mebiBytes(edenBytes))
+                        .append(" MiB").append(EOL);
+                builder.append("Garbage Generated in Survivor Space: ").append(mebiBytes(survivorBytes))
+                        .append(" MiB").append(EOL);
+                builder.append("Garbage Generated in Tenured Space: ").append(mebiBytes(tenuredBytes))
+                        .append(" MiB").append(EOL);
+            }
+            if (reclaimedBytes >= 0)
+                builder.append("Garbage Reclaimed by GC: ").append(mebiBytes(reclaimedBytes))
+                        .append(" MiB").append(EOL);
+            if (flightRecorderReclaimedBytes >= 0)
+                builder.append("Garbage Reclaimed by GC (JFR): ").append(mebiBytes(flightRecorderReclaimedBytes))
+                        .append(" MiB").append(EOL);
+            if (promotedBytes >= 0)
+                builder.append("Promoted to Old Generation: ").append(mebiBytes(promotedBytes))
+                        .append(" MiB").append(EOL);
+            if (liveBytes >= 0)
+                builder.append("Heap Used after Last GC: ").append(mebiBytes(liveBytes))
+                        .append(" MiB").append(EOL);
+            if (allocatedBytes >= 0)
+                builder.append("Allocated (sampled): ").append(mebiBytes(allocatedBytes))
+                        .append(" MiB").append(EOL);
+            if (threadAllocatedBytes >= 0)
+                builder.append("Allocated by Live Threads: ").append(mebiBytes(threadAllocatedBytes))
+                        .append(" MiB").append(EOL);
+            if (hiccups != null && hiccups.getTotalCount() > 0)
+                builder.append("Platform Hiccups (").append(hiccupResolution).append(" us resolution): p50/p99/p99.9/max = ")
+                        .append(millis(hiccups.getValueAtPercentile(50D))).append("/")
+                        .append(millis(hiccups.getValueAtPercentile(99D))).append("/")
+                        .append(millis(hiccups.getValueAtPercentile(99.9D))).append("/")
+                        .append(millis(hiccups.getMaxValue())).append(" ms").append(EOL);
             builder.append("Average CPU Load: ").append(percent(cpuTime, time)).append("/")
                     .append(100 * cores).append(EOL);
+            if (voluntaryContextSwitches >= 0)
+                builder.append("Context Switches: ").append(voluntaryContextSwitches).append(" voluntary, ")
+                        .append(involuntaryContextSwitches).append(" involuntary").append(EOL);
+            if (minorPageFaults >= 0)
+                builder.append("Page Faults: ").append(minorPageFaults).append(" minor, ")
+                        .append(majorPageFaults).append(" major").append(EOL);
+            if (stopRSS >= 0)
+                builder.append("Resident Set Size: ").append(mebiBytes(startRSS)).append(" -> ")
+                        .append(mebiBytes(stopRSS)).append(" MiB (peak ").append(mebiBytes(peakRSS))
+                        .append(" MiB)").append(EOL);
+            if (readChars >= 0)
+                builder.append("I/O: read ").append(mebiBytes(readChars)).append(" MiB (")
+                        .append(mebiBytes(readBytes)).append(" MiB from storage), written ")
+                        .append(mebiBytes(writeChars)).append(" MiB (")
+                        .append(mebiBytes(writeBytes)).append(" MiB to storage)").append(EOL);
+            if (operations >= 0)
+            {
+                builder.append("Operations: ").append(operations).append(EOL);
+                builder.append(String.format("\tAllocated Bytes/op: %.2f", getBytesPerOperation())).append(EOL);
+                builder.append(String.format("\tCPU ns/op: %.2f", getCPUNanosPerOperation())).append(EOL);
+                builder.append(String.format("\tGC ms/1k ops: %.4f", getGCMillisPerKiloOperations())).append(EOL);
+            }
+            if (throughputMeter != null && throughputMeter.getSize() > 0)
+            {
+                builder.append(String.format("Throughput: min/mean/max = %.2f/%.2f/%.2f ops/s over %d periods of %d ms, CV = %.2f%%",
+                        throughputMeter.getMinRate(), throughputMeter.getMeanRate(), throughputMeter.getMaxRate(),
+                        throughputMeter.getSize(), throughputMeter.getPeriod(), throughputMeter.getCoefficientOfVariation() * 100)).append(EOL);
+                builder.append(String.format("\tEWMA 1s/5s/15s = %.2f/%.2f/%.2f ops/s",
+                        throughputMeter.getOneSecondRate(), throughputMeter.getFiveSecondRate(), throughputMeter.getFifteenSecondRate())).append(EOL);
+            }
+            if (threadCPULoads != null && !threadCPULoads.isEmpty())
+            {
+                builder.append("Top Threads by Average CPU Load:").append(EOL);
+                List<Map.Entry<String, Float>> loads = new ArrayList<>(threadCPULoads.entrySet());
+                loads.sort(Map.Entry.<String, Float>comparingByValue().reversed());
+                for (Map.Entry<String, Float> entry : loads.subList(0, Math.min(5, loads.size())))
+                {
+                    builder.append("\t").append(entry.getKey()).append(": ")
+                            .append(String.format("%.2f%%", entry.getValue() * 100 * cores)).append(EOL);
+                }
+            }
+            if (stackProfiler != null && stackProfiler.getSamples() > 0)
+            {
+                builder.append("Top Frames by Stack Samples (").append(stackProfiler.getSamples())
+                        .append(" samples in ").append(stackProfiler.getSnapshots()).append(" thread dumps):").append(EOL);
+                for (Map.Entry<String, Long> entry : stackProfiler.getTopFrames(5))
+                {
+                    builder.append("\t").append(entry.getKey()).append(": ")
+                            .append(String.format("%.2f%%", percent(entry.getValue(), stackProfiler.getSamples()))).append(EOL);
+                }
+            }
+            if (allocationProfiler != null && allocationProfiler.getSamples() > 0)
+            {
+                builder.append("Top Allocation Sites by Sampled Bytes (").append(allocationProfiler.getSamples())
+                        .append(" samples, ").append(mebiBytes(allocationProfiler.getSampledBytes())).append(" MiB):").append(EOL);
+                for (Map.Entry<String, Long> entry : allocationProfiler.getTopSites(5))
+                {
+                    builder.append("\t").append(entry.getKey()).append(": ")
+                            .append(mebiBytes(entry.getValue())).append(" MiB (")
+                            .append(String.format("%.2f%%", percent(entry.getValue(), allocationProfiler.getSampledBytes()))).append(")").append(EOL);
+                }
+            }
+            if (memoryPools != null)
+            {
+                builder.append("Memory Pools at End:").append(EOL);
+                for (MemoryPool pool : memoryPools)
+                {
+                    builder.append("\t").append(pool).append(EOL);
+                }
+            }
+            if (threadGroupCPUs != null)
+            {
+                builder.append("CPU Time by Thread Group: ").append(TimeUnit.NANOSECONDS.toMillis(threadCPUTime))
+                        .append(" ms total").append(EOL);
+                for (ThreadCPU group : threadGroupCPUs)
+                {
+                    builder.append("\t").append(group).append(String.format(", %.2f%%", percent(group.cpuTime, threadCPUTime))).append(EOL);
+                }
+                builder.append("Top Threads by CPU Time:").append(EOL);
+                for (ThreadCPU threadCPU : threadCPUs.subList(0, Math.min(5, threadCPUs.size())))
+                {
+                    builder.append("\t").append(threadCPU).append(String.format(", %.2f%%", percent(threadCPU.cpuTime, threadCPUTime))).append(EOL);
+                }
+                builder.append("Threads Started: ").append(startedThreads.size());
+                if (!startedThreads.isEmpty())
+                {
+                    builder.append(" ").append(startedThreads.subList(0, Math.min(10, startedThreads.size())));
+                    if (startedThreads.size() > 10)
+                        builder.append("...");
+                }
+                builder.append(EOL);
+            }
+            if (bufferPools != null)
+            {
+                for (BufferPool pool : bufferPools)
+                {
+                    builder.append("Buffer Pool ").append(pool).append(EOL);
+                    if (pool.isGrowing())
+                        builder.append("\tWARNING: ").append(pool.name).append(" buffer memory grew from ")
+                                .append(mebiBytes(pool.startUsed)).append(" MiB to ")
+                                .append(mebiBytes(pool.stopUsed)).append(" MiB, possible leak").append(EOL);
+                }
+            }
+            if (classesByBytes != null && !classesByBytes.isEmpty())
+            {
+                builder.append("Top Classes by Live Bytes Growth:").append(EOL);
+                for (ClassGrowth growth : classesByBytes)
+                {
+                    builder.append("\t").append(growth).append(EOL);
+                }
+            }
+            if (classesByInstances != null && !classesByInstances.isEmpty())
+            {
+                builder.append("Top Classes by Live Instances Growth:").append(EOL);
+                for (ClassGrowth growth : classesByInstances)
+                {
+                    builder.append("\t").append(growth).append(EOL);
+                }
+            }
+            if (blockedCount >= 0)
+            {
+                builder.append("Contention: blocked ").append(blockedCount).append(" times");
+                if (blockedTime >= 0)
+                    builder.append(" for ").append(blockedTime).append(" ms");
+                builder.append(", waited ").append(waitedCount).append(" times");
+                if (waitedTime >= 0)
+                    builder.append(" for ").append(waitedTime).append(" ms");
+                builder.append(EOL);
+            }
+            if (threadContentions != null && !threadContentions.isEmpty())
+            {
+                builder.append("Top Threads by Blocked Time:").append(EOL);
+                for (ThreadContention threadContention : threadContentions.subList(0, Math.min(5, threadContentions.size())))
+                {
+                    builder.append("\t").append(threadContention).append(EOL);
+                }
+            }
+            if (lockContentions != null && !lockContentions.isEmpty())
+            {
+                builder.append("Top Contended Locks (").append(contentionSamples).append(" thread samples):").append(EOL);
+                for (LockContention contention : lockContentions.subList(0, Math.min(5, lockContentions.size())))
+                {
+                    builder.append("\t").append(contention).append(EOL);
+                }
+            }
+            if (timeline != null)
+                builder.append("Timeline: ").append(timeline.getSize()).append(" samples every ")
+                        .append(timeline.getPeriod()).append(" ms (")
+                        .append(timeline.getDroppedSamples()).append(" dropped)").append(EOL);
             builder.append("========================================");
             return builder.toString();
         }
     }
 
-    private interface GarbageCollector
+    /**
+     * A garbage collection recorded between {@link #start()} and {@link #stop()}.
+     */
+    public static class GCEvent extends Base
+    {
+        public long id;
+        public String name;
+        public String action;
+        public String cause;
+        /**
+         * The start time of the collection, in milliseconds since the epoch.
+         */
+        public long date;
+        /**
+         * The duration of the collection, in milliseconds.
+         */
+        public long duration;
+        /**
+         * Whether the collection paused the application threads.
+         */
+        public boolean pause;
+        public long beforeBytes;
+        public long afterBytes;
+        public long promotedBytes;
+        public Map<String, MemoryUsage> before;
+        public Map<String, MemoryUsage> after;
+
+        @Override
+        public String toString()
+        {
+            return String.format("#%d %s (%s, %s) at %tT.%<tL, %d ms%s, %.3f MiB -> %.3f MiB, %.3f MiB promoted",
+                    id,
+                    name,
+                    action,
+                    cause,
+                    date,
+                    duration,
+                    pause ? " pause" : "",
+                    mebiBytes(beforeBytes),
+                    mebiBytes(afterBytes),
+                    mebiBytes(promotedBytes));
+        }
+    }
+
+    /**
+     * A memory pool, classified by its role in the heap.
+     */
+    public static class MemoryPool extends Base
+    {
+        public String name;
+        /**
+         * Whether the pool is part of the heap.
+         */
+        public boolean heap;
+        /**
+         * The role of the pool: {@code eden}, {@code survivor},
+         * {@code tenured}, or {@code other} for non-heap pools
+         * and for heap pools that could not be classified.
+         */
+        public String role;
+        public MemoryUsage usage;
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s (%s, %s): %.3f MiB used, %.3f MiB committed, %s",
+                    name,
+                    heap ? "heap" : "non-heap",
+                    role,
+                    mebiBytes(usage.getUsed()),
+                    mebiBytes(usage.getCommitted()),
+                    usage.getMax() < 0 ? "no max" : String.format("%.3f MiB max", mebiBytes(usage.getMax())));
+        }
+    }
+
+    /**
+     * A garbage collector, classified by the generation it collects.
+     */
+    public static class Collector extends Base
+    {
+        public String name;
+        /**
+         * The role of the collector: {@code young} or {@code old} for
+         * collectors that report pauses, or {@code concurrent} for
+         * collectors that report concurrent cycles.
+         */
+        public String role;
+        /**
+         * The number of collections, either pauses or cycles.
+         */
+        public long count;
+        /**
+         * The time spent in collections, either pauses or cycles, in milliseconds.
+         */
+        public long time;
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s (%s): %d %s, %d ms",
+                    name,
+                    role,
+                    count,
+                    MemoryLayout.CONCURRENT.equals(role) ? "cycles" : "pauses",
+                    time);
+        }
+    }
+
+    /**
+     * The CPU time of a thread, or of a group of threads,
+     * between {@link #start()} and {@link #stop()}.
+     */
+    public static class ThreadCPU extends Base
+    {
+        public String name;
+        /**
+         * The CPU time, in nanoseconds.
+         */
+        public long cpuTime;
+        /**
+         * The CPU time in user mode, in nanoseconds.
+         */
+        public long userTime;
+        /**
+         * The number of threads.
+         */
+        public int threads;
+        /**
+         * Whether the thread started during the monitoring.
+         */
+        public boolean started;
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s: %.3f ms (%.3f ms user), %d thread%s%s",
+                    name,
+                    millis(cpuTime),
+                    millis(userTime),
+                    threads,
+                    threads == 1 ? "" : "s",
+                    started ? ", started" : "");
+        }
+    }
+
+    /**
+     * The usage of a buffer pool between {@link #start()} and {@link #stop()}.
+     */
+    public static class BufferPool extends Base
+    {
+        /**
+         * The min growth, in bytes, of the memory used by a buffer pool
+         * to be considered a possible leak, see {@link #isGrowing()}.
+         */
+        public static final long GROWTH_THRESHOLD = 16 * 1024 * 1024;
+
+        public String name;
+        public long startCount;
+        public long stopCount;
+        public long peakCount;
+        public long startUsed;
+        public long stopUsed;
+        public long peakUsed;
+        public long startCapacity;
+        public long stopCapacity;
+        /**
+         * The sum of the increases of the memory used between samples,
+         * a lower bound of the bytes allocated.
+         */
+        public long allocatedBytes;
+        /**
+         * The sum of the decreases of the memory used between samples,
+         * a lower bound of the bytes released.
+         */
+        public long releasedBytes;
+
+        /**
+         * @return whether the memory used at the end of the monitoring is at least
+         * twice, and {@link #GROWTH_THRESHOLD} more than, the memory used at the start
+         */
+        public boolean isGrowing()
+        {
+            long growth = stopUsed - startUsed;
+            return growth > GROWTH_THRESHOLD && stopUsed >= 2 * startUsed;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s: %.3f MiB -> %.3f MiB (peak %.3f MiB), %d -> %d buffers (peak %d), churn %.3f MiB allocated, %.3f MiB released",
+                    name,
+                    mebiBytes(startUsed),
+                    mebiBytes(stopUsed),
+                    mebiBytes(peakUsed),
+                    startCount,
+                    stopCount,
+                    peakCount,
+                    mebiBytes(allocatedBytes),
+                    mebiBytes(releasedBytes));
+        }
+    }
+
+    /**
+     * The live instances and bytes of a class, from the heap class
+     * histograms captured at {@link #start()} and at {@link #stop()}.
+     */
+    public static class ClassGrowth extends Base
     {
-        static final GarbageCollector NO_GARBAGE_COLLECTOR = new GarbageCollector()
+        public String name;
+        public long startInstances;
+        public long stopInstances;
+        public long startBytes;
+        public long stopBytes;
+
+        public long getInstanceGrowth()
+        {
+            return stopInstances - startInstances;
+        }
+
+        public long getByteGrowth()
         {
-        };
+            return stopBytes - startBytes;
+        }
 
-        static GarbageCollector from(GarbageCollectorMXBean mxBean)
+        @Override
+        public String toString()
+        {
+            return String.format("%s: %+d instances (%d -> %d), %+.3f MiB (%.3f MiB -> %.3f MiB)",
+                    name,
+                    getInstanceGrowth(),
+                    startInstances,
+                    stopInstances,
+                    mebiBytes(getByteGrowth()),
+                    mebiBytes(startBytes),
+                    mebiBytes(stopBytes));
+        }
+    }
+
+    /**
+     * The blocked and waited counts and times of a thread
+     * between {@link #start()} and {@link #stop()}.
+     */
+    public static class ThreadContention extends Base
+    {
+        public String name;
+        public long blockedCount;
+        /**
+         * The time, in milliseconds, the thread was blocked
+         * entering a monitor, or -1 if not available.
+         */
+        public long blockedTime;
+        public long waitedCount;
+        /**
+         * The time, in milliseconds, the thread waited, including
+         * waits on locks and conditions, or -1 if not available.
+         */
+        public long waitedTime;
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s: blocked %d times%s, waited %d times%s",
+                    name,
+                    blockedCount,
+                    blockedTime < 0 ? "" : " for " + blockedTime + " ms",
+                    waitedCount,
+                    waitedTime < 0 ? "" : " for " + waitedTime + " ms");
+        }
+    }
+
+    /**
+     * A lock or monitor on which threads were found stalled, while
+     * owned by another thread, between {@link #start()} and {@link #stop()}.
+     */
+    public static class LockContention extends Base
+    {
+        /**
+         * The lock identity, as class name and identity hash code.
+         */
+        public String lock;
+        /**
+         * Whether threads were blocked entering a monitor, rather than
+         * waiting on a {@code java.util.concurrent} lock.
+         */
+        public boolean monitor;
+        /**
+         * The number of times a thread was sampled stalled on this lock.
+         */
+        public long samples;
+        /**
+         * The number of samples for each stalled thread name.
+         */
+        public Map<String, Long> threads;
+        /**
+         * The number of samples for each owner thread name.
+         */
+        public Map<String, Long> owners;
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s (%s): %d samples, stalled %s, owned by %s",
+                    lock,
+                    monitor ? "monitor" : "lock",
+                    samples,
+                    top(threads),
+                    top(owners));
+        }
+
+        private static String top(Map<String, Long> samples)
+        {
+            List<Map.Entry<String, Long>> entries = new ArrayList<>(samples.entrySet());
+            entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+            StringBuilder builder = new StringBuilder("[");
+            for (Map.Entry<String, Long> entry : entries.subList(0, Math.min(3, entries.size())))
+            {
+                if (builder.length() > 1)
+                    builder.append(", ");
+                builder.append(entry.getKey()).append("=").append(entry.getValue());
+            }
+            if (entries.size() > 3)
+                builder.append(", ...");
+            return builder.append("]").toString();
+        }
+    }
+
+    private interface GarbageCollector
+    {
+        static GarbageCollector from(List<GarbageCollectorMXBean> mxBeans)
         {
             return new GarbageCollector()
             {
                 @Override
                 public long getCollectionCount()
                 {
-                    return mxBean.getCollectionCount();
+                    long result = 0;
+                    for (GarbageCollectorMXBean mxBean : mxBeans)
+                    {
+                        result += Math.max(0, mxBean.getCollectionCount());
+                    }
+                    return result;
                 }
 
                 @Override
                 public long getCollectionTime()
                 {
-                    return mxBean.getCollectionTime();
+                    long result = 0;
+                    for (GarbageCollectorMXBean mxBean : mxBeans)
+                    {
+                        result += Math.max(0, mxBean.getCollectionTime());
+                    }
+                    return result;
                 }
             };
         }
@@ -425,17 +1938,11 @@ public class PlatformMonitor implements Runnable
         /**
          * @return the total number of collections that have occurred.
          */
-        public default long getCollectionCount()
-        {
-            return 0;
-        }
+        public long getCollectionCount();
 
         /**
          * @return the approximate accumulated collection elapsed time in milliseconds.
          */
-        public default long getCollectionTime()
-        {
-            return 0;
-        }
+        public long getCollectionTime();
     }
 }
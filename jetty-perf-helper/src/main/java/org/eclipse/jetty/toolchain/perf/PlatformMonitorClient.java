@@ -0,0 +1,176 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+/**
+ * A client of {@link PlatformMonitorServer}, to start and stop a
+ * {@link PlatformMonitor} running in another JVM.
+ * <div>
+ * Each load generator process creates its own client, and brackets its load
+ * with {@link #start()} and {@link #stop(long)}, or with {@link #monitor(Runnable)}.
+ * Only the first start of all clients returns a {@link PlatformMonitor.Start},
+ * and only the last stop returns a {@link PlatformMonitor.Stop}.
+ * </div>
+ * <div>
+ * The {@link PlatformMonitor.Start} and {@link PlatformMonitor.Stop} objects
+ * returned carry the scalar fields, the memory usages, the histograms, the lists
+ * and the maps of the remote objects; the timeline and the profilers are not transferred.
+ * </div>
+ * <div>
+ * Instances are not thread-safe.
+ * </div>
+ */
+public class PlatformMonitorClient implements AutoCloseable
+{
+    private final Socket socket;
+    private final BufferedReader reader;
+    private final Writer writer;
+
+    /**
+     * Connects to a {@link PlatformMonitorServer} on the loopback interface.
+     *
+     * @param port the port of the server
+     * @throws IOException if the connection fails
+     */
+    public PlatformMonitorClient(int port) throws IOException
+    {
+        this(InetAddress.getLoopbackAddress().getHostAddress(), port);
+    }
+
+    /**
+     * @param host the host of the server
+     * @param port the port of the server
+     * @throws IOException if the connection fails
+     */
+    public PlatformMonitorClient(String host, int port) throws IOException
+    {
+        this.socket = new Socket(host, port);
+        this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        this.writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Starts the remote monitor.
+     *
+     * @return the remote {@link PlatformMonitor.Start} if the monitoring started,
+     * null if it was already started by another call
+     * @throws IOException if the communication with the server fails
+     * @see PlatformMonitor#start()
+     */
+    public PlatformMonitor.Start start() throws IOException
+    {
+        Properties response = send("START");
+        return "start".equals(response.getProperty("type")) ? MonitorPayload.read(response, new PlatformMonitor.Start()) : null;
+    }
+
+    /**
+     * Stops the remote monitor.
+     *
+     * @return the remote {@link PlatformMonitor.Stop} if the monitoring stopped,
+     * null if other calls to {@link #start()} are not paired yet
+     * @throws IOException if the communication with the server fails
+     * @see PlatformMonitor#stop()
+     */
+    public PlatformMonitor.Stop stop() throws IOException
+    {
+        return stop(-1);
+    }
+
+    /**
+     * Stops the remote monitor, reporting the number of operations performed.
+     *
+     * @param operations the number of operations performed, or a negative value if unknown
+     * @return the remote {@link PlatformMonitor.Stop} if the monitoring stopped,
+     * null if other calls to {@link #start()} are not paired yet
+     * @throws IOException if the communication with the server fails
+     * @see PlatformMonitor#stop(long)
+     */
+    public PlatformMonitor.Stop stop(long operations) throws IOException
+    {
+        Properties response = send(operations < 0 ? "STOP" : "STOP " + operations);
+        return "stop".equals(response.getProperty("type")) ? MonitorPayload.read(response, new PlatformMonitor.Stop()) : null;
+    }
+
+    /**
+     * Runs the given workload between {@link #start()} and {@link #stop()}.
+     *
+     * @param workload the workload to monitor
+     * @return the remote {@link PlatformMonitor.Stop} if this call stopped
+     * the monitoring, null otherwise
+     * @throws IOException if the communication with the server fails
+     */
+    public PlatformMonitor.Stop monitor(Runnable workload) throws IOException
+    {
+        start();
+        try
+        {
+            workload.run();
+        }
+        catch (Throwable x)
+        {
+            try
+            {
+                stop();
+            }
+            catch (IOException failure)
+            {
+                x.addSuppressed(failure);
+            }
+            throw x;
+        }
+        return stop();
+    }
+
+    private Properties send(String command) throws IOException
+    {
+        writer.write(command);
+        writer.write("\n");
+        writer.flush();
+
+        Properties response = PlatformMonitorServer.read(reader);
+        if (response == null)
+            throw new EOFException("Connection closed by " + socket.getRemoteSocketAddress());
+        if ("error".equals(response.getProperty("type")))
+            throw new IOException(response.getProperty("message"));
+        return response;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        socket.close();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[%s]", getClass().getSimpleName(), hashCode(), socket.getRemoteSocketAddress());
+    }
+}
@@ -0,0 +1,281 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A TCP endpoint that allows remote processes to {@link PlatformMonitor#start() start}
+ * and {@link PlatformMonitor#stop(long) stop} a {@link PlatformMonitor}.
+ * <div>
+ * Typical usage, in the JVM to monitor, for example a server:
+ * <pre>
+ * PlatformMonitorServer monitorServer = new PlatformMonitorServer(new PlatformMonitor(), 9999);
+ * monitorServer.start();
+ * </pre>
+ * and in each of the load generators, see {@link PlatformMonitorClient}:
+ * <pre>
+ * try (PlatformMonitorClient client = new PlatformMonitorClient("server", 9999))
+ * {
+ *     PlatformMonitor.Stop stop = client.monitor(() -&gt; runLoad());
+ * }
+ * </pre>
+ * </div>
+ * <div>
+ * The starts and stops of all clients are paired by the reference counting of
+ * {@link PlatformMonitor}, so that the monitoring window spans from the first
+ * start to the last stop.
+ * If a client disconnects without stopping, its starts are stopped on its behalf.
+ * </div>
+ * <div>
+ * The protocol is line based: a client sends {@code START}, {@code STOP}
+ * or {@code STOP <operations>}, and the server replies with the fields of
+ * the {@link PlatformMonitor.Start} or {@link PlatformMonitor.Stop} object in
+ * {@link Properties} format, terminated by an empty line.
+ * The {@code type} property is {@code start}, {@code stop}, {@code none} when
+ * the call was not the first start or the last stop, or {@code error}, along
+ * with a {@code message} property.
+ * </div>
+ * <div>
+ * By default the endpoint listens on the loopback interface only.
+ * </div>
+ */
+public class PlatformMonitorServer implements AutoCloseable
+{
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final PlatformMonitor monitor;
+    private final ServerSocket serverSocket;
+    private Thread acceptor;
+
+    /**
+     * Creates an endpoint listening on the loopback interface, on an ephemeral port.
+     *
+     * @param monitor the monitor to control
+     * @throws IOException if the endpoint cannot be bound
+     * @see #getPort()
+     */
+    public PlatformMonitorServer(PlatformMonitor monitor) throws IOException
+    {
+        this(monitor, 0);
+    }
+
+    /**
+     * Creates an endpoint listening on the loopback interface, on the given port.
+     *
+     * @param monitor the monitor to control
+     * @param port the port to listen to, or 0 for an ephemeral port
+     * @throws IOException if the endpoint cannot be bound
+     */
+    public PlatformMonitorServer(PlatformMonitor monitor, int port) throws IOException
+    {
+        this(monitor, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * @param monitor the monitor to control
+     * @param address the address to listen to
+     * @throws IOException if the endpoint cannot be bound
+     */
+    public PlatformMonitorServer(PlatformMonitor monitor, InetSocketAddress address) throws IOException
+    {
+        this.monitor = monitor;
+        this.serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(address);
+    }
+
+    public PlatformMonitor getPlatformMonitor()
+    {
+        return monitor;
+    }
+
+    /**
+     * @return the port the endpoint listens to
+     */
+    public int getPort()
+    {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Starts accepting connections, in a daemon thread.
+     */
+    public synchronized void start()
+    {
+        if (acceptor != null)
+            throw new IllegalStateException("Already started");
+        acceptor = new Thread(this::accept, "PlatformMonitorServer-" + getPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void accept()
+    {
+        while (!serverSocket.isClosed())
+        {
+            try
+            {
+                Socket socket = serverSocket.accept();
+                connections.add(socket);
+                Thread handler = new Thread(() -> handle(socket), "PlatformMonitorServer-" + socket.getRemoteSocketAddress());
+                handler.setDaemon(true);
+                handler.start();
+            }
+            catch (IOException x)
+            {
+                // The server socket has been closed.
+            }
+        }
+    }
+
+    private void handle(Socket socket)
+    {
+        int starts = 0;
+        try (socket)
+        {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                Properties response = new Properties();
+                String[] command = line.trim().split("\\s+");
+                try
+                {
+                    if ("START".equalsIgnoreCase(command[0]) && command.length == 1)
+                    {
+                        ++starts;
+                        PlatformMonitor.Start start = monitor.start();
+                        response.setProperty("type", start == null ? "none" : "start");
+                        if (start != null)
+                            MonitorPayload.write(start, response);
+                    }
+                    else if ("STOP".equalsIgnoreCase(command[0]) && command.length <= 2)
+                    {
+                        long operations = command.length == 2 ? Long.parseLong(command[1]) : -1;
+                        if (starts == 0)
+                            throw new IllegalStateException("Not started");
+                        --starts;
+                        PlatformMonitor.Stop stop = monitor.stop(operations);
+                        response.setProperty("type", stop == null ? "none" : "stop");
+                        if (stop != null)
+                            MonitorPayload.write(stop, response);
+                    }
+                    else
+                    {
+                        throw new IllegalArgumentException("Invalid command: " + line);
+                    }
+                }
+                catch (RuntimeException x)
+                {
+                    response.clear();
+                    response.setProperty("type", "error");
+                    response.setProperty("message", String.valueOf(x.getMessage()));
+                }
+                write(response, writer);
+            }
+        }
+        catch (IOException x)
+        {
+            // The client disconnected.
+        }
+        finally
+        {
+            connections.remove(socket);
+            while (starts-- > 0)
+            {
+                monitor.stop();
+            }
+        }
+    }
+
+    static void write(Properties properties, Writer writer) throws IOException
+    {
+        StringWriter buffer = new StringWriter();
+        properties.store(buffer, null);
+        // Properties.store() escapes line terminators, so an
+        // empty line can be used to terminate the payload.
+        writer.write(buffer.toString());
+        writer.write("\n");
+        writer.flush();
+    }
+
+    /**
+     * Reads a payload written by {@link #write(Properties, Writer)}.
+     *
+     * @param reader the reader to read the payload from
+     * @return the payload, or null if the reader is at end of stream
+     * @throws IOException if the read fails, or the payload is truncated
+     */
+    static Properties read(BufferedReader reader) throws IOException
+    {
+        StringBuilder payload = new StringBuilder();
+        while (true)
+        {
+            String line = reader.readLine();
+            if (line == null)
+            {
+                if (payload.length() == 0)
+                    return null;
+                throw new IOException("Truncated payload");
+            }
+            if (line.isEmpty())
+                break;
+            payload.append(line).append('\n');
+        }
+        Properties properties = new Properties();
+        properties.load(new StringReader(payload.toString()));
+        return properties;
+    }
+
+    /**
+     * Stops accepting connections and closes the current connections.
+     *
+     * @throws IOException if the endpoint cannot be closed
+     */
+    @Override
+    public void close() throws IOException
+    {
+        serverSocket.close();
+        for (Socket connection : connections)
+        {
+            connection.close();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[%s]", getClass().getSimpleName(), hashCode(), serverSocket.getLocalSocketAddress());
+    }
+}
@@ -18,7 +18,9 @@
 
 package org.eclipse.jetty.toolchain.perf;
 
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Detects and reports the timer resolution of the current running platform.
@@ -47,16 +49,35 @@ import java.util.concurrent.TimeUnit;
  * }
  * </pre>
  * </div>
+ * <div>
+ * Note that the loop above suffers from <em>coordinated omission</em>: if a request
+ * stalls, subsequent requests start late and their delay is never accounted for.
+ * Use {@link #sleepUntil(long)} with absolute deadlines, or {@link RateDriver},
+ * to measure latencies from the intended start time of each request.
+ * </div>
+ * <div>
+ * To pace a loop without drift, use a {@link Pacer}, see {@link #newPacer(long, TimeUnit)}:
+ * <pre>
+ * Pacer pacer = timer.newPacer(microseconds, TimeUnit.MICROSECONDS);
+ * for (int i = 0; i &lt; 100; ++i)
+ * {
+ *     long intendedStart = pacer.await();
+ *     performRequest();
+ * }
+ * </pre>
+ * </div>
  */
 public class PlatformTimer
 {
     private final long nativeResolution;
     private final long emulatedResolution;
+    private final long parkResolution;
 
-    private PlatformTimer(long nativeResolution, long emulatedResolution)
+    private PlatformTimer(long nativeResolution, long emulatedResolution, long parkResolution)
     {
         this.nativeResolution = nativeResolution;
         this.emulatedResolution = emulatedResolution;
+        this.parkResolution = parkResolution;
     }
 
     public long getNativeResolution()
@@ -69,6 +90,16 @@ public class PlatformTimer
         return emulatedResolution;
     }
 
+    /**
+     * @return the maximum delay, in microseconds, observed when waking up
+     * from {@link LockSupport#parkNanos(long)}; {@link #sleepUntil(long)}
+     * spins for this amount of time before the deadline
+     */
+    public long getParkResolution()
+    {
+        return parkResolution;
+    }
+
     public void sleep(long micros)
     {
         if (micros > nativeResolution)
@@ -77,10 +108,91 @@ public class PlatformTimer
             sleepEmulated(micros);
     }
 
+    /**
+     * <p>Sleeps until the given absolute deadline, expressed in the
+     * {@link System#nanoTime()} time base.</p>
+     * <p>Differently from {@link #sleep(long)}, errors do not accumulate
+     * when this method is called in a loop with deadlines computed from
+     * a fixed origin.</p>
+     * <p>The thread is parked with {@link LockSupport#parkNanos(long)} for the
+     * bulk of the wait, so that no CPU is used and virtual threads unmount,
+     * and spins with {@link Thread#onSpinWait()} for the last
+     * {@link #getParkResolution() park resolution} microseconds.</p>
+     *
+     * @param deadline the {@link System#nanoTime()} value to sleep until
+     * @return the number of nanoseconds this method returned after the deadline
+     */
+    public long sleepUntil(long deadline)
+    {
+        parkUntil(deadline - TimeUnit.MICROSECONDS.toNanos(parkResolution));
+        while (true)
+        {
+            long now = System.nanoTime();
+            if (now - deadline >= 0)
+                return now - deadline;
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * <p>Parks the thread until the given absolute deadline, expressed in the
+     * {@link System#nanoTime()} time base, without spinning.</p>
+     * <p>Differently from {@link #sleepUntil(long)}, no CPU is used while
+     * waiting, but this method typically returns late by up to the
+     * {@link #getParkResolution() park resolution}.</p>
+     *
+     * @param deadline the {@link System#nanoTime()} value to park until
+     * @return the number of nanoseconds this method returned after the deadline
+     */
+    public long parkUntil(long deadline)
+    {
+        while (true)
+        {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+                return -remaining;
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted())
+            {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(new InterruptedException());
+            }
+        }
+    }
+
+    /**
+     * Creates a {@link Pacer} with the given period and the origin
+     * at the current time, so that its first deadline is now.
+     *
+     * @param period the period between deadlines
+     * @param unit the unit of the period
+     * @return a new {@link Pacer}
+     */
+    public Pacer newPacer(long period, TimeUnit unit)
+    {
+        return new Pacer(this, System.nanoTime(), unit.toNanos(period));
+    }
+
+    /**
+     * Creates a {@link Pacer} with the given number of deadlines evenly spread
+     * in the given interval, and the origin at the current time, so that its first
+     * deadline is now; for example {@code newPacer(3, 1, TimeUnit.SECONDS)} paces
+     * 3 deadlines per second, exactly one third of a second apart.
+     *
+     * @param deadlines the number of deadlines in the interval
+     * @param interval the interval
+     * @param unit the unit of the interval
+     * @return a new {@link Pacer}
+     */
+    public Pacer newPacer(long deadlines, long interval, TimeUnit unit)
+    {
+        return new Pacer(this, System.nanoTime(), unit.toNanos(interval), deadlines);
+    }
+
     @Override
     public String toString()
     {
-        return String.format("%s[native=%d,emulated=%d]", getClass().getName(), getNativeResolution(), getEmulatedResolution());
+        return String.format("%s[native=%d,emulated=%d,park=%d]", getClass().getName(), getNativeResolution(), getEmulatedResolution(), getParkResolution());
     }
 
     public static PlatformTimer detect()
@@ -91,7 +203,28 @@ public class PlatformTimer
         long emulatedAccuracy = detectEmulated();
         while (emulatedAccuracy > nativeAccuracy)
             emulatedAccuracy = detectEmulated();
-        return new PlatformTimer(nativeAccuracy, emulatedAccuracy);
+        detectPark();
+        long parkAccuracy = detectPark();
+        return new PlatformTimer(nativeAccuracy, emulatedAccuracy, parkAccuracy);
+    }
+
+    private static long detectPark()
+    {
+        // Avoid stop-the-world pauses from the GC
+        System.gc();
+
+        // Measure how late parkNanos() wakes up, and take
+        // a high percentile, discarding a few outliers.
+        long[] delays = new long[200];
+        for (int i = 0; i < delays.length; ++i)
+        {
+            long park = TimeUnit.MICROSECONDS.toNanos(100);
+            long begin = System.nanoTime();
+            LockSupport.parkNanos(park);
+            delays[i] = Math.max(0, System.nanoTime() - begin - park);
+        }
+        Arrays.sort(delays);
+        return TimeUnit.NANOSECONDS.toMicros(delays[delays.length * 99 / 100]) + 1;
     }
 
     private static long detectNative()
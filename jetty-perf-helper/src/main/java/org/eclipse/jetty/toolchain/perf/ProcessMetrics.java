@@ -0,0 +1,353 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * <p>Process metrics read from the Linux {@code /proc/self} file system.</p>
+ * <p>The {@code /proc} files are kept open and re-read at every
+ * {@link #sample()}, and are parsed without allocating, so that this
+ * class can be sampled often.</p>
+ * <p>The exception are the context switches, that are only reported per thread:
+ * every sample lists the {@code /proc/self/task} directory, and opens, reads and
+ * closes the status file of each thread, which allocates in proportion to the number
+ * of threads, but does not keep a file descriptor open per thread.
+ * The counts last seen for the threads that have exited are carried over, so that
+ * the totals never decrease; the context switches of threads that exited after
+ * the previous sample are counted up to that sample, so the metric is as accurate
+ * as the sampling is frequent.</p>
+ * <p>On platforms other than Linux, or when a {@code /proc} file cannot
+ * be read, the corresponding metrics are set to -1.</p>
+ */
+class ProcessMetrics implements AutoCloseable
+{
+    private static final byte[] VOLUNTARY_CTXT_SWITCHES = bytes("voluntary_ctxt_switches:");
+    private static final byte[] NONVOLUNTARY_CTXT_SWITCHES = bytes("nonvoluntary_ctxt_switches:");
+    private static final byte[] VM_RSS = bytes("VmRSS:");
+    private static final byte[] VM_HWM = bytes("VmHWM:");
+    private static final byte[] RCHAR = bytes("rchar:");
+    private static final byte[] WCHAR = bytes("wchar:");
+    private static final byte[] READ_BYTES = bytes("read_bytes:");
+    private static final byte[] WRITE_BYTES = bytes("write_bytes:");
+    // The page size is not available from Java; 4 KiB is the common
+    // case, and the RSS is preferably read from /proc/self/status.
+    private static final long PAGE_SIZE = 4096;
+    private static final File TASKS = new File("/proc/self/task");
+
+    private final byte[] buffer = new byte[8192];
+    private final RandomAccessFile stat;
+    private final RandomAccessFile status;
+    private final RandomAccessFile io;
+    private final Map<String, Task> tasks = new HashMap<>();
+    private long exitedVoluntaryContextSwitches;
+    private long exitedInvoluntaryContextSwitches;
+    private long generation;
+    long minorPageFaults = -1;
+    long majorPageFaults = -1;
+    long voluntaryContextSwitches = -1;
+    long involuntaryContextSwitches = -1;
+    long rss = -1;
+    long peakRSS = -1;
+    long readChars = -1;
+    long writeChars = -1;
+    long readBytes = -1;
+    long writeBytes = -1;
+
+    ProcessMetrics()
+    {
+        this(open("/proc/self/stat"), open("/proc/self/status"), open("/proc/self/io"));
+    }
+
+    private ProcessMetrics(RandomAccessFile stat, RandomAccessFile status, RandomAccessFile io)
+    {
+        this.stat = stat;
+        this.status = status;
+        this.io = io;
+    }
+
+    private static byte[] bytes(String value)
+    {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static RandomAccessFile open(String path)
+    {
+        try
+        {
+            return new RandomAccessFile(path, "r");
+        }
+        catch (IOException | SecurityException x)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * @return whether at least one of the {@code /proc} files is available
+     */
+    boolean isAvailable()
+    {
+        return stat != null || status != null || io != null;
+    }
+
+    /**
+     * Reads the {@code /proc} files and updates the metrics.
+     */
+    synchronized void sample()
+    {
+        int length = read(stat);
+        if (length > 0)
+            parseStat(length);
+
+        length = read(status);
+        if (length > 0)
+        {
+            sampleContextSwitches();
+            // Prefer the RSS in kB from the status file over the pages from the stat file.
+            long value = find(VM_RSS, length);
+            if (value >= 0)
+                rss = value * 1024;
+            value = find(VM_HWM, length);
+            peakRSS = value < 0 ? -1 : value * 1024;
+        }
+
+        length = read(io);
+        if (length > 0)
+        {
+            readChars = find(RCHAR, length);
+            writeChars = find(WCHAR, length);
+            readBytes = find(READ_BYTES, length);
+            writeBytes = find(WRITE_BYTES, length);
+        }
+    }
+
+    private void sampleContextSwitches()
+    {
+        // The context switches in /proc/self/status are those of the
+        // main thread only, so they must be summed over all threads.
+        String[] names = TASKS.list();
+        if (names == null)
+            return;
+        ++generation;
+        for (String name : names)
+        {
+            // Open the file at every sample, rather than keeping
+            // a file descriptor open for each thread.
+            RandomAccessFile file = open("/proc/self/task/" + name + "/status");
+            if (file == null)
+                continue;
+            int length = read(file);
+            close(file);
+            // The thread has exited, but it is still listed.
+            if (length <= 0)
+                continue;
+            Task task = tasks.computeIfAbsent(name, key -> new Task());
+            task.voluntary = Math.max(0, find(VOLUNTARY_CTXT_SWITCHES, length));
+            task.involuntary = Math.max(0, find(NONVOLUNTARY_CTXT_SWITCHES, length));
+            task.generation = generation;
+        }
+
+        long voluntary = 0;
+        long involuntary = 0;
+        for (Iterator<Task> iterator = tasks.values().iterator(); iterator.hasNext();)
+        {
+            Task task = iterator.next();
+            if (task.generation != generation)
+            {
+                // The thread has exited, carry over its last counts.
+                exitedVoluntaryContextSwitches += task.voluntary;
+                exitedInvoluntaryContextSwitches += task.involuntary;
+                iterator.remove();
+                continue;
+            }
+            voluntary += task.voluntary;
+            involuntary += task.involuntary;
+        }
+        voluntaryContextSwitches = exitedVoluntaryContextSwitches + voluntary;
+        involuntaryContextSwitches = exitedInvoluntaryContextSwitches + involuntary;
+    }
+
+    /**
+     * @return a copy of the current metrics, that cannot be sampled
+     */
+    synchronized ProcessMetrics copy()
+    {
+        ProcessMetrics into = new ProcessMetrics(null, null, null);
+        into.minorPageFaults = minorPageFaults;
+        into.majorPageFaults = majorPageFaults;
+        into.voluntaryContextSwitches = voluntaryContextSwitches;
+        into.involuntaryContextSwitches = involuntaryContextSwitches;
+        into.rss = rss;
+        into.peakRSS = peakRSS;
+        into.readChars = readChars;
+        into.writeChars = writeChars;
+        into.readBytes = readBytes;
+        into.writeBytes = writeBytes;
+        return into;
+    }
+
+    private int read(RandomAccessFile file)
+    {
+        if (file == null)
+            return -1;
+        try
+        {
+            file.seek(0);
+            int length = 0;
+            while (length < buffer.length)
+            {
+                int read = file.read(buffer, length, buffer.length - length);
+                if (read < 0)
+                    break;
+                length += read;
+            }
+            return length;
+        }
+        catch (IOException x)
+        {
+            return -1;
+        }
+    }
+
+    private void parseStat(int length)
+    {
+        // The second field is the command name in parentheses,
+        // which may contain spaces, so skip to the last ')'.
+        int index = length - 1;
+        while (index >= 0 && buffer[index] != ')')
+        {
+            --index;
+        }
+        if (index < 0)
+            return;
+
+        // After ')' the first field is the state, which is field 3.
+        int field = 2;
+        long value = 0;
+        boolean inField = false;
+        for (int i = index + 1; i < length; ++i)
+        {
+            byte b = buffer[i];
+            if (b == ' ' || b == '\n')
+            {
+                if (inField)
+                {
+                    if (field == 10)
+                        minorPageFaults = value;
+                    else if (field == 12)
+                        majorPageFaults = value;
+                    else if (field == 24)
+                        rss = value * PAGE_SIZE;
+                    if (field >= 24)
+                        return;
+                    inField = false;
+                }
+            }
+            else
+            {
+                if (!inField)
+                {
+                    inField = true;
+                    ++field;
+                    value = 0;
+                }
+                if (b >= '0' && b <= '9')
+                    value = value * 10 + (b - '0');
+            }
+        }
+    }
+
+    private long find(byte[] key, int length)
+    {
+        int limit = length - key.length;
+        for (int i = 0; i <= limit; ++i)
+        {
+            // Keys are at the beginning of a line.
+            if (i > 0 && buffer[i - 1] != '\n')
+                continue;
+            if (!startsWith(key, i))
+                continue;
+            long value = 0;
+            boolean digits = false;
+            for (int j = i + key.length; j < length; ++j)
+            {
+                byte b = buffer[j];
+                if (b >= '0' && b <= '9')
+                {
+                    value = value * 10 + (b - '0');
+                    digits = true;
+                }
+                else if (digits || b == '\n')
+                {
+                    break;
+                }
+            }
+            return digits ? value : -1;
+        }
+        return -1;
+    }
+
+    private boolean startsWith(byte[] key, int offset)
+    {
+        for (int i = 0; i < key.length; ++i)
+        {
+            if (buffer[offset + i] != key[i])
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        close(stat);
+        close(status);
+        close(io);
+        tasks.clear();
+    }
+
+    private static void close(RandomAccessFile file)
+    {
+        try
+        {
+            if (file != null)
+                file.close();
+        }
+        catch (IOException ignored)
+        {
+        }
+    }
+
+    /**
+     * The context switches last read from the status file of a thread.
+     */
+    private static class Task
+    {
+        private long voluntary;
+        private long involuntary;
+        private long generation;
+    }
+}
@@ -0,0 +1,273 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.util.concurrent.TimeUnit;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Drives operations at a constant rate, correcting for coordinated omission.
+ * <div>
+ * Each operation has an <em>intended start time</em>, computed from a fixed origin
+ * and the configured rate, independently of how long previous operations took.
+ * Two latencies are recorded for each operation:
+ * <ul>
+ * <li>the <em>corrected</em> latency, from the intended start time to the end of the operation</li>
+ * <li>the <em>uncorrected</em> latency, from the actual start time to the end of the operation</li>
+ * </ul>
+ * When the system under test stalls, operations start late and the corrected latency
+ * accounts for the time they spent waiting to be sent, as it would happen to real
+ * clients that do not wait for previous requests to complete.
+ * </div>
+ * <div>
+ * Operations are paced by a {@link Pacer} with {@code rate} deadlines per second,
+ * so the intended start time of the {@code n}-th operation is computed exactly as
+ * {@code origin + n * 1e9 / rate} nanoseconds, and rates that do not divide
+ * one second evenly do not drift by accumulating a truncated period.
+ * </div>
+ * <div>
+ * Operations that throw an exception are counted as failures, while an
+ * {@link InterruptedException} thrown by an operation, or an interrupt received while
+ * waiting for the intended start time, stops the run with the interrupt flag set.
+ * </div>
+ * <div>
+ * Typical usage:
+ * <pre>
+ * RateDriver driver = new RateDriver(PlatformTimer.detect(), 1000);
+ * RateDriver.Result result = driver.run(() -&gt; performRequest(), 60, TimeUnit.SECONDS);
+ * System.err.println(result);
+ * </pre>
+ * </div>
+ */
+public class RateDriver
+{
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final PlatformTimer timer;
+    private final long rate;
+    private final long period;
+
+    /**
+     * @param timer the timer used to wait for the intended start time of operations
+     * @param rate the number of operations per second, between 1 and 1,000,000,000
+     */
+    public RateDriver(PlatformTimer timer, long rate)
+    {
+        if (rate <= 0 || rate > NANOS_PER_SECOND)
+            throw new IllegalArgumentException("Invalid rate " + rate);
+        this.timer = timer;
+        this.rate = rate;
+        this.period = NANOS_PER_SECOND / rate;
+    }
+
+    public PlatformTimer getPlatformTimer()
+    {
+        return timer;
+    }
+
+    /**
+     * @return the number of operations per second
+     */
+    public long getRate()
+    {
+        return rate;
+    }
+
+    /**
+     * @return the nominal interval between the intended start times of two operations,
+     * in nanoseconds, truncated to a whole number of nanoseconds
+     */
+    public long getPeriod()
+    {
+        return period;
+    }
+
+    /**
+     * Runs the given operation for the given duration.
+     *
+     * @param operation the operation to run
+     * @param duration the duration of the run
+     * @param unit the unit of the duration
+     * @return the result of the run
+     */
+    public Result run(Operation operation, long duration, TimeUnit unit)
+    {
+        long nanos = unit.toNanos(duration);
+        return run(operation, nanos / NANOS_PER_SECOND * rate + nanos % NANOS_PER_SECOND * rate / NANOS_PER_SECOND);
+    }
+
+    /**
+     * Runs the given operation the given number of times.
+     *
+     * @param operation the operation to run
+     * @param operations the number of times the operation is run
+     * @return the result of the run
+     */
+    public Result run(Operation operation, long operations)
+    {
+        Result result = new Result();
+        Pacer pacer = timer.newPacer(rate, 1, TimeUnit.SECONDS);
+        long performed = 0;
+        while (performed < operations)
+        {
+            long intendedStart;
+            try
+            {
+                intendedStart = pacer.await();
+            }
+            catch (RuntimeException x)
+            {
+                if (Thread.currentThread().isInterrupted())
+                    break;
+                throw x;
+            }
+            long actualStart = System.nanoTime();
+            boolean interrupted = false;
+            try
+            {
+                operation.perform();
+            }
+            catch (InterruptedException x)
+            {
+                Thread.currentThread().interrupt();
+                interrupted = true;
+                ++result.failures;
+            }
+            catch (Exception x)
+            {
+                ++result.failures;
+            }
+            long end = System.nanoTime();
+            ++performed;
+
+            result.corrected.recordValue(end - intendedStart);
+            result.uncorrected.recordValue(end - actualStart);
+            long lag = actualStart - intendedStart;
+            if (lag > result.maxLag)
+                result.maxLag = lag;
+
+            if (interrupted)
+                break;
+        }
+        result.operations = performed;
+        result.time = System.nanoTime() - pacer.getOrigin();
+        return result;
+    }
+
+    /**
+     * An operation driven by {@link RateDriver}.
+     */
+    @FunctionalInterface
+    public interface Operation
+    {
+        /**
+         * Performs the operation synchronously.
+         *
+         * @throws Exception if the operation fails
+         */
+        void perform() throws Exception;
+    }
+
+    /**
+     * The result of a {@link RateDriver} run.
+     * Latencies are recorded in nanoseconds.
+     */
+    public class Result
+    {
+        private final Histogram corrected = new Histogram(3);
+        private final Histogram uncorrected = new Histogram(3);
+        private long operations;
+        private long failures;
+        private long maxLag;
+        private long time;
+
+        private Result()
+        {
+        }
+
+        /**
+         * @return the latencies measured from the intended start time of the operations
+         */
+        public Histogram getCorrectedHistogram()
+        {
+            return corrected;
+        }
+
+        /**
+         * @return the latencies measured from the actual start time of the operations
+         */
+        public Histogram getUncorrectedHistogram()
+        {
+            return uncorrected;
+        }
+
+        /**
+         * @return the number of operations performed, which may be less than
+         * the number requested if the run has been interrupted
+         */
+        public long getOperations()
+        {
+            return operations;
+        }
+
+        public long getFailures()
+        {
+            return failures;
+        }
+
+        /**
+         * @return the maximum delay, in nanoseconds, between the intended
+         * and the actual start time of an operation
+         */
+        public long getMaxLag()
+        {
+            return maxLag;
+        }
+
+        /**
+         * @return the elapsed time of the run, in nanoseconds
+         */
+        public long getTime()
+        {
+            return time;
+        }
+
+        /**
+         * @return the number of operations per second actually achieved
+         */
+        public double getAchievedRate()
+        {
+            return time == 0 ? 0 : (double)operations * TimeUnit.SECONDS.toNanos(1) / time;
+        }
+
+        @Override
+        public String toString()
+        {
+            String eol = System.lineSeparator();
+            return String.format("Operations: %d (%d failures) | requested/achieved rate = %d/%.2f ops/s | max lag = %,d ms",
+                    operations,
+                    failures,
+                    rate,
+                    getAchievedRate(),
+                    TimeUnit.NANOSECONDS.toMillis(maxLag)) + eol +
+                    new HistogramSnapshot(corrected, 32, "Corrected Latency", "ms", null) + eol +
+                    new HistogramSnapshot(uncorrected, 32, "Uncorrected Latency", "ms", null);
+        }
+    }
+}
@@ -0,0 +1,384 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A sampling profiler that periodically takes thread dumps and aggregates
+ * the stack traces, without requiring agents or native libraries.
+ * <div>
+ * Stack traces are taken with {@link ThreadMXBean#dumpAllThreads(boolean, boolean, int)},
+ * so they are biased towards safepoints, and only threads in the
+ * {@link Thread.State#RUNNABLE RUNNABLE} state are sampled by default,
+ * so that the profile approximates where CPU time is spent.
+ * Threads can be filtered by name prefix, for example {@code qtp} to only
+ * sample the threads of Jetty's {@code QueuedThreadPool}.
+ * </div>
+ * <div>
+ * Stack traces are aggregated in a trie, with the outermost frame at the root,
+ * whose nodes are keyed by interned {@link StackTraceElement}s without line
+ * numbers, so that the memory used is bounded by the number of distinct
+ * call paths rather than by the number of samples.
+ * The profile can be written in the collapsed stack format used by flame
+ * graph tools, see {@link #writeCollapsed(Appendable)}.
+ * </div>
+ * <div>
+ * Typical usage, within a {@link PlatformMonitor} window:
+ * <pre>
+ * StackProfiler profiler = new StackProfiler();
+ * profiler.setThreadNamePrefixes("qtp");
+ * monitor.setStackProfiler(profiler);
+ * monitor.start();
+ * // Perform benchmark.
+ * Stop stop = monitor.stop();
+ * try (Writer writer = Files.newBufferedWriter(Path.of("profile.collapsed")))
+ * {
+ *     stop.stackProfiler.writeCollapsed(writer);
+ * }
+ * </pre>
+ * </div>
+ */
+public class StackProfiler
+{
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final Map<StackTraceElement, StackTraceElement> frames = new HashMap<>();
+    private Node root = new Node(null);
+    private long period = 20;
+    private int maxDepth = 256;
+    private boolean runnableOnly = true;
+    private String[] threadNamePrefixes = new String[0];
+    private ScheduledExecutorService scheduler;
+    private volatile Thread samplerThread;
+    private long snapshots;
+    private long samples;
+
+    /**
+     * @return the sampling period in milliseconds
+     */
+    public long getPeriod()
+    {
+        return period;
+    }
+
+    public void setPeriod(long period)
+    {
+        if (period <= 0)
+            throw new IllegalArgumentException("Invalid period " + period);
+        this.period = period;
+    }
+
+    /**
+     * @return the max number of frames sampled for each stack trace
+     */
+    public int getMaxDepth()
+    {
+        return maxDepth;
+    }
+
+    public void setMaxDepth(int maxDepth)
+    {
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * @return whether only the threads in the {@link Thread.State#RUNNABLE RUNNABLE} state are sampled
+     */
+    public boolean isRunnableOnly()
+    {
+        return runnableOnly;
+    }
+
+    public void setRunnableOnly(boolean runnableOnly)
+    {
+        this.runnableOnly = runnableOnly;
+    }
+
+    public String[] getThreadNamePrefixes()
+    {
+        return threadNamePrefixes.clone();
+    }
+
+    /**
+     * @param prefixes the prefixes of the names of the threads to sample; no prefixes to sample all threads
+     */
+    public void setThreadNamePrefixes(String... prefixes)
+    {
+        this.threadNamePrefixes = prefixes.clone();
+    }
+
+    /**
+     * Discards the previous profile and starts sampling, in a daemon thread.
+     */
+    public synchronized void start()
+    {
+        if (scheduler != null)
+            throw new IllegalStateException("Already started");
+        root = new Node(null);
+        frames.clear();
+        snapshots = 0;
+        samples = 0;
+        scheduler = Executors.newSingleThreadScheduledExecutor(task ->
+        {
+            Thread thread = new Thread(task, "StackProfiler");
+            thread.setDaemon(true);
+            samplerThread = thread;
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::sample, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops sampling, waiting for the sample in progress, if any, to complete.
+     */
+    public void stop()
+    {
+        ScheduledExecutorService scheduler;
+        synchronized (this)
+        {
+            scheduler = this.scheduler;
+            this.scheduler = null;
+        }
+        if (scheduler == null)
+            return;
+        scheduler.shutdownNow();
+        try
+        {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException x)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Takes a thread dump and records the stack traces of the sampled threads.
+     */
+    void sample()
+    {
+        ThreadInfo[] infos = threads.dumpAllThreads(false, false, maxDepth);
+        Thread sampler = samplerThread;
+        long samplerId = sampler == null ? -1 : sampler.getId();
+        synchronized (this)
+        {
+            ++snapshots;
+            for (ThreadInfo info : infos)
+            {
+                if (info == null || info.getThreadId() == samplerId)
+                    continue;
+                if (runnableOnly && info.getThreadState() != Thread.State.RUNNABLE)
+                    continue;
+                if (!matches(info.getThreadName()))
+                    continue;
+                StackTraceElement[] stack = info.getStackTrace();
+                if (stack.length == 0)
+                    continue;
+                ++samples;
+                Node node = root;
+                for (int i = stack.length - 1; i >= 0; --i)
+                {
+                    node = node.child(intern(stack[i]));
+                }
+                ++node.self;
+            }
+        }
+    }
+
+    private boolean matches(String threadName)
+    {
+        if (threadNamePrefixes.length == 0)
+            return true;
+        for (String prefix : threadNamePrefixes)
+        {
+            if (threadName.startsWith(prefix))
+                return true;
+        }
+        return false;
+    }
+
+    private StackTraceElement intern(StackTraceElement frame)
+    {
+        StackTraceElement result = frames.get(frame);
+        if (result == null)
+        {
+            // Frames are keyed without line numbers, so that
+            // different lines of the same method are merged.
+            StackTraceElement key = new StackTraceElement(frame.getClassName(), frame.getMethodName(), frame.getFileName(), -1);
+            result = frames.computeIfAbsent(key, k -> k);
+            frames.put(frame, result);
+        }
+        return result;
+    }
+
+    /**
+     * @return a copy of the current profile, that is not affected by further
+     * sampling nor discarded by a subsequent {@link #start()}
+     */
+    synchronized StackProfiler copy()
+    {
+        StackProfiler into = new StackProfiler();
+        into.period = period;
+        into.maxDepth = maxDepth;
+        into.runnableOnly = runnableOnly;
+        into.threadNamePrefixes = threadNamePrefixes;
+        into.root = root.copy();
+        into.snapshots = snapshots;
+        into.samples = samples;
+        return into;
+    }
+
+    /**
+     * @return the number of thread dumps taken
+     */
+    public synchronized long getSnapshots()
+    {
+        return snapshots;
+    }
+
+    /**
+     * @return the number of stack traces recorded
+     */
+    public synchronized long getSamples()
+    {
+        return samples;
+    }
+
+    /**
+     * @param count the max number of frames to return
+     * @return the frames where the sampled threads spent most time, with their number
+     * of samples at the top of the stack, in descending order
+     */
+    public synchronized List<Map.Entry<String, Long>> getTopFrames(int count)
+    {
+        Map<String, Long> result = new HashMap<>();
+        collectSelf(root, result);
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(result.entrySet());
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        return entries.subList(0, Math.min(count, entries.size()));
+    }
+
+    private void collectSelf(Node node, Map<String, Long> result)
+    {
+        if (node.self > 0)
+            result.merge(name(node.frame), node.self, Long::sum);
+        for (int i = 0; i < node.size; ++i)
+        {
+            collectSelf(node.children[i], result);
+        }
+    }
+
+    /**
+     * Writes the profile in the collapsed stack format, one line for each
+     * distinct stack trace with the frames, from the outermost, separated by
+     * semicolons, followed by a space and the number of samples.
+     *
+     * @param output where to write the profile to
+     * @throws IOException if the write fails
+     */
+    public synchronized void writeCollapsed(Appendable output) throws IOException
+    {
+        String eol = System.lineSeparator();
+        List<String> path = new ArrayList<>();
+        writeCollapsed(root, path, output, eol);
+    }
+
+    private void writeCollapsed(Node node, List<String> path, Appendable output, String eol) throws IOException
+    {
+        if (node.self > 0)
+            output.append(String.join(";", path)).append(' ').append(String.valueOf(node.self)).append(eol);
+        for (int i = 0; i < node.size; ++i)
+        {
+            Node child = node.children[i];
+            path.add(name(child.frame));
+            writeCollapsed(child, path, output, eol);
+            path.remove(path.size() - 1);
+        }
+    }
+
+    private static String name(StackTraceElement frame)
+    {
+        // Semicolons and spaces are separators in the collapsed format.
+        return (frame.getClassName() + "." + frame.getMethodName()).replace(';', ':').replace(' ', '_');
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[period=%dms,snapshots=%d,samples=%d]", getClass().getSimpleName(), hashCode(), period, getSnapshots(), getSamples());
+    }
+
+    /**
+     * A node of the trie, with its children in a linear array,
+     * since most call paths only have a few distinct callees.
+     */
+    private static class Node
+    {
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private final StackTraceElement frame;
+        private Node[] children = NO_CHILDREN;
+        private int size;
+        private long self;
+
+        private Node(StackTraceElement frame)
+        {
+            this.frame = frame;
+        }
+
+        private Node child(StackTraceElement frame)
+        {
+            // Frames are interned, so identity comparison is enough.
+            for (int i = 0; i < size; ++i)
+            {
+                if (children[i].frame == frame)
+                    return children[i];
+            }
+            if (size == children.length)
+                children = Arrays.copyOf(children, Math.max(2, size * 2));
+            Node child = new Node(frame);
+            children[size++] = child;
+            return child;
+        }
+
+        private Node copy()
+        {
+            Node into = new Node(frame);
+            into.self = self;
+            into.size = size;
+            into.children = size == 0 ? NO_CHILDREN : new Node[size];
+            for (int i = 0; i < size; ++i)
+            {
+                into.children[i] = children[i].copy();
+            }
+            return into;
+        }
+    }
+}
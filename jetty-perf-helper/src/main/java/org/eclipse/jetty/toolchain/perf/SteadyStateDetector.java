@@ -0,0 +1,307 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Detects when a benchmark reaches a steady state, and then starts
+ * the {@link PlatformMonitor} measurement window.
+ * <div>
+ * Rather than warming up for a fixed duration, the benchmark feeds the detector
+ * with interval latency histograms, for example from {@link LatencyRecorder#intervalHistogram()},
+ * until {@link #update(Histogram)} returns true:
+ * <pre>
+ * SteadyStateDetector detector = new SteadyStateDetector(monitor);
+ * while (!detector.update(recorder.intervalHistogram()))
+ * {
+ *     Thread.sleep(1000);
+ * }
+ * // The measurement window is started, reset the recorder.
+ * recorder.reset();
+ * </pre>
+ * </div>
+ * <div>
+ * For each interval, the detector tracks the throughput, the 50th and the
+ * 99th percentile of the latency, and the time spent in JIT compilation.
+ * A baseline mean and standard deviation of each metric is estimated over
+ * {@link #getWindow() window} intervals, and then a two-sided CUSUM detects
+ * whether the following intervals shift away from the baseline by more than
+ * {@link #getThreshold() threshold} standard deviations; when a shift is
+ * detected, the baseline is estimated again.
+ * Steady state is declared when {@link #getWindow() window} intervals pass
+ * without shifts and with the JIT compilation time below
+ * {@link #getJITThreshold() a fraction} of the interval duration.
+ * </div>
+ * <div>
+ * Instances are not thread-safe.
+ * </div>
+ */
+public class SteadyStateDetector
+{
+    private final PlatformMonitor monitor;
+    private final CompilationMXBean jitCompiler;
+    private final Metric throughput = new Metric();
+    private final Metric p50 = new Metric();
+    private final Metric p99 = new Metric();
+    private int window = 5;
+    private double threshold = 5;
+    private double drift = 0.5;
+    private double jitThreshold = PlatformMonitor.Stop.JIT_ACTIVITY_THRESHOLD;
+    private int maxIntervals;
+    private long lastJITTime = -1;
+    private long lastUpdate;
+    private int intervals;
+    private int quietIntervals;
+    private boolean steady;
+    private boolean forced;
+    private PlatformMonitor.Start start;
+
+    /**
+     * @param monitor the monitor to start when steady state is reached, or null to only detect it
+     */
+    public SteadyStateDetector(PlatformMonitor monitor)
+    {
+        this.monitor = monitor;
+        CompilationMXBean compiler = ManagementFactory.getCompilationMXBean();
+        this.jitCompiler = compiler != null && compiler.isCompilationTimeMonitoringSupported() ? compiler : null;
+    }
+
+    /**
+     * @return the number of intervals used to estimate the baseline, and
+     * the number of stable intervals required to declare steady state
+     */
+    public int getWindow()
+    {
+        return window;
+    }
+
+    public void setWindow(int window)
+    {
+        if (window < 2)
+            throw new IllegalArgumentException("Invalid window " + window);
+        this.window = window;
+    }
+
+    /**
+     * @return the CUSUM decision threshold, in standard deviations
+     */
+    public double getThreshold()
+    {
+        return threshold;
+    }
+
+    public void setThreshold(double threshold)
+    {
+        this.threshold = threshold;
+    }
+
+    /**
+     * @return the CUSUM allowed drift per interval, in standard deviations
+     */
+    public double getDrift()
+    {
+        return drift;
+    }
+
+    public void setDrift(double drift)
+    {
+        this.drift = drift;
+    }
+
+    /**
+     * @return the max fraction of an interval that may be spent in JIT compilation
+     * for the interval to be considered stable
+     */
+    public double getJITThreshold()
+    {
+        return jitThreshold;
+    }
+
+    public void setJITThreshold(double jitThreshold)
+    {
+        this.jitThreshold = jitThreshold;
+    }
+
+    /**
+     * @return the max number of warm-up intervals after which the measurement
+     * window is started even if steady state was not reached, or 0 for no limit
+     */
+    public int getMaxIntervals()
+    {
+        return maxIntervals;
+    }
+
+    public void setMaxIntervals(int maxIntervals)
+    {
+        this.maxIntervals = maxIntervals;
+    }
+
+    /**
+     * Updates the detector with the given interval histogram.
+     * <div>
+     * When steady state is reached, the {@link PlatformMonitor} is started;
+     * further calls to this method return true and have no effect.
+     * </div>
+     *
+     * @param interval the latency histogram of the last interval, ideally
+     * with start and end timestamps set to compute the throughput
+     * @return whether steady state has been reached
+     */
+    public boolean update(Histogram interval)
+    {
+        if (steady)
+            return true;
+
+        long now = System.nanoTime();
+        long duration = interval.getEndTimeStamp() - interval.getStartTimeStamp();
+        if (interval.getStartTimeStamp() == Long.MAX_VALUE || duration <= 0)
+            duration = lastUpdate == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(now - lastUpdate);
+        lastUpdate = now;
+        ++intervals;
+
+        boolean stable = true;
+        double rate = duration > 0 ? interval.getTotalCount() * 1000D / duration : interval.getTotalCount();
+        stable &= throughput.update(rate);
+        stable &= p50.update(interval.getValueAtPercentile(50));
+        stable &= p99.update(interval.getValueAtPercentile(99));
+
+        boolean jitQuiet = true;
+        if (jitCompiler != null)
+        {
+            long jitTime = jitCompiler.getTotalCompilationTime();
+            if (lastJITTime < 0 || duration <= 0)
+                jitQuiet = false;
+            else
+                jitQuiet = jitTime - lastJITTime <= jitThreshold * duration;
+            lastJITTime = jitTime;
+        }
+        quietIntervals = jitQuiet ? quietIntervals + 1 : 0;
+
+        if (stable && quietIntervals >= window)
+            steady = true;
+        else if (maxIntervals > 0 && intervals >= maxIntervals)
+            steady = forced = true;
+
+        if (steady && monitor != null)
+            start = monitor.start();
+        return steady;
+    }
+
+    /**
+     * @return whether steady state has been reached
+     */
+    public boolean isSteady()
+    {
+        return steady;
+    }
+
+    /**
+     * @return whether the measurement window was started because
+     * {@link #getMaxIntervals()} was reached before steady state
+     */
+    public boolean isForced()
+    {
+        return forced;
+    }
+
+    /**
+     * @return the number of intervals observed before steady state
+     */
+    public int getIntervals()
+    {
+        return intervals;
+    }
+
+    /**
+     * @return the {@link PlatformMonitor.Start} returned when the
+     * measurement window was started, or null
+     */
+    public PlatformMonitor.Start getStart()
+    {
+        return start;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[intervals=%d,steady=%b,forced=%b]", getClass().getSimpleName(), hashCode(), intervals, steady, forced);
+    }
+
+    /**
+     * A two-sided CUSUM over a metric, that re-estimates its baseline after a shift.
+     * <p>The standard deviation is estimated from the average moving range, as
+     * in control charts, so that a baseline estimated while the metric is still
+     * trending has a small deviation, and the trend is detected as a shift.</p>
+     */
+    private class Metric
+    {
+        private double sum;
+        private double movingRange;
+        private double last;
+        private int samples;
+        private double mean;
+        private double deviation;
+        private double high;
+        private double low;
+        private int stable;
+
+        /**
+         * @param value the value of the metric for the last interval
+         * @return whether the metric has been stable for the last window of intervals
+         */
+        private boolean update(double value)
+        {
+            if (samples < window)
+            {
+                if (samples > 0)
+                    movingRange += Math.abs(value - last);
+                last = value;
+                sum += value;
+                if (++samples == window)
+                {
+                    mean = sum / samples;
+                    // 1.128 is the expected range of 2 normal samples, in standard deviations.
+                    double estimate = movingRange / (samples - 1) / 1.128;
+                    // Avoid that an almost constant baseline flags any small change.
+                    deviation = Math.max(estimate, Math.abs(mean) * 0.01);
+                }
+                return false;
+            }
+
+            double normalized = deviation > 0 ? (value - mean) / deviation : 0;
+            high = Math.max(0, high + normalized - drift);
+            low = Math.max(0, low - normalized - drift);
+            if (high > threshold || low > threshold)
+            {
+                // Shift detected, estimate a new baseline starting from this value.
+                sum = last = value;
+                movingRange = 0;
+                samples = 1;
+                high = low = 0;
+                stable = 0;
+                return false;
+            }
+            return ++stable >= window;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Accounts the CPU time of each thread between {@link #start()} and
+ * {@link #stop(PlatformMonitor.Stop)}, for {@link PlatformMonitor}.</p>
+ * <p>The thread CPU times are sampled periodically, so that the CPU time
+ * of the threads that end before {@link #stop(PlatformMonitor.Stop)} is
+ * accounted up to their last sample.
+ * Threads are grouped by name, matching glob patterns such as {@code qtp*}
+ * in order; threads that match no pattern are grouped as {@code other}.</p>
+ */
+class ThreadCPUTracker
+{
+    private final Map<Long, PlatformMonitor.ThreadCPU> threadCPUs = new HashMap<>();
+    private final Map<Long, long[]> startTimes = new HashMap<>();
+    private final ThreadMXBean threads;
+    private final String[] groups;
+    private final Pattern[] patterns;
+    private boolean started;
+
+    /**
+     * @param threads the bean to sample the threads from
+     * @param groups the glob patterns of the thread names of each group
+     */
+    ThreadCPUTracker(ThreadMXBean threads, String[] groups)
+    {
+        this.threads = threads;
+        this.groups = groups.clone();
+        this.patterns = new Pattern[groups.length];
+        for (int i = 0; i < groups.length; ++i)
+        {
+            patterns[i] = glob(groups[i]);
+        }
+    }
+
+    private static Pattern glob(String glob)
+    {
+        StringBuilder regex = new StringBuilder();
+        for (String part : glob.split("\\*", -1))
+        {
+            if (regex.length() > 0)
+                regex.append(".*");
+            regex.append(Pattern.quote(part));
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * @return whether the JVM supports measuring the CPU time of threads
+     */
+    boolean isAvailable()
+    {
+        return threads.isThreadCpuTimeSupported();
+    }
+
+    synchronized void start()
+    {
+        if (!isAvailable())
+            return;
+        if (!threads.isThreadCpuTimeEnabled())
+            threads.setThreadCpuTimeEnabled(true);
+        sample();
+        for (Map.Entry<Long, PlatformMonitor.ThreadCPU> entry : threadCPUs.entrySet())
+        {
+            PlatformMonitor.ThreadCPU threadCPU = entry.getValue();
+            startTimes.put(entry.getKey(), new long[]{threadCPU.cpuTime, threadCPU.userTime});
+        }
+        started = true;
+    }
+
+    synchronized void sample()
+    {
+        if (!isAvailable())
+            return;
+        long[] ids = threads.getAllThreadIds();
+        long[] cpuTimes;
+        long[] userTimes;
+        if (threads instanceof com.sun.management.ThreadMXBean)
+        {
+            com.sun.management.ThreadMXBean tmx = (com.sun.management.ThreadMXBean)threads;
+            cpuTimes = tmx.getThreadCpuTime(ids);
+            userTimes = tmx.getThreadUserTime(ids);
+        }
+        else
+        {
+            cpuTimes = new long[ids.length];
+            userTimes = new long[ids.length];
+            for (int i = 0; i < ids.length; ++i)
+            {
+                cpuTimes[i] = threads.getThreadCpuTime(ids[i]);
+                userTimes[i] = threads.getThreadUserTime(ids[i]);
+            }
+        }
+        for (int i = 0; i < ids.length; ++i)
+        {
+            // Threads that died in the meantime report -1.
+            if (cpuTimes[i] < 0)
+                continue;
+            PlatformMonitor.ThreadCPU threadCPU = threadCPUs.get(ids[i]);
+            if (threadCPU == null)
+            {
+                ThreadInfo info = threads.getThreadInfo(ids[i]);
+                if (info == null)
+                    continue;
+                threadCPU = new PlatformMonitor.ThreadCPU();
+                threadCPU.name = info.getThreadName();
+                threadCPU.threads = 1;
+                threadCPU.started = started;
+                threadCPUs.put(ids[i], threadCPU);
+            }
+            threadCPU.cpuTime = cpuTimes[i];
+            threadCPU.userTime = Math.max(0, userTimes[i]);
+        }
+    }
+
+    void stop(PlatformMonitor.Stop stop)
+    {
+        if (!isAvailable())
+            return;
+        List<PlatformMonitor.ThreadCPU> result = new ArrayList<>();
+        Map<String, PlatformMonitor.ThreadCPU> groupCPUs = new LinkedHashMap<>();
+        for (String group : groups)
+        {
+            groupCPUs.put(group, newGroup(group));
+        }
+        PlatformMonitor.ThreadCPU other = newGroup("other");
+        List<String> startedThreads = new ArrayList<>();
+        long total = 0;
+        synchronized (this)
+        {
+            sample();
+            for (Map.Entry<Long, PlatformMonitor.ThreadCPU> entry : threadCPUs.entrySet())
+            {
+                // The samples hold absolute times, so the stop
+                // gets new instances with the deltas from start.
+                PlatformMonitor.ThreadCPU sample = entry.getValue();
+                PlatformMonitor.ThreadCPU threadCPU = new PlatformMonitor.ThreadCPU();
+                threadCPU.name = sample.name;
+                threadCPU.threads = sample.threads;
+                threadCPU.started = sample.started;
+                threadCPU.cpuTime = sample.cpuTime;
+                threadCPU.userTime = sample.userTime;
+                long[] start = startTimes.get(entry.getKey());
+                if (start != null)
+                {
+                    threadCPU.cpuTime -= start[0];
+                    threadCPU.userTime -= start[1];
+                }
+                if (threadCPU.started)
+                    startedThreads.add(threadCPU.name);
+                result.add(threadCPU);
+                total += threadCPU.cpuTime;
+
+                PlatformMonitor.ThreadCPU group = other;
+                for (int i = 0; i < patterns.length; ++i)
+                {
+                    if (patterns[i].matcher(threadCPU.name).matches())
+                    {
+                        group = groupCPUs.get(groups[i]);
+                        break;
+                    }
+                }
+                group.cpuTime += threadCPU.cpuTime;
+                group.userTime += threadCPU.userTime;
+                ++group.threads;
+            }
+        }
+        groupCPUs.put(other.name, other);
+
+        Comparator<PlatformMonitor.ThreadCPU> byCPUTime = Comparator.comparingLong((PlatformMonitor.ThreadCPU threadCPU) -> threadCPU.cpuTime).reversed();
+        result.sort(byCPUTime);
+        List<PlatformMonitor.ThreadCPU> groupList = new ArrayList<>(groupCPUs.values());
+        groupList.sort(byCPUTime);
+        stop.threadCPUTime = total;
+        stop.threadCPUs = result;
+        stop.threadGroupCPUs = groupList;
+        stop.startedThreads = startedThreads;
+    }
+
+    private static PlatformMonitor.ThreadCPU newGroup(String name)
+    {
+        PlatformMonitor.ThreadCPU group = new PlatformMonitor.ThreadCPU();
+        group.name = name;
+        return group;
+    }
+}
@@ -0,0 +1,502 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the throughput of operations over time.
+ * <div>
+ * Operations are counted with {@link #mark()} into a {@link LongAdder},
+ * which is striped across CPUs so that counting from many threads does not
+ * contend; between {@link #start()} and {@link #stop()}, a background ticker
+ * records the number of operations performed in each period, by default
+ * every second, so that a throughput collapse in the middle of a benchmark
+ * is not hidden by the average over the whole run.
+ * </div>
+ * <div>
+ * The counts are stored in a fixed-size ring buffer of primitive values; when
+ * the buffer is full, the oldest counts are overwritten, see {@link #getDroppedSamples()}.
+ * Along with each count, the ticker records the time actually elapsed since the
+ * previous tick, and rates are computed from it rather than from the nominal period,
+ * so that a ticker that runs late, for example during a GC pause, does not inflate
+ * the rate of the periods that accumulated more operations.
+ * The ticker also keeps exponentially weighted moving averages of the rate over
+ * 1, 5 and 15 seconds, and the distribution of the rates is summarized by
+ * {@link #getMinRate()}, {@link #getMeanRate()}, {@link #getMaxRate()} and
+ * {@link #getCoefficientOfVariation()}.
+ * </div>
+ * <div>
+ * Typical usage, within a {@link PlatformMonitor} window:
+ * <pre>
+ * ThroughputMeter meter = new ThroughputMeter();
+ * monitor.setThroughputMeter(meter);
+ * monitor.start();
+ * // Perform benchmark, calling meter.mark() for each operation.
+ * Stop stop = monitor.stop();
+ * System.err.println(stop.throughputMeter.getCoefficientOfVariation());
+ * </pre>
+ * </div>
+ */
+public class ThroughputMeter
+{
+    private final LongAdder counter = new LongAdder();
+    private final long[] counts;
+    private final long[] intervals;
+    private final long[] times;
+    private final long period;
+    private ScheduledExecutorService scheduler;
+    private long origin;
+    private long last;
+    private long startTime;
+    private long lastTime;
+    private long size;
+    private double oneSecondRate = Double.NaN;
+    private double fiveSecondRate = Double.NaN;
+    private double fifteenSecondRate = Double.NaN;
+
+    /**
+     * Creates a meter that records the operations every second,
+     * retaining one hour of counts.
+     */
+    public ThroughputMeter()
+    {
+        this(1, TimeUnit.SECONDS, 3600);
+    }
+
+    /**
+     * @param period the period at which the operations are recorded
+     * @param unit the unit of the period
+     * @param capacity the max number of counts retained
+     */
+    public ThroughputMeter(long period, TimeUnit unit, int capacity)
+    {
+        if (period <= 0)
+            throw new IllegalArgumentException("Invalid period " + period);
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        this.period = unit.toMillis(period);
+        if (this.period <= 0)
+            throw new IllegalArgumentException("Invalid period " + period + " " + unit);
+        this.counts = new long[capacity];
+        this.intervals = new long[capacity];
+        this.times = new long[capacity];
+    }
+
+    /**
+     * Counts one operation.
+     */
+    public void mark()
+    {
+        counter.increment();
+    }
+
+    /**
+     * @param operations the number of operations to count
+     */
+    public void mark(long operations)
+    {
+        counter.add(operations);
+    }
+
+    /**
+     * Discards the previous counts and starts recording, in a daemon thread.
+     */
+    public void start()
+    {
+        start(System.nanoTime());
+    }
+
+    /**
+     * @param now the {@link System#nanoTime()} value of the start
+     */
+    synchronized void start(long now)
+    {
+        if (scheduler != null)
+            throw new IllegalStateException("Already started");
+        origin = last = counter.sum();
+        startTime = lastTime = now;
+        size = 0;
+        oneSecondRate = fiveSecondRate = fifteenSecondRate = Double.NaN;
+        scheduler = Executors.newSingleThreadScheduledExecutor(task ->
+        {
+            Thread thread = new Thread(task, "ThroughputMeter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::tick, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops recording; the operations counted after the last
+     * complete period are only reported by {@link #getCount()}.
+     */
+    public void stop()
+    {
+        ScheduledExecutorService scheduler;
+        synchronized (this)
+        {
+            scheduler = this.scheduler;
+            this.scheduler = null;
+        }
+        if (scheduler == null)
+            return;
+        scheduler.shutdownNow();
+        try
+        {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException x)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    void tick()
+    {
+        tick(System.nanoTime());
+    }
+
+    /**
+     * Records the operations counted since the previous tick.
+     *
+     * @param now the {@link System#nanoTime()} value of this tick
+     */
+    synchronized void tick(long now)
+    {
+        long sum = counter.sum();
+        long count = sum - last;
+        last = sum;
+        long interval = Math.max(1, now - lastTime);
+        lastTime = now;
+        int index = (int)(size % counts.length);
+        counts[index] = count;
+        intervals[index] = interval;
+        times[index] = now - startTime;
+        ++size;
+
+        // The weights of the averages depend on the actual interval.
+        double rate = rate(count, interval);
+        oneSecondRate = ewma(oneSecondRate, rate, alpha(interval, 1));
+        fiveSecondRate = ewma(fiveSecondRate, rate, alpha(interval, 5));
+        fifteenSecondRate = ewma(fifteenSecondRate, rate, alpha(interval, 15));
+    }
+
+    private static double alpha(long interval, long seconds)
+    {
+        return 1 - Math.exp(-interval / (double)TimeUnit.SECONDS.toNanos(seconds));
+    }
+
+    private static double ewma(double average, double rate, double alpha)
+    {
+        // The first rate initializes the average.
+        if (Double.isNaN(average))
+            return rate;
+        return average + alpha * (rate - average);
+    }
+
+    private static double rate(long count, long interval)
+    {
+        return count * (double)TimeUnit.SECONDS.toNanos(1) / interval;
+    }
+
+    /**
+     * @return a copy of the current counts, that is not affected by further
+     * operations nor discarded by a subsequent {@link #start()}
+     */
+    synchronized ThroughputMeter copy()
+    {
+        ThroughputMeter into = new ThroughputMeter(period, TimeUnit.MILLISECONDS, counts.length);
+        System.arraycopy(counts, 0, into.counts, 0, counts.length);
+        System.arraycopy(intervals, 0, into.intervals, 0, intervals.length);
+        System.arraycopy(times, 0, into.times, 0, times.length);
+        into.counter.add(counter.sum());
+        into.origin = origin;
+        into.last = last;
+        into.startTime = startTime;
+        into.lastTime = lastTime;
+        into.size = size;
+        into.oneSecondRate = oneSecondRate;
+        into.fiveSecondRate = fiveSecondRate;
+        into.fifteenSecondRate = fifteenSecondRate;
+        return into;
+    }
+
+    /**
+     * <p>Restores the state of a meter recorded elsewhere, for example in another process,
+     * before its retained periods are appended with {@link #append(long, long, long)}.</p>
+     *
+     * @param count the number of operations counted
+     * @param dropped the number of periods overwritten
+     * @param oneSecondRate the 1 second moving average rate
+     * @param fiveSecondRate the 5 seconds moving average rate
+     * @param fifteenSecondRate the 15 seconds moving average rate
+     */
+    synchronized void restore(long count, long dropped, double oneSecondRate, double fiveSecondRate, double fifteenSecondRate)
+    {
+        counter.reset();
+        counter.add(count);
+        origin = 0;
+        last = count;
+        size = dropped;
+        this.oneSecondRate = oneSecondRate;
+        this.fiveSecondRate = fiveSecondRate;
+        this.fifteenSecondRate = fifteenSecondRate;
+    }
+
+    /**
+     * @param count the number of operations performed in the period
+     * @param interval the time elapsed in the period, in nanoseconds
+     * @param time the time, in nanoseconds since {@link #start()}, at which the period ended
+     */
+    synchronized void append(long count, long interval, long time)
+    {
+        int index = (int)(size % counts.length);
+        counts[index] = count;
+        intervals[index] = interval;
+        times[index] = time;
+        ++size;
+    }
+
+    /**
+     * @return the number of operations counted since {@link #start()}
+     */
+    public long getCount()
+    {
+        long origin;
+        synchronized (this)
+        {
+            origin = this.origin;
+        }
+        return counter.sum() - origin;
+    }
+
+    /**
+     * @return the nominal period at which the operations are recorded, in milliseconds
+     */
+    public long getPeriod()
+    {
+        return period;
+    }
+
+    /**
+     * @return the max number of counts retained
+     */
+    public int getCapacity()
+    {
+        return counts.length;
+    }
+
+    /**
+     * @return the number of counts retained
+     */
+    public synchronized int getSize()
+    {
+        return (int)Math.min(size, counts.length);
+    }
+
+    /**
+     * @return the number of oldest counts overwritten because the ring buffer was full
+     */
+    public synchronized long getDroppedSamples()
+    {
+        return Math.max(0, size - counts.length);
+    }
+
+    /**
+     * @param index the count index, from 0 (the oldest) to {@link #getSize()} - 1
+     * @return the number of operations performed in the given period
+     */
+    public synchronized long get(int index)
+    {
+        return counts[slot(index)];
+    }
+
+    /**
+     * @param index the count index, from 0 (the oldest) to {@link #getSize()} - 1
+     * @return the time, in milliseconds since {@link #start()}, at which the given period ended
+     */
+    public synchronized long getTime(int index)
+    {
+        return TimeUnit.NANOSECONDS.toMillis(times[slot(index)]);
+    }
+
+    /**
+     * @param index the count index, from 0 (the oldest) to {@link #getSize()} - 1
+     * @return the time elapsed in the given period, in nanoseconds
+     */
+    synchronized long getInterval(int index)
+    {
+        return intervals[slot(index)];
+    }
+
+    /**
+     * @param index the count index, from 0 (the oldest) to {@link #getSize()} - 1
+     * @return the time, in nanoseconds since {@link #start()}, at which the given period ended
+     */
+    synchronized long getNanoTime(int index)
+    {
+        return times[slot(index)];
+    }
+
+    /**
+     * @param index the count index, from 0 (the oldest) to {@link #getSize()} - 1
+     * @return the rate of operations per second in the given period,
+     * computed over the time actually elapsed in the period
+     */
+    public synchronized double getRate(int index)
+    {
+        int slot = slot(index);
+        return rate(counts[slot], intervals[slot]);
+    }
+
+    private int slot(int index)
+    {
+        int retained = getSize();
+        if (index < 0 || index >= retained)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + retained);
+        long first = size - retained;
+        return (int)((first + index) % counts.length);
+    }
+
+    /**
+     * @return the 1 second exponentially weighted moving average rate
+     * of operations per second, or NaN if no period was recorded
+     */
+    public synchronized double getOneSecondRate()
+    {
+        return oneSecondRate;
+    }
+
+    /**
+     * @return the 5 seconds exponentially weighted moving average rate
+     * of operations per second, or NaN if no period was recorded
+     */
+    public synchronized double getFiveSecondRate()
+    {
+        return fiveSecondRate;
+    }
+
+    /**
+     * @return the 15 seconds exponentially weighted moving average rate
+     * of operations per second, or NaN if no period was recorded
+     */
+    public synchronized double getFifteenSecondRate()
+    {
+        return fifteenSecondRate;
+    }
+
+    /**
+     * @return the min rate of operations per second over the retained periods, or NaN if none
+     */
+    public synchronized double getMinRate()
+    {
+        int retained = getSize();
+        if (retained == 0)
+            return Double.NaN;
+        double min = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < retained; ++i)
+        {
+            min = Math.min(min, getRate(i));
+        }
+        return min;
+    }
+
+    /**
+     * @return the max rate of operations per second over the retained periods, or NaN if none
+     */
+    public synchronized double getMaxRate()
+    {
+        int retained = getSize();
+        if (retained == 0)
+            return Double.NaN;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < retained; ++i)
+        {
+            max = Math.max(max, getRate(i));
+        }
+        return max;
+    }
+
+    /**
+     * @return the mean rate of operations per second over the retained periods, or NaN if none
+     */
+    public synchronized double getMeanRate()
+    {
+        int retained = getSize();
+        if (retained == 0)
+            return Double.NaN;
+        double total = 0;
+        for (int i = 0; i < retained; ++i)
+        {
+            total += getRate(i);
+        }
+        return total / retained;
+    }
+
+    /**
+     * @return the standard deviation of the rates over the retained periods divided
+     * by their mean, where low values indicate a stable throughput, or NaN if not available
+     */
+    public synchronized double getCoefficientOfVariation()
+    {
+        int retained = getSize();
+        double mean = getMeanRate();
+        if (retained == 0 || mean == 0)
+            return Double.NaN;
+        double variance = 0;
+        for (int i = 0; i < retained; ++i)
+        {
+            double delta = getRate(i) - mean;
+            variance += delta * delta;
+        }
+        return Math.sqrt(variance / retained) / mean;
+    }
+
+    /**
+     * Writes the retained counts in CSV format, one line per period,
+     * with a header line naming the columns.
+     *
+     * @param output where to write the counts to
+     * @throws IOException if the write fails
+     */
+    public synchronized void writeCSV(Appendable output) throws IOException
+    {
+        String eol = System.lineSeparator();
+        output.append("\"Time (ms)\",\"Operations\",\"Rate (ops/s)\"").append(eol);
+        int retained = getSize();
+        for (int i = 0; i < retained; ++i)
+        {
+            output.append(String.valueOf(getTime(i))).append(',')
+                    .append(String.valueOf(get(i))).append(',')
+                    .append(String.format(Locale.ROOT, "%.2f", getRate(i))).append(eol);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[period=%dms,size=%d/%d,count=%d]", getClass().getSimpleName(), hashCode(), period, getSize(), getCapacity(), getCount());
+    }
+}
@@ -0,0 +1,247 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * A time series of platform samples recorded by {@link PlatformMonitor}.
+ * <div>
+ * Samples are stored in a fixed-size ring buffer of primitive values, so
+ * that recording a sample does not allocate; when the buffer is full, the
+ * oldest samples are overwritten, see {@link #getDroppedSamples()}.
+ * Samples are indexed from 0, the oldest retained, to {@link #getSize()} - 1,
+ * the most recent.
+ * </div>
+ * <div>
+ * Counters such as the CPU time, the GC count and the JIT time are cumulative
+ * since the start of the monitoring, so that rates between any two samples
+ * can be computed; the CPU load is derived in this way, see {@link #getCPULoad(int)}.
+ * The timeline can be written in CSV format, see {@link #writeCSV(Appendable)}.
+ * </div>
+ *
+ * @see PlatformMonitor#setSamplingPeriod(long)
+ */
+public class Timeline
+{
+    /**
+     * The columns of a {@link Timeline}.
+     */
+    public enum Column
+    {
+        /**
+         * The time of the sample, in milliseconds since the start of the monitoring.
+         */
+        TIME("Time (ms)"),
+        /**
+         * The heap memory used, in bytes.
+         */
+        HEAP_USED("Heap Used (B)"),
+        /**
+         * The heap memory committed, in bytes.
+         */
+        HEAP_COMMITTED("Heap Committed (B)"),
+        /**
+         * The eden space used, in bytes.
+         */
+        EDEN_USED("Eden Used (B)"),
+        /**
+         * The survivor space used, in bytes.
+         */
+        SURVIVOR_USED("Survivor Used (B)"),
+        /**
+         * The tenured space used, in bytes.
+         */
+        TENURED_USED("Tenured Used (B)"),
+        /**
+         * The process CPU time, in nanoseconds, or -1 if not available.
+         */
+        CPU_TIME("CPU Time (ns)"),
+        /**
+         * The number of garbage collections, of all collectors.
+         */
+        GC_COUNT("GC Count"),
+        /**
+         * The time spent in garbage collections, of all collectors, in milliseconds.
+         */
+        GC_TIME("GC Time (ms)"),
+        /**
+         * The number of live threads.
+         */
+        THREAD_COUNT("Threads"),
+        /**
+         * The time spent in JIT compilation, in milliseconds.
+         */
+        JIT_TIME("JIT Time (ms)");
+
+        private final String header;
+
+        Column(String header)
+        {
+            this.header = header;
+        }
+
+        public String getHeader()
+        {
+            return header;
+        }
+    }
+
+    private static final Column[] COLUMNS = Column.values();
+
+    private final long[] samples;
+    private final int capacity;
+    private final int cores;
+    private final long period;
+    private long count;
+
+    /**
+     * @param capacity the max number of samples retained
+     * @param cores the number of processors, used to compute the CPU load
+     * @param period the sampling period, in milliseconds
+     */
+    Timeline(int capacity, int cores, long period)
+    {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        this.samples = new long[capacity * COLUMNS.length];
+        this.capacity = capacity;
+        this.cores = cores;
+        this.period = period;
+    }
+
+    /**
+     * Records a sample, overwriting the oldest if the timeline is full.
+     */
+    synchronized void record(long time, long heapUsed, long heapCommitted, long edenUsed, long survivorUsed, long tenuredUsed,
+                             long cpuTime, long gcCount, long gcTime, long threadCount, long jitTime)
+    {
+        int offset = (int)(count % capacity) * COLUMNS.length;
+        samples[offset + Column.TIME.ordinal()] = time;
+        samples[offset + Column.HEAP_USED.ordinal()] = heapUsed;
+        samples[offset + Column.HEAP_COMMITTED.ordinal()] = heapCommitted;
+        samples[offset + Column.EDEN_USED.ordinal()] = edenUsed;
+        samples[offset + Column.SURVIVOR_USED.ordinal()] = survivorUsed;
+        samples[offset + Column.TENURED_USED.ordinal()] = tenuredUsed;
+        samples[offset + Column.CPU_TIME.ordinal()] = cpuTime;
+        samples[offset + Column.GC_COUNT.ordinal()] = gcCount;
+        samples[offset + Column.GC_TIME.ordinal()] = gcTime;
+        samples[offset + Column.THREAD_COUNT.ordinal()] = threadCount;
+        samples[offset + Column.JIT_TIME.ordinal()] = jitTime;
+        ++count;
+    }
+
+    /**
+     * @return the max number of samples retained
+     */
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * @return the sampling period, in milliseconds
+     */
+    public long getPeriod()
+    {
+        return period;
+    }
+
+    /**
+     * @return the number of samples retained
+     */
+    public synchronized int getSize()
+    {
+        return (int)Math.min(count, capacity);
+    }
+
+    /**
+     * @return the number of oldest samples overwritten because the timeline was full
+     */
+    public synchronized long getDroppedSamples()
+    {
+        return Math.max(0, count - capacity);
+    }
+
+    /**
+     * @param column the column
+     * @param index the sample index, from 0 (the oldest) to {@link #getSize()} - 1
+     * @return the value of the given column for the given sample
+     */
+    public synchronized long get(Column column, int index)
+    {
+        int size = getSize();
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        long first = count - size;
+        int offset = (int)((first + index) % capacity) * COLUMNS.length;
+        return samples[offset + column.ordinal()];
+    }
+
+    /**
+     * @param index the sample index, from 1 to {@link #getSize()} - 1
+     * @return the average process CPU load since the previous sample, from 0 to 1,
+     * or NaN if not available
+     */
+    public synchronized double getCPULoad(int index)
+    {
+        if (index <= 0)
+            return Double.NaN;
+        long cpuTime = get(Column.CPU_TIME, index);
+        long previousCPUTime = get(Column.CPU_TIME, index - 1);
+        long elapsed = get(Column.TIME, index) - get(Column.TIME, index - 1);
+        if (cpuTime < 0 || previousCPUTime < 0 || elapsed <= 0 || cores <= 0)
+            return Double.NaN;
+        return (double)(cpuTime - previousCPUTime) / (elapsed * 1_000_000D) / cores;
+    }
+
+    /**
+     * Writes the samples in CSV format, one line per sample, with a header line
+     * naming the columns and an additional, derived, CPU load column.
+     *
+     * @param output where to write the samples to
+     * @throws IOException if the write fails
+     */
+    public synchronized void writeCSV(Appendable output) throws IOException
+    {
+        String eol = System.lineSeparator();
+        for (Column column : COLUMNS)
+        {
+            output.append('"').append(column.getHeader()).append("\",");
+        }
+        output.append("\"CPU Load\"").append(eol);
+        int size = getSize();
+        for (int i = 0; i < size; ++i)
+        {
+            for (Column column : COLUMNS)
+            {
+                output.append(String.valueOf(get(column, i))).append(',');
+            }
+            double cpuLoad = getCPULoad(i);
+            output.append(Double.isNaN(cpuLoad) ? "" : String.format(Locale.ROOT, "%.4f", cpuLoad)).append(eol);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[period=%dms,size=%d/%d,dropped=%d]", getClass().getSimpleName(), hashCode(), period, getSize(), capacity, getDroppedSamples());
+    }
+}
@@ -0,0 +1,128 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AllocationProfilerTest
+{
+    private static volatile Object sink;
+
+    private static void allocateBytes(long millis)
+    {
+        long end = System.nanoTime() + millis * 1_000_000;
+        while (System.nanoTime() < end)
+        {
+            sink = new byte[4096];
+        }
+    }
+
+    private static void allocateLongs(long millis)
+    {
+        long end = System.nanoTime() + millis * 1_000_000;
+        while (System.nanoTime() < end)
+        {
+            sink = new long[512];
+        }
+    }
+
+    @Test
+    public void testTopSitesAndCollapsedStacks() throws Exception
+    {
+        AllocationProfiler profiler = new AllocationProfiler();
+        profiler.setThrottle("1000/s");
+        profiler.start();
+        allocateBytes(500);
+        profiler.stop();
+
+        assertTrue(profiler.getSamples() > 0, profiler.toString());
+        assertTrue(profiler.getSampledBytes() > 0, profiler.toString());
+        assertEquals(0, profiler.getDroppedBytes());
+
+        List<Map.Entry<String, Long>> top = profiler.getTopSites(1);
+        assertEquals(1, top.size());
+        String site = top.get(0).getKey();
+        assertTrue(site.startsWith("byte[] at " + AllocationProfilerTest.class.getName() + ".allocateBytes:"), site);
+
+        StringBuilder output = new StringBuilder();
+        profiler.writeCollapsed(output);
+        long total = 0;
+        boolean found = false;
+        for (String line : output.toString().split(System.lineSeparator()))
+        {
+            total += Long.parseLong(line.substring(line.lastIndexOf(' ') + 1));
+            // The allocated class is the innermost frame.
+            if (line.contains(AllocationProfilerTest.class.getName() + ".allocateBytes;byte[] "))
+                found = true;
+        }
+        assertTrue(found, output.toString());
+        assertEquals(profiler.getSampledBytes(), total);
+    }
+
+    @Test
+    public void testTypeName()
+    {
+        assertEquals("java.lang.String", AllocationProfiler.typeName("java.lang.String"));
+        assertEquals("byte[]", AllocationProfiler.typeName("[B"));
+        assertEquals("long[][]", AllocationProfiler.typeName("[[J"));
+        assertEquals("java.lang.Object[]", AllocationProfiler.typeName("[Ljava.lang.Object;"));
+    }
+
+    @Test
+    public void testBoundedStacks() throws Exception
+    {
+        AllocationProfiler profiler = new AllocationProfiler();
+        profiler.setThrottle("1000/s");
+        profiler.setMaxStacks(1);
+        profiler.start();
+        allocateBytes(250);
+        allocateLongs(250);
+        profiler.stop();
+
+        assertEquals(1, profiler.getTopSites(10).size());
+        assertTrue(profiler.getDroppedBytes() > 0, profiler.toString());
+    }
+
+    @Test
+    public void testWithinPlatformMonitor() throws Exception
+    {
+        PlatformMonitor monitor = new PlatformMonitor();
+        AllocationProfiler profiler = new AllocationProfiler();
+        monitor.setAllocationProfiler(profiler);
+        assertNotNull(monitor.start());
+        allocateBytes(200);
+        PlatformMonitor.Stop stop = monitor.stop();
+
+        assertNotNull(stop.allocationProfiler);
+        assertTrue(stop.toString().contains("Top Allocation Sites by Sampled Bytes"));
+
+        // The profile of the stop is not discarded by the next start.
+        long bytes = stop.allocationProfiler.getSampledBytes();
+        assertNotNull(monitor.start());
+        monitor.stop();
+        assertEquals(bytes, stop.allocationProfiler.getSampledBytes());
+        assertTrue(stop.toString().contains("Top Allocation Sites by Sampled Bytes"));
+    }
+}
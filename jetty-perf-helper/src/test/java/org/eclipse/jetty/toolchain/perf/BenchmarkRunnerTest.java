@@ -0,0 +1,193 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BenchmarkRunnerTest
+{
+    @Test
+    public void testStudentQuantile()
+    {
+        assertEquals(12.706, BenchmarkRunner.studentQuantile(0.975, 1), 0.001);
+        assertEquals(4.303, BenchmarkRunner.studentQuantile(0.975, 2), 0.001);
+        assertEquals(2.228, BenchmarkRunner.studentQuantile(0.975, 10), 0.001);
+        assertEquals(4.604, BenchmarkRunner.studentQuantile(0.995, 4), 0.001);
+    }
+
+    @Test
+    public void testEstimate()
+    {
+        BenchmarkRunner.Estimate estimate = new BenchmarkRunner.Estimate(new double[]{1, 2, 3}, 0.95);
+        assertEquals(2, estimate.getMean(), 1e-9);
+        assertEquals(1, estimate.getStandardDeviation(), 1e-9);
+        assertEquals(2 - 4.303 / Math.sqrt(3), estimate.getLower(), 0.001);
+        assertEquals(2 + 4.303 / Math.sqrt(3), estimate.getUpper(), 0.001);
+
+        estimate = new BenchmarkRunner.Estimate(new double[]{1}, 0.95);
+        assertEquals(1, estimate.getMean(), 1e-9);
+        assertTrue(Double.isNaN(estimate.getLower()));
+    }
+
+    @Test
+    public void testRun() throws Exception
+    {
+        BenchmarkRunner runner = new BenchmarkRunner();
+        runner.setForks(2);
+        runner.setWarmupIterations(1);
+        runner.setMeasureIterations(2);
+        runner.setCooldownIterations(1);
+        runner.setIterationTime(200);
+        runner.setJvmArgs("-Xmx64m");
+        runner.setArgs("2");
+        BenchmarkRunner.Result result = runner.run(SleepBenchmark.class);
+
+        assertEquals(2, result.getForks().size());
+        for (BenchmarkRunner.ForkResult fork : result.getForks())
+        {
+            assertEquals(4, fork.getIterations().size());
+            assertEquals(2, fork.getIterations(BenchmarkRunner.Phase.MEASURE).size());
+            assertEquals(1, fork.getIterations(BenchmarkRunner.Phase.COOLDOWN).size());
+            // Sleeping 2 ms per operation.
+            assertTrue(fork.getThroughput() > 100 && fork.getThroughput() <= 500, fork.toString());
+            assertTrue(fork.getHistogram().getValueAtPercentile(50) >= TimeUnit.MILLISECONDS.toNanos(2), fork.toString());
+            assertNotNull(fork.getStart());
+            assertNotNull(fork.getStop());
+            assertTrue(fork.getStop().time >= TimeUnit.MILLISECONDS.toNanos(400));
+            assertTrue(fork.getStop().operations > 0);
+        }
+
+        BenchmarkRunner.Estimate throughput = result.getThroughput();
+        assertEquals(2, throughput.getSamples());
+        assertTrue(throughput.getLower() <= throughput.getMean() && throughput.getMean() <= throughput.getUpper(), throughput.toString());
+        assertTrue(result.toString().contains("Throughput: "));
+    }
+
+    @Test
+    public void testForkResultsAreComplete() throws Exception
+    {
+        BenchmarkRunner runner = new BenchmarkRunner();
+        runner.setForks(1);
+        runner.setWarmupIterations(0);
+        runner.setMeasureIterations(1);
+        runner.setCooldownIterations(0);
+        runner.setIterationTime(2500);
+        runner.setArgs("2");
+        BenchmarkRunner.Result result = runner.run(SleepBenchmark.class);
+
+        BenchmarkRunner.ForkResult fork = result.getForks().get(0);
+        BenchmarkRunner.IterationResult iteration = fork.getIterations(BenchmarkRunner.Phase.MEASURE).get(0);
+        // The per-second throughput reaches the parent.
+        ThroughputMeter meter = iteration.throughputMeter;
+        assertNotNull(meter);
+        assertEquals(iteration.operations, meter.getCount());
+        assertTrue(meter.getSize() >= 2, meter.toString());
+        for (int i = 0; i < meter.getSize(); ++i)
+        {
+            assertTrue(meter.getRate(i) > 100 && meter.getRate(i) <= 500, String.valueOf(meter.getRate(i)));
+        }
+        assertTrue(meter.getTime(1) > meter.getTime(0));
+        // The lists of the platform information reach the parent.
+        PlatformMonitor.Stop stop = fork.getStop();
+        assertNotNull(stop.memoryPools);
+        assertTrue(stop.memoryPools.size() > 0);
+        assertNotNull(stop.collectors);
+        assertTrue(stop.collectors.size() > 0);
+        assertNotNull(stop.collectors.get(0).name);
+    }
+
+    @Test
+    public void testFailure()
+    {
+        BenchmarkRunner runner = new BenchmarkRunner();
+        runner.setForks(1);
+        runner.setWarmupIterations(0);
+        runner.setMeasureIterations(1);
+        runner.setIterationTime(100);
+        IOException failure = assertThrows(IOException.class, () -> runner.run(FailingBenchmark.class));
+        assertTrue(failure.getMessage().contains("Benchmark failure"), failure.getMessage());
+    }
+
+    @Test
+    public void testTimeout()
+    {
+        BenchmarkRunner runner = new BenchmarkRunner();
+        runner.setForks(1);
+        runner.setWarmupIterations(0);
+        runner.setMeasureIterations(1);
+        runner.setCooldownIterations(0);
+        runner.setIterationTime(100);
+        runner.setTimeoutMargin(5000);
+        long begin = System.nanoTime();
+        IOException failure = assertThrows(IOException.class, () -> runner.run(HangingBenchmark.class));
+        assertTrue(failure.getMessage().contains("timed out"), failure.getMessage());
+        assertTrue(System.nanoTime() - begin < TimeUnit.SECONDS.toNanos(30));
+    }
+
+    public static class SleepBenchmark implements BenchmarkRunner.Benchmark
+    {
+        private long sleep;
+
+        @Override
+        public void setUp(String[] args)
+        {
+            sleep = Long.parseLong(args[0]);
+        }
+
+        @Override
+        public void run(BenchmarkRunner.Iteration iteration) throws Exception
+        {
+            // The standard output must not interfere with the results.
+            System.out.println("Running " + iteration);
+            while (iteration.isRunning())
+            {
+                long begin = System.nanoTime();
+                Thread.sleep(sleep);
+                iteration.getLatencyRecorder().record(System.nanoTime() - begin);
+                iteration.getThroughputMeter().mark();
+            }
+        }
+    }
+
+    public static class FailingBenchmark implements BenchmarkRunner.Benchmark
+    {
+        @Override
+        public void run(BenchmarkRunner.Iteration iteration)
+        {
+            throw new IllegalStateException("Benchmark failure");
+        }
+    }
+
+    public static class HangingBenchmark implements BenchmarkRunner.Benchmark
+    {
+        @Override
+        public void run(BenchmarkRunner.Iteration iteration) throws Exception
+        {
+            // Does not honor Iteration.isRunning().
+            Thread.sleep(Long.MAX_VALUE);
+        }
+    }
+}
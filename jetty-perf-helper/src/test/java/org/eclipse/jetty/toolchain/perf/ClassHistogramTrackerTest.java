@@ -0,0 +1,64 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ClassHistogramTrackerTest
+{
+    @Test
+    public void testParse()
+    {
+        String histogram = "" +
+                " num     #instances         #bytes  class name (module)\n" +
+                "-------------------------------------------------------\n" +
+                "   1:         12924         986352  [B (java.base@17.0.9)\n" +
+                "   2:          3137         374120  java.lang.Class (java.base@17.0.9)\n" +
+                "   3:            10            160  com.acme.Foo\n" +
+                "   4:             5             80  com.acme.Foo\n" +
+                "   5:             1             16  com.acme.Bar$1\r\n" +
+                "Total         16077        1360728\n";
+
+        Map<String, long[]> result = ClassHistogramTracker.parse(histogram);
+
+        assertEquals(4, result.size());
+        assertArrayEquals(new long[]{12924, 986352}, result.get("[B"));
+        assertArrayEquals(new long[]{3137, 374120}, result.get("java.lang.Class"));
+        // Same class name from different class loaders.
+        assertArrayEquals(new long[]{15, 240}, result.get("com.acme.Foo"));
+        assertArrayEquals(new long[]{1, 16}, result.get("com.acme.Bar$1"));
+    }
+
+    @Test
+    public void testCapture()
+    {
+        Map<String, long[]> result = ClassHistogramTracker.capture();
+
+        assertNotNull(result);
+        long[] strings = result.get("java.lang.String");
+        assertNotNull(strings);
+        assertTrue(strings[0] > 0 && strings[1] > 0);
+    }
+}
@@ -0,0 +1,239 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.TimeUnit;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HistogramCollectorTest
+{
+    private static final int VALUES = 1000;
+    private static final int INTERVALS = 3;
+
+    /**
+     * Entry point of the load generator processes of {@link #testMultipleProcesses()}.
+     *
+     * @param args the collector port and the index of the generator
+     * @throws Exception if the histograms cannot be published
+     */
+    public static void main(String[] args) throws Exception
+    {
+        int port = Integer.parseInt(args[0]);
+        int index = Integer.parseInt(args[1]);
+        LatencyRecorder recorder = new LatencyRecorder();
+        try (HistogramPublisher publisher = HistogramPublisher.connect("127.0.0.1", port, "generator" + index))
+        {
+            for (int i = 0; i < INTERVALS; ++i)
+            {
+                for (int j = 0; j < VALUES; ++j)
+                {
+                    recorder.record(TimeUnit.MILLISECONDS.toNanos(index + 1));
+                }
+                publisher.publish(recorder.intervalHistogram());
+            }
+        }
+    }
+
+    private static Histogram newInterval(long startTime, long value, int count)
+    {
+        Histogram histogram = new Histogram(3);
+        histogram.recordValueWithCount(value, count);
+        histogram.setStartTimeStamp(startTime);
+        histogram.setEndTimeStamp(startTime + 1000);
+        return histogram;
+    }
+
+    @Test
+    public void testIntervalsAreAligned()
+    {
+        HistogramCollector collector = new HistogramCollector(1, TimeUnit.SECONDS);
+        collector.add(newInterval(10_000, 1, 10));
+        collector.add(newInterval(10_400, 2, 20));
+        collector.add(newInterval(11_100, 3, 30));
+
+        NavigableMap<Long, Histogram> intervals = collector.getIntervalHistograms();
+        assertEquals(2, intervals.size());
+        assertEquals(30, intervals.get(10_000L).getTotalCount());
+        assertEquals(11_000, intervals.get(10_000L).getEndTimeStamp());
+        assertEquals(30, intervals.get(11_000L).getTotalCount());
+        Histogram cumulative = collector.getCumulativeHistogram();
+        assertEquals(60, cumulative.getTotalCount());
+        assertEquals(10_000, cumulative.getStartTimeStamp());
+        assertEquals(12_000, cumulative.getEndTimeStamp());
+    }
+
+    @Test
+    public void testSharedDirectory() throws Exception
+    {
+        Path directory = Files.createTempDirectory("collector");
+        try
+        {
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < 3; ++i)
+            {
+                try (HistogramPublisher publisher = HistogramPublisher.open(directory.toFile(), "generator" + i))
+                {
+                    publisher.publish(newInterval(now, (i + 1) * 1_000_000L, 100));
+                    publisher.publish(newInterval(now + 1000, (i + 1) * 1_000_000L, 100));
+                }
+            }
+
+            HistogramCollector collector = new HistogramCollector(1, TimeUnit.SECONDS);
+            collector.collect(directory.toFile());
+            assertEquals(3, collector.getSources());
+            assertEquals(600, collector.getCumulativeHistogram().getTotalCount());
+            for (Histogram interval : collector.getIntervalHistograms().values())
+            {
+                assertEquals(300, interval.getTotalCount());
+            }
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            collector.writeLog(output, "global");
+            HistogramCollector reader = new HistogramCollector(1, TimeUnit.SECONDS);
+            reader.collect(new ByteArrayInputStream(output.toByteArray()));
+            assertEquals(600, reader.getCumulativeHistogram().getTotalCount());
+        }
+        finally
+        {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void testCollectDirectoryTwice() throws Exception
+    {
+        Path directory = Files.createTempDirectory("collector");
+        try
+        {
+            long now = System.currentTimeMillis();
+            HistogramCollector collector = new HistogramCollector(1, TimeUnit.SECONDS);
+            try (HistogramPublisher publisher = HistogramPublisher.open(directory.toFile(), "generator0"))
+            {
+                publisher.publish(newInterval(now, 1_000_000L, 100));
+                collector.collect(directory.toFile());
+                assertEquals(100, collector.getCumulativeHistogram().getTotalCount());
+
+                // Only the intervals published since the previous call are merged.
+                publisher.publish(newInterval(now + 1000, 1_000_000L, 100));
+                collector.collect(directory.toFile());
+                assertEquals(200, collector.getCumulativeHistogram().getTotalCount());
+            }
+            try (HistogramPublisher publisher = HistogramPublisher.open(directory.toFile(), "generator1"))
+            {
+                publisher.publish(newInterval(now, 2_000_000L, 100));
+            }
+            collector.collect(directory.toFile());
+            collector.collect(directory.toFile());
+            assertEquals(300, collector.getCumulativeHistogram().getTotalCount());
+            assertEquals(2, collector.getSources());
+        }
+        finally
+        {
+            delete(directory);
+        }
+    }
+
+    private static void delete(Path directory) throws IOException
+    {
+        File[] files = directory.toFile().listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    @Test
+    public void testMultipleProcesses() throws Exception
+    {
+        try (HistogramCollector collector = new HistogramCollector(1, TimeUnit.SECONDS))
+        {
+            int port = collector.listen(0);
+
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            List<Process> processes = new ArrayList<>();
+            List<Path> outputs = new ArrayList<>();
+            int generators = 3;
+            try
+            {
+                for (int i = 0; i < generators; ++i)
+                {
+                    // Not inherited, since the standard output of the
+                    // test JVM is the channel to the build tool.
+                    Path output = Files.createTempFile("generator", ".out");
+                    outputs.add(output);
+                    processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                            getClass().getName(), String.valueOf(port), String.valueOf(i))
+                            .redirectErrorStream(true)
+                            .redirectOutput(output.toFile())
+                            .start());
+                }
+                for (int i = 0; i < generators; ++i)
+                {
+                    Process process = processes.get(i);
+                    assertTrue(process.waitFor(30, TimeUnit.SECONDS));
+                    assertEquals(0, process.exitValue(), Files.readString(outputs.get(i)));
+                }
+            }
+            finally
+            {
+                for (Process process : processes)
+                {
+                    process.destroyForcibly();
+                }
+                for (Path output : outputs)
+                {
+                    Files.deleteIfExists(output);
+                }
+            }
+
+            long expected = (long)generators * INTERVALS * VALUES;
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (collector.getCumulativeHistogram().getTotalCount() < expected && System.nanoTime() < deadline)
+            {
+                Thread.sleep(50);
+            }
+
+            Histogram cumulative = collector.getCumulativeHistogram();
+            assertEquals(expected, cumulative.getTotalCount());
+            assertEquals(generators, collector.getSources());
+            assertEquals(2, TimeUnit.NANOSECONDS.toMillis(cumulative.getValueAtPercentile(50)));
+            assertEquals(3, TimeUnit.NANOSECONDS.toMillis(cumulative.getMaxValue()));
+            long total = collector.getIntervalHistograms().values().stream().mapToLong(Histogram::getTotalCount).sum();
+            assertEquals(expected, total);
+            assertTrue(collector.snapshot("Global Latency", "ms", null).toString().contains("Global Latency"));
+        }
+    }
+}
@@ -0,0 +1,122 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HistogramComparatorTest
+{
+    private static Histogram newHistogram(long seed, double scale)
+    {
+        return newHistogram(seed, scale, 3);
+    }
+
+    private static Histogram newHistogram(long seed, double scale, int digits)
+    {
+        // Log-normal latencies around 1 ms.
+        Random random = new Random(seed);
+        Histogram histogram = new Histogram(digits);
+        for (int i = 0; i < 100_000; ++i)
+        {
+            histogram.recordValue(Math.round(scale * 1_000_000 * Math.exp(0.5 * random.nextGaussian())));
+        }
+        return histogram;
+    }
+
+    @Test
+    public void testSameDistributionPasses()
+    {
+        HistogramComparator comparator = new HistogramComparator();
+        HistogramComparator.Result result = comparator.compare(newHistogram(1, 1), newHistogram(2, 1));
+
+        assertTrue(result.isPassed(), result.toString());
+        assertEquals(4, result.getDeltas().size());
+        assertTrue(result.getPValue() > 0.01, result.toString());
+        for (HistogramComparator.PercentileDelta delta : result.getDeltas())
+        {
+            assertTrue(delta.getLower() <= delta.getDelta() && delta.getDelta() <= delta.getUpper(), delta.toString());
+        }
+    }
+
+    @Test
+    public void testRegressionFails()
+    {
+        HistogramComparator comparator = new HistogramComparator();
+        comparator.addGate(50, 0.05);
+        comparator.addGate(99, 0.05);
+        HistogramComparator.Result result = comparator.compare(newHistogram(1, 1), newHistogram(2, 1.2));
+
+        assertFalse(result.isPassed(), result.toString());
+        assertEquals(2, result.getDeltas().size());
+        assertEquals(0.2, result.getDeltas().get(0).getDelta(), 0.02);
+        assertTrue(result.getDeltas().get(1).isRegressed());
+        assertTrue(result.getPValue() < 0.001, result.toString());
+    }
+
+    @Test
+    public void testRegressionWithinThresholdPasses()
+    {
+        HistogramComparator comparator = new HistogramComparator();
+        comparator.addGate(50, 0.25);
+        HistogramComparator.Result result = comparator.compare(newHistogram(1, 1), newHistogram(2, 1.2));
+
+        assertTrue(result.isPassed(), result.toString());
+    }
+
+    @Test
+    public void testRankTestWithDifferentPrecisions()
+    {
+        HistogramComparator comparator = new HistogramComparator();
+        HistogramComparator.Result result = comparator.compare(newHistogram(1, 1, 2), newHistogram(2, 1, 3));
+
+        assertTrue(result.getPValue() > 0.01 && result.getPValue() < 0.99, result.toString());
+    }
+
+    @Test
+    public void testLoadLogs() throws Exception
+    {
+        File log = Files.createTempFile("comparator", ".hlog").toFile();
+        log.deleteOnExit();
+        Histogram first = newHistogram(1, 1);
+        Histogram second = newHistogram(2, 1);
+        try (OutputStream output = new FileOutputStream(log))
+        {
+            HistogramLogWriter writer = HistogramSnapshot.newLogWriter(output, System.currentTimeMillis());
+            new HistogramSnapshot(first, 32, "latency", "ms", null).writeLog(writer);
+            new HistogramSnapshot(second, 32, "latency", "ms", null).writeLog(writer);
+            new HistogramSnapshot(second, 32, "other", "ms", null).writeLog(writer);
+        }
+
+        Histogram loaded = HistogramComparator.load("latency", log);
+        assertEquals(first.getTotalCount() + second.getTotalCount(), loaded.getTotalCount());
+        loaded = HistogramComparator.load(null, log);
+        assertEquals(first.getTotalCount() + 2 * second.getTotalCount(), loaded.getTotalCount());
+    }
+}
@@ -0,0 +1,129 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogReader;
+import org.HdrHistogram.HistogramLogWriter;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HistogramSnapshotTest
+{
+    private Histogram newHistogram()
+    {
+        Histogram histogram = new Histogram(3);
+        for (int i = 1; i <= 1000; ++i)
+        {
+            histogram.recordValue(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        return histogram;
+    }
+
+    @Test
+    public void testJSON() throws Exception
+    {
+        HistogramSnapshot snapshot = new HistogramSnapshot(newHistogram(), 32, "Latency \"ms\"", "ms", null);
+        StringBuilder json = new StringBuilder();
+        snapshot.writeJSON(json);
+
+        String result = json.toString();
+        assertTrue(result.startsWith("{\"name\":\"Latency \\\"ms\\\"\",\"unit\":\"ms\",\"count\":1000,"), result);
+        assertTrue(result.contains("{\"percentile\":100.0,\"value\":1000,"), result);
+        assertTrue(result.endsWith("]}"), result);
+    }
+
+    @Test
+    public void testCSV() throws Exception
+    {
+        HistogramSnapshot snapshot = new HistogramSnapshot(newHistogram());
+        StringBuilder csv = new StringBuilder();
+        snapshot.writeCSV(csv);
+
+        String[] lines = csv.toString().split(System.lineSeparator());
+        assertEquals("\"Percentile\",\"Value (ms)\",\"RawValue\",\"TotalCount\",\"1/(1-Percentile)\"", lines[0]);
+        assertTrue(lines[1].startsWith("0.000000,1,"), lines[1]);
+        String last = lines[lines.length - 1];
+        assertTrue(last.startsWith("1.000000,1000,"), last);
+        assertTrue(last.endsWith(",1000,Infinity"), last);
+    }
+
+    @Test
+    public void testEmptyHistogram() throws Exception
+    {
+        HistogramSnapshot snapshot = new HistogramSnapshot(new Histogram(3));
+        StringBuilder json = new StringBuilder();
+        snapshot.writeJSON(json);
+        assertTrue(json.toString().endsWith("\"percentiles\":[]}"));
+        StringBuilder csv = new StringBuilder();
+        snapshot.writeCSV(csv);
+        assertEquals(1, csv.toString().split(System.lineSeparator()).length);
+    }
+
+    @Test
+    public void testLogRoundTrip()
+    {
+        long startTime = System.currentTimeMillis();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        HistogramLogWriter writer = HistogramSnapshot.newLogWriter(output, startTime);
+        Histogram first = newHistogram();
+        first.setStartTimeStamp(startTime);
+        first.setEndTimeStamp(startTime + 1000);
+        new HistogramSnapshot(first, 32, "Request Latency", "ms", null).writeLog(writer);
+        Histogram second = newHistogram();
+        second.setStartTimeStamp(startTime + 1000);
+        second.setEndTimeStamp(startTime + 2000);
+        new HistogramSnapshot(second, 32, "Request Latency", "ms", null).writeLog(writer);
+        writer.close();
+
+        HistogramLogReader reader = new HistogramLogReader(new ByteArrayInputStream(output.toByteArray()));
+        Histogram read = (Histogram)reader.nextIntervalHistogram();
+        assertEquals("Request_Latency", read.getTag());
+        assertEquals(first, read);
+        assertEquals(startTime, read.getStartTimeStamp());
+        assertEquals(startTime + 1000, read.getEndTimeStamp());
+        read = (Histogram)reader.nextIntervalHistogram();
+        assertEquals(second, read);
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void testUnitRatio()
+    {
+        assertEquals(1_000_000D, new HistogramSnapshot(newHistogram()).getUnitRatio());
+        assertEquals(1.5D, new HistogramSnapshot(newHistogram()).toUnit(1_500_000), 1e-9);
+
+        // Microseconds converted to milliseconds, with an explicit ratio.
+        HistogramSnapshot micros = new HistogramSnapshot(newHistogram(), 32, "Latency", "ms", value -> value / 1000, 1000);
+        assertEquals(1000D, micros.getUnitRatio());
+        assertEquals(1.5D, micros.toUnit(1500), 1e-9);
+
+        // A non-linear converter, whose ratio is not known, is used as is.
+        HistogramSnapshot log = new HistogramSnapshot(newHistogram(), 32, "Latency", "log", value -> Math.round(Math.log10(value)), Double.NaN);
+        assertTrue(Double.isNaN(log.getUnitRatio()));
+        assertEquals(3D, log.toUnit(1000), 1e-9);
+        assertTrue(Double.isNaN(new HistogramSnapshot(newHistogram(), 32, "Latency", "log", value -> value).getUnitRatio()));
+    }
+}
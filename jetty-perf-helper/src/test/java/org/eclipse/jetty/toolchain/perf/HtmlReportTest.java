@@ -0,0 +1,111 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HtmlReportTest
+{
+    private static volatile Object sink;
+
+    private static Histogram newHistogram(long seed, double scale)
+    {
+        Random random = new Random(seed);
+        Histogram histogram = new Histogram(3);
+        for (int i = 0; i < 10_000; ++i)
+        {
+            histogram.recordValue(Math.round(scale * 1_000_000 * Math.exp(0.5 * random.nextGaussian())));
+        }
+        return histogram;
+    }
+
+    @Test
+    public void testReport() throws Exception
+    {
+        PlatformMonitor monitor = new PlatformMonitor();
+        monitor.setSamplingPeriod(10);
+        PlatformMonitor.Start start = monitor.start();
+        for (int i = 0; i < 10_000; ++i)
+        {
+            sink = new byte[10 * 1024];
+        }
+        System.gc();
+        Thread.sleep(100);
+        PlatformMonitor.Stop stop = monitor.stop();
+
+        HtmlReport report = new HtmlReport("Baseline <vs> Candidate");
+        report.setStart(start);
+        report.setStop(stop);
+        report.addHistogram(new HistogramSnapshot(newHistogram(1, 1), 32, "Baseline", "ms", null));
+        report.addHistogram(new HistogramSnapshot(newHistogram(2, 1.2), 32, "Candidate", "ms", null));
+
+        StringBuilder html = new StringBuilder();
+        report.write(html);
+        String result = html.toString();
+
+        assertTrue(result.startsWith("<!DOCTYPE html>"));
+        assertTrue(result.trim().endsWith("</html>"));
+        assertTrue(result.contains("<title>Baseline &lt;vs&gt; Candidate</title>"));
+        assertFalse(result.contains("<script"));
+        assertFalse(result.contains("src=\"http"));
+        assertTrue(result.contains("Percentile Spectrum"));
+        assertTrue(result.contains("99.99%"));
+        assertTrue(result.contains(">Candidate</td>"));
+        assertTrue(result.contains("CPU Load"));
+        assertTrue(result.contains("Garbage Collections"));
+        // One polyline per histogram, at least one per timeline series.
+        int polylines = result.split("<polyline").length - 1;
+        assertTrue(polylines >= 2 + 3 + 2, result);
+
+        Path file = Files.createTempFile("report", ".html");
+        try
+        {
+            report.write(file);
+            assertTrue(Files.readString(file).contains("Percentile Spectrum"));
+        }
+        finally
+        {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testHistogramsOnly() throws Exception
+    {
+        HtmlReport report = new HtmlReport("Histograms");
+        report.addHistogram(new HistogramSnapshot(newHistogram(1, 1), 32, "Latency", "ms", null));
+        report.addHistogram(new HistogramSnapshot(new Histogram(3), 32, "Empty", "ms", null));
+
+        StringBuilder html = new StringBuilder();
+        report.write(html);
+        String result = html.toString();
+
+        assertTrue(result.contains("Percentile Spectrum"));
+        assertFalse(result.contains("Platform"));
+        assertFalse(result.contains("Timeline"));
+        assertTrue(result.split("<polyline").length - 1 == 1, result);
+    }
+}
@@ -0,0 +1,99 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LatencyRecorderTest
+{
+    @Test
+    public void testConcurrentRecordingWithIntervals() throws Exception
+    {
+        LatencyRecorder recorder = new LatencyRecorder();
+        int threads = 16;
+        int iterations = 100_000;
+        CountDownLatch latch = new CountDownLatch(threads);
+        for (int i = 0; i < threads; ++i)
+        {
+            new Thread(() ->
+            {
+                for (int j = 1; j <= iterations; ++j)
+                {
+                    recorder.record(j);
+                }
+                latch.countDown();
+            }).start();
+        }
+
+        long intervals = 0;
+        while (!latch.await(1, TimeUnit.MILLISECONDS))
+        {
+            intervals += recorder.intervalHistogram().getTotalCount();
+        }
+        intervals += recorder.intervalHistogram().getTotalCount();
+
+        Histogram total = recorder.totalHistogram();
+        assertEquals((long)threads * iterations, intervals);
+        assertEquals((long)threads * iterations, total.getTotalCount());
+        assertEquals(1, total.getMinValue());
+        assertTrue(total.valuesAreEquivalent(iterations, total.getMaxValue()));
+        assertEquals(0, recorder.intervalHistogram().getTotalCount());
+    }
+
+    @Test
+    public void testReset()
+    {
+        LatencyRecorder recorder = new LatencyRecorder(TimeUnit.SECONDS.toNanos(1), 3);
+        recorder.record(TimeUnit.MILLISECONDS.toNanos(1));
+        recorder.intervalHistogram();
+        recorder.record(TimeUnit.MILLISECONDS.toNanos(2));
+        recorder.reset();
+
+        assertEquals(0, recorder.totalHistogram().getTotalCount());
+        assertEquals(0, recorder.intervalHistogram().getTotalCount());
+    }
+
+    @Test
+    public void testEndedThreadsAreDiscarded() throws Exception
+    {
+        LatencyRecorder recorder = new LatencyRecorder();
+        int threads = 10;
+        for (int i = 0; i < threads; ++i)
+        {
+            Thread thread = new Thread(() -> recorder.record(1));
+            thread.start();
+            thread.join();
+        }
+        recorder.record(2);
+        assertEquals(threads + 1, recorder.getWriterCount());
+
+        // The measures of the ended threads are collected before they are discarded.
+        assertEquals(threads + 1, recorder.intervalHistogram().getTotalCount());
+        assertEquals(1, recorder.getWriterCount());
+        recorder.record(2);
+        assertEquals(1, recorder.intervalHistogram().getTotalCount());
+        assertEquals(threads + 2, recorder.totalHistogram().getTotalCount());
+    }
+}
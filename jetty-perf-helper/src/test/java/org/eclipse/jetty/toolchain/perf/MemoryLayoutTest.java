@@ -0,0 +1,105 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.lang.management.MemoryPoolMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class MemoryLayoutTest
+{
+    /**
+     * Entry point of the JVMs forked by {@link #testClassification(String, String)},
+     * prints the classification of the memory pools and of the collectors.
+     *
+     * @param args ignored
+     */
+    public static void main(String[] args)
+    {
+        MemoryLayout layout = new MemoryLayout();
+        System.out.println(String.join("|",
+                name(layout.eden),
+                name(layout.survivor),
+                name(layout.tenured),
+                names(layout, MemoryLayout.YOUNG),
+                names(layout, MemoryLayout.OLD),
+                names(layout, MemoryLayout.CONCURRENT)));
+    }
+
+    private static String name(MemoryPoolMXBean pool)
+    {
+        return pool == null ? "" : pool.getName();
+    }
+
+    private static String names(MemoryLayout layout, String role)
+    {
+        return layout.collectors(role).stream()
+                .map(collector -> collector.getName())
+                .sorted()
+                .collect(Collectors.joining(","));
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = ';', value = {
+            "-XX:+UseSerialGC;Eden Space|Survivor Space|Tenured Gen|Copy|MarkSweepCompact|",
+            "-XX:+UseParallelGC;PS Eden Space|PS Survivor Space|PS Old Gen|PS Scavenge|PS MarkSweep|",
+            "-XX:+UseG1GC;G1 Eden Space|G1 Survivor Space|G1 Old Gen|G1 Young Generation|G1 Old Generation|",
+            "-XX:+UseZGC;||ZHeap||ZGC Pauses|ZGC Cycles",
+            "-XX:+UseShenandoahGC;||Shenandoah||Shenandoah Pauses|Shenandoah Cycles",
+            "-XX:+UseEpsilonGC;||Epsilon Heap||Epsilon Heap|"
+    })
+    public void testClassification(String option, String expected) throws Exception
+    {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        command.add("-XX:+UnlockExperimentalVMOptions");
+        command.add(option);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(getClass().getName());
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (InputStream input = process.getInputStream())
+        {
+            input.transferTo(output);
+        }
+        assertTrue(process.waitFor(30, TimeUnit.SECONDS));
+        String result = output.toString(StandardCharsets.UTF_8);
+        // Not all JVMs support all collectors.
+        assumeTrue(process.exitValue() == 0, result);
+
+        // Epsilon may print warnings before the result.
+        String[] lines = result.trim().split("\\R");
+        String actual = lines[lines.length - 1];
+        assertEquals(expected, actual);
+    }
+}
@@ -0,0 +1,79 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PacerTest
+{
+    @Test
+    public void testNoDrift()
+    {
+        PlatformTimer timer = PlatformTimer.detect();
+        Pacer pacer = timer.newPacer(1, TimeUnit.MILLISECONDS);
+        int periods = 200;
+        for (int i = 0; i < periods; ++i)
+        {
+            long deadline = pacer.await();
+            assertEquals(pacer.getOrigin() + i * pacer.getPeriod(), deadline);
+            assertTrue(System.nanoTime() - deadline >= 0);
+        }
+        // The elapsed time must not accumulate the error of each wait.
+        long elapsed = System.nanoTime() - pacer.getOrigin();
+        long expected = (periods - 1) * pacer.getPeriod();
+        assertTrue(elapsed >= expected);
+        assertTrue(elapsed < expected + TimeUnit.MILLISECONDS.toNanos(50), "elapsed " + elapsed);
+    }
+
+    @Test
+    public void testCatchUpWhenLate() throws Exception
+    {
+        PlatformTimer timer = PlatformTimer.detect();
+        Pacer pacer = timer.newPacer(1, TimeUnit.MILLISECONDS);
+        pacer.await();
+        Thread.sleep(10);
+        // The missed deadlines are returned without waiting for them again.
+        for (int i = 1; i < 5; ++i)
+        {
+            long deadline = pacer.await();
+            assertEquals(pacer.getOrigin() + i * pacer.getPeriod(), deadline);
+            assertTrue(deadline < pacer.getOrigin() + TimeUnit.MILLISECONDS.toNanos(10));
+        }
+    }
+
+    @Test
+    public void testFractionalPeriod()
+    {
+        // An origin in the past, so that the deadlines are returned immediately.
+        long second = TimeUnit.SECONDS.toNanos(1);
+        long origin = System.nanoTime() - 10 * second;
+        Pacer pacer = new Pacer(PlatformTimer.detect(), origin, second, 3);
+        assertEquals(second / 3, pacer.getPeriod());
+        for (int i = 0; i < 30; ++i)
+        {
+            // A truncated period would drift by 1 ns every 3 deadlines.
+            assertEquals(origin + i * second / 3, pacer.await());
+        }
+        assertEquals(origin + 10 * second, pacer.getNextDeadline());
+    }
+}
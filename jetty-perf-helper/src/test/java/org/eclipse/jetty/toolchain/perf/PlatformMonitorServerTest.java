@@ -0,0 +1,192 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.io.IOException;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PlatformMonitorServerTest
+{
+    @Test
+    public void testMultipleClientsBracketWindow() throws Exception
+    {
+        try (PlatformMonitorServer server = new PlatformMonitorServer(new PlatformMonitor()))
+        {
+            server.start();
+            try (PlatformMonitorClient client1 = new PlatformMonitorClient(server.getPort());
+                 PlatformMonitorClient client2 = new PlatformMonitorClient(server.getPort()))
+            {
+                PlatformMonitor.Start start = client1.start();
+                assertNotNull(start);
+                assertTrue(start.cores > 0);
+                assertNotNull(start.heap);
+                assertNotNull(start.jvm);
+                assertNull(client2.start());
+
+                assertNull(client1.stop(10));
+                PlatformMonitor.Stop stop = client2.stop(20);
+                assertNotNull(stop);
+                assertTrue(stop.time > 0);
+                assertEquals(20, stop.operations);
+                assertNotNull(stop.gcPauses);
+                assertTrue(stop.toString().contains("Operations: 20"));
+            }
+        }
+    }
+
+    @Test
+    public void testMonitorWorkload() throws Exception
+    {
+        try (PlatformMonitorServer server = new PlatformMonitorServer(new PlatformMonitor()))
+        {
+            server.start();
+            try (PlatformMonitorClient client = new PlatformMonitorClient(server.getPort()))
+            {
+                PlatformMonitor.Stop stop = client.monitor(() -> sleep(100));
+                assertNotNull(stop);
+                assertTrue(stop.time >= 100_000_000L);
+            }
+        }
+    }
+
+    @Test
+    public void testListsAndMapsAreTransferred() throws Exception
+    {
+        try (PlatformMonitorServer server = new PlatformMonitorServer(new PlatformMonitor()))
+        {
+            server.start();
+            try (PlatformMonitorClient client = new PlatformMonitorClient(server.getPort()))
+            {
+                PlatformMonitor.Stop stop = client.monitor(() -> sleep(100));
+                assertNotNull(stop);
+                assertNotNull(stop.memoryPools);
+                assertTrue(stop.memoryPools.size() > 0);
+                for (PlatformMonitor.MemoryPool pool : stop.memoryPools)
+                {
+                    assertNotNull(pool.name);
+                    assertNotNull(pool.usage);
+                }
+                assertNotNull(stop.collectors);
+                assertTrue(stop.collectors.size() > 0);
+                assertNotNull(stop.collectors.get(0).name);
+            }
+        }
+    }
+
+    @Test
+    public void testPayloadRoundTrip()
+    {
+        PlatformMonitor.GCEvent event = new PlatformMonitor.GCEvent();
+        event.id = 3;
+        event.name = "G1 Young Generation";
+        event.duration = 1_000_000;
+        event.pause = true;
+        event.before = Map.of("G1 Eden Space", new MemoryUsage(0, 1024, 2048, -1));
+        PlatformMonitor.LockContention contention = new PlatformMonitor.LockContention();
+        contention.lock = "java.lang.Object@1f";
+        contention.threads = Map.of("worker", 7L);
+        PlatformMonitor.Stop stop = new PlatformMonitor.Stop();
+        stop.gcEvents = List.of(event);
+        stop.lockContentions = List.of(contention);
+        stop.threadCPULoads = Map.of("main", 12.5F);
+
+        Properties properties = new Properties();
+        MonitorPayload.write(stop, properties);
+        PlatformMonitor.Stop result = MonitorPayload.read(properties, new PlatformMonitor.Stop());
+
+        assertEquals(1, result.gcEvents.size());
+        PlatformMonitor.GCEvent gcEvent = result.gcEvents.get(0);
+        assertEquals(3, gcEvent.id);
+        assertEquals("G1 Young Generation", gcEvent.name);
+        assertEquals(1_000_000, gcEvent.duration);
+        assertTrue(gcEvent.pause);
+        assertNull(gcEvent.after);
+        assertEquals(1024, gcEvent.before.get("G1 Eden Space").getUsed());
+        assertEquals(-1, gcEvent.before.get("G1 Eden Space").getMax());
+        assertEquals(7L, result.lockContentions.get(0).threads.get("worker"));
+        assertEquals(12.5F, result.threadCPULoads.get("main"));
+        assertNull(result.bufferPools);
+    }
+
+    @Test
+    public void testStopWithoutStart() throws Exception
+    {
+        try (PlatformMonitorServer server = new PlatformMonitorServer(new PlatformMonitor()))
+        {
+            server.start();
+            try (PlatformMonitorClient client = new PlatformMonitorClient(server.getPort()))
+            {
+                assertThrows(IOException.class, client::stop);
+                // The connection is still usable after an error.
+                assertNotNull(client.start());
+                assertNotNull(client.stop());
+            }
+        }
+    }
+
+    @Test
+    public void testDisconnectStopsOnBehalfOfClient() throws Exception
+    {
+        PlatformMonitor monitor = new PlatformMonitor();
+        try (PlatformMonitorServer server = new PlatformMonitorServer(monitor))
+        {
+            server.start();
+            try (PlatformMonitorClient client = new PlatformMonitorClient(server.getPort()))
+            {
+                assertNotNull(client.start());
+            }
+            // Wait for the server to notice the disconnection.
+            long deadline = System.nanoTime() + 5_000_000_000L;
+            while (System.nanoTime() < deadline)
+            {
+                PlatformMonitor.Start start = monitor.start();
+                if (start != null)
+                {
+                    assertNotNull(monitor.stop());
+                    return;
+                }
+                monitor.stop();
+                Thread.sleep(50);
+            }
+            throw new AssertionError("Monitor not stopped on disconnection");
+        }
+    }
+
+    private static void sleep(long millis)
+    {
+        try
+        {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException x)
+        {
+            throw new RuntimeException(x);
+        }
+    }
+}
@@ -0,0 +1,444 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class PlatformMonitorTest
+{
+    private static volatile Object sink;
+
+    private static void allocate()
+    {
+        for (int i = 0; i < 10_000; ++i)
+        {
+            sink = new byte[10 * 1024];
+        }
+        System.gc();
+    }
+
+    @Test
+    public void testPairedStartStop()
+    {
+        PlatformMonitor monitor = new PlatformMonitor();
+        assertNotNull(monitor.start());
+        assertNull(monitor.start());
+        assertNull(monitor.stop());
+        PlatformMonitor.Stop stop = monitor.stop();
+        assertNotNull(stop);
+        assertTrue(stop.time > 0);
+    }
+
+    @Test
+    public void testPlatformPollingDisabledByDefault()
+    {
+        PlatformMonitor monitor = new PlatformMonitor();
+        assertFalse(monitor.isBufferPoolsEnabled());
+        assertFalse(monitor.isThreadCPUEnabled());
+        assertFalse(monitor.isProcessMetricsEnabled());
+        PlatformMonitor.Start start = monitor.start();
+        assertNotNull(start);
+        PlatformMonitor.Stop stop = monitor.stop();
+
+        assertEquals(-1, start.rss);
+        assertNull(stop.bufferPools);
+        assertNull(stop.threadCPUs);
+        assertEquals(-1, stop.threadCPUTime);
+        assertEquals(-1, stop.voluntaryContextSwitches);
+        assertEquals(-1, stop.stopRSS);
+    }
+
+    @Test
+    public void testProcessMetrics() throws Exception
+    {
+        assumeTrue(new File("/proc/self/stat").exists());
+
+        PlatformMonitor monitor = new PlatformMonitor();
+        monitor.setMemoryPollInterval(10);
+        monitor.setProcessMetricsEnabled(true);
+        PlatformMonitor.Start start = monitor.start();
+        assertNotNull(start);
+        Thread.sleep(50);
+        PlatformMonitor.Stop stop = monitor.stop();
+
+        assertTrue(start.rss > 0);
+        assertTrue(stop.stopRSS > 0);
+        assertTrue(stop.voluntaryContextSwitches >= 0);
+        assertTrue(stop.toString().contains("Context Switches: "));
+    }
+
+    @Test
+    public void testNormalizedMetrics()
+    {
+        PlatformMonitor monitor = new PlatformMonitor();
+        assertNotNull(monitor.start());
+        LongAdder operations = new LongAdder();
+        for (int i = 0; i < 1000; ++i)
+        {
+            sink = new byte[1024];
+            operations.increment();
+        }
+        PlatformMonitor.Stop stop = monitor.stop(operations);
+
+        assertEquals(1000, stop.operations);
+        assertTrue(stop.threadAllocatedBytes >= 1000 * 1024);
+        assertTrue(stop.getBytesPerOperation() >= 1024);
+        assertTrue(stop.toString().contains("Allocated Bytes/op: "));
+    }
+
+    @Test
+    public void testUnknownOperations()
+    {
+        PlatformMonitor monitor = new PlatformMonitor();
+        assertNotNull(monitor.start());
+        PlatformMonitor.Stop stop = monitor.stop();
+
+        assertTrue(Double.isNaN(stop.getBytesPerOperation()));
+        assertTrue(Double.isNaN(stop.getCPUNanosPerOperation()));
+        assertTrue(Double.isNaN(stop.getGCMillisPerKiloOperations()));
+    }
+
+    @Test
+    public void testGarbageCollectionEvents() throws Exception
+    {
+        PlatformMonitor monitor = new PlatformMonitor();
+        assertNotNull(monitor.start());
+        allocate();
+        PlatformMonitor.Stop stop = monitor.stop();
+
+        assertNotNull(stop.gcEvents);
+        assertFalse(stop.gcEvents.isEmpty());
+        long pauses = stop.gcEvents.stream().filter(event -> event.pause).count();
+        assertEquals(pauses, stop.gcPauses.getTotalCount());
+        assertTrue(stop.reclaimedBytes > 0);
+        assertTrue(stop.liveBytes > 0);
+        assertEquals(0, stop.droppedGCEvents);
+    }
+
+    @Test
+    public void testGarbageCollectionEventsCapacity()
+    {
+        PlatformMonitor monitor = new PlatformMonitor();
+        monitor.setGCEventCapacity(1);
+        assertNotNull(monitor.start());
+        System.gc();
+        System.gc();
+        PlatformMonitor.Stop stop = monitor.stop();
+
+        assertEquals(1, stop.gcEvents.size());
+        assertTrue(stop.droppedGCEvents >= 1);
+        // The pauses account for all the collections.
+        assertEquals(stop.gcEvents.size() + stop.droppedGCEvents, stop.gcPauses.getTotalCount());
+        assertTrue(stop.toString().contains(" dropped, last 1 retained"));
+    }
+
+    @Test
+    public void testFlightRecorder()
+    {
+        PlatformMonitor monitor = new PlatformMonitor();
+        monitor.setFlightRecorderEnabled(true);
+        monitor.setBufferPoolsEnabled(true);
+        monitor.setThreadCPUEnabled(true);
+        assertNotNull(monitor.start());
+        allocate();
+        PlatformMonitor.Stop stop = monitor.stop();
+
+        assertNotNull(stop.flightRecorderGCPauses);
+        assertTrue(stop.flightRecorderGCCount > 0);
+        assertEquals(stop.flightRecorderGCCount, stop.flightRecorderGCPauses.getTotalCount());
+        assertTrue(stop.flightRecorderReclaimedBytes >= 0);
+        assertTrue(stop.allocatedBytes > 0);
+        assertEquals(-1, stop.edenBytes);
+        assertTrue(stop.toString().contains("GC Pauses (JFR): "));
+        // The GC notifications have the same meaning as without JFR.
+        assertNotNull(stop.gcPauses);
+        assertTrue(stop.gcCount > 0);
+        assertEquals(stop.gcCount, stop.gcPauses.getTotalCount());
+        assertEquals(stop.gcEvents.stream().filter(event -> event.pause).count(), stop.gcCount);
+        // Without polling, buffer pools and thread CPU times are sampled at start and stop.
+        assertNotNull(stop.bufferPools);
+        assertNotNull(stop.threadCPUs);
+        assertTrue(stop.threadCPUTime > 0);
+    }
+
+    @Test
+    public void testTimeline() throws Exception
+    {
+        PlatformMonitor monitor = new PlatformMonitor();
+        monitor.setSamplingPeriod(50);
+        assertNotNull(monitor.start());
+        allocate();
+        Thread.sleep(500);
+        PlatformMonitor.Stop stop = monitor.stop();
+
+        Timeline timeline = stop.timeline;
+        assertNotNull(timeline);
+        assertTrue(timeline.getSize() >= 5, timeline.toString());
+        int last = timeline.getSize() - 1;
+        assertTrue(timeline.get(Timeline.Column.TIME, 0) < timeline.get(Timeline.Column.TIME, 1));
+        assertTrue(timeline.get(Timeline.Column.TIME, last) >= 500);
+        assertTrue(timeline.get(Timeline.Column.GC_COUNT, last) > 0);
+        assertTrue(timeline.get(Timeline.Column.HEAP_USED, last) > 0);
+        assertTrue(timeline.get(Timeline.Column.THREAD_COUNT, last) > 0);
+        assertTrue(stop.toString().contains("Timeline: "));
+    }
+
+    @Test
+    public void testTimelineDisabledByDefault()
+    {
+        PlatformMonitor monitor = new PlatformMonitor();
+        assertNotNull(monitor.start());
+        assertNull(monitor.stop().timeline);
+    }
+
+    @Test
+    public void testJITActivityWarning()
+    {
+        PlatformMonitor.Stop stop = new PlatformMonitor.Stop();
+        stop.time = 1_000_000_000L;
+        stop.jitTime = 5;
+        assertFalse(stop.isJITActive());
+        assertFalse(stop.toString().contains("WARNING"));
+        stop.jitTime = 100;
+        assertTrue(stop.isJITActive());
+        assertTrue(stop.toString().contains("WARNING: JIT compilation still active"));
+    }
+
+    @Test
+    public void testLockContention() throws Exception
+    {
+        PlatformMonitor monitor = new PlatformMonitor();
+        monitor.setContentionSamplingPeriod(5);
+        assertNotNull(monitor.start());
+
+        Object lock = new Object();
+        CountDownLatch locked = new CountDownLatch(1);
+        Thread owner = new Thread(() ->
+        {
+            synchronized (lock)
+            {
+                locked.countDown();
+                sleep(300);
+            }
+        }, "test-owner");
+        owner.start();
+        locked.await();
+        Thread stalled = new Thread(() ->
+        {
+            synchronized (lock)
+            {
+                sink = lock;
+            }
+        }, "test-stalled");
+        stalled.start();
+        owner.join();
+        stalled.join();
+        PlatformMonitor.Stop stop = monitor.stop();
+
+        assertTrue(stop.blockedCount > 0);
+        assertNotNull(stop.lockContentions);
+        PlatformMonitor.LockContention contention = stop.lockContentions.get(0);
+        assertTrue(contention.monitor);
+        assertTrue(contention.lock.startsWith("java.lang.Object@"));
+        assertTrue(contention.threads.containsKey("test-stalled"));
+        assertTrue(contention.owners.containsKey("test-owner"));
+        assertTrue(stop.toString().contains("Top Contended Locks"));
+
+        assertNotNull(stop.threadContentions);
+        PlatformMonitor.ThreadContention threadContention = stop.threadContentions.get(0);
+        assertEquals("test-stalled", threadContention.name);
+        assertEquals(1, threadContention.blockedCount);
+        assertTrue(threadContention.blockedTime < 0 || threadContention.blockedTime >= 100, threadContention.toString());
+        assertTrue(stop.toString().contains("Top Threads by Blocked Time"));
+    }
+
+    @Test
+    public void testDirectBufferGrowth() throws Exception
+    {
+        PlatformMonitor monitor = new PlatformMonitor();
+        monitor.setMemoryPollInterval(10);
+        monitor.setBufferPoolsEnabled(true);
+        assertNotNull(monitor.start());
+        List<ByteBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < 4; ++i)
+        {
+            buffers.add(ByteBuffer.allocateDirect(8 * 1024 * 1024));
+            Thread.sleep(50);
+        }
+        PlatformMonitor.Stop stop = monitor.stop();
+        sink = buffers;
+
+        assertNotNull(stop.bufferPools);
+        PlatformMonitor.BufferPool direct = stop.bufferPools.stream()
+                .filter(pool -> "direct".equals(pool.name))
+                .findFirst()
+                .orElseThrow();
+        assertTrue(direct.stopUsed - direct.startUsed >= 32 * 1024 * 1024);
+        assertTrue(direct.stopCount - direct.startCount >= 4);
+        assertTrue(direct.peakUsed >= direct.stopUsed);
+        assertTrue(direct.allocatedBytes >= 32 * 1024 * 1024);
+        assertTrue(direct.isGrowing());
+        assertTrue(stop.toString().contains("WARNING: direct buffer memory grew"));
+    }
+
+    @Test
+    public void testThreadCPUGroups() throws Exception
+    {
+        PlatformMonitor monitor = new PlatformMonitor();
+        monitor.setMemoryPollInterval(10);
+        monitor.setThreadCPUEnabled(true);
+        monitor.setThreadGroups("busy-*");
+        assertNotNull(monitor.start());
+        // The thread ends before stop(), and its CPU time must be accounted.
+        Thread busy = new Thread(() ->
+        {
+            // Spin on the thread CPU time rather than on the wall clock,
+            // which may advance faster when the CPUs are shared.
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            double value = 0;
+            while (threads.getCurrentThreadCpuTime() < 200_000_000L)
+            {
+                value += Math.sqrt(value + 1);
+            }
+            sink = value;
+            sleep(50);
+        }, "busy-1");
+        busy.start();
+        busy.join();
+        PlatformMonitor.Stop stop = monitor.stop();
+
+        assertTrue(stop.threadCPUTime > 0);
+        assertTrue(stop.startedThreads.contains("busy-1"));
+        PlatformMonitor.ThreadCPU group = stop.threadGroupCPUs.stream()
+                .filter(threadCPU -> "busy-*".equals(threadCPU.name))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(1, group.threads);
+        assertTrue(group.cpuTime >= 100_000_000L, group.toString());
+        assertTrue(stop.threadGroupCPUs.stream().anyMatch(threadCPU -> "other".equals(threadCPU.name)));
+        assertEquals("busy-1", stop.threadCPUs.get(0).name);
+        assertTrue(stop.toString().contains("CPU Time by Thread Group"));
+    }
+
+    @Test
+    public void testThreadCPUSampleAfterStop()
+    {
+        ThreadCPUTracker tracker = new ThreadCPUTracker(ManagementFactory.getThreadMXBean(), new String[0]);
+        tracker.start();
+        PlatformMonitor.Stop stop = new PlatformMonitor.Stop();
+        tracker.stop(stop);
+        long cpuTime = stop.threadCPUs.get(0).cpuTime;
+        long total = stop.threadCPUTime;
+
+        // A late poll must not write absolute times into the stop.
+        tracker.sample();
+        assertEquals(cpuTime, stop.threadCPUs.get(0).cpuTime);
+        assertEquals(total, stop.threadCPUs.stream().mapToLong(threadCPU -> threadCPU.cpuTime).sum());
+    }
+
+    private static void sleep(long millis)
+    {
+        try
+        {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException x)
+        {
+            throw new RuntimeException(x);
+        }
+    }
+
+    @Test
+    public void testHiccups() throws Exception
+    {
+        PlatformMonitor monitor = new PlatformMonitor();
+        monitor.setHiccupResolution(1000);
+        monitor.setPlatformTimer(PlatformTimer.detect());
+        assertNotNull(monitor.start());
+        Thread.sleep(200);
+        PlatformMonitor.Stop stop = monitor.stop();
+
+        assertNotNull(stop.hiccups);
+        assertEquals(1000, stop.hiccupResolution);
+        // One wake-up per millisecond, with some slack for slow environments.
+        assertTrue(stop.hiccups.getTotalCount() > 100, String.valueOf(stop.hiccups.getTotalCount()));
+        assertTrue(stop.hiccups.getMaxValue() < stop.time);
+        assertTrue(stop.toString().contains("Platform Hiccups (1000 us resolution): "));
+    }
+
+    @Test
+    public void testHiccupsDisabled()
+    {
+        PlatformMonitor monitor = new PlatformMonitor();
+        assertEquals(0, monitor.getHiccupResolution());
+        assertNotNull(monitor.start());
+        PlatformMonitor.Stop stop = monitor.stop();
+
+        assertNull(stop.hiccups);
+        assertFalse(stop.toString().contains("Platform Hiccups"));
+    }
+
+    @Test
+    public void testClassHistogram()
+    {
+        PlatformMonitor monitor = new PlatformMonitor();
+        monitor.setClassHistogramSize(10);
+        assertNotNull(monitor.start());
+        List<Retained> retained = new ArrayList<>();
+        for (int i = 0; i < 10_000; ++i)
+        {
+            retained.add(new Retained());
+        }
+        sink = retained;
+        PlatformMonitor.Stop stop = monitor.stop();
+        sink = null;
+
+        String name = Retained.class.getName();
+        PlatformMonitor.ClassGrowth growth = stop.classesByInstances.stream()
+                .filter(classGrowth -> name.equals(classGrowth.name))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(10_000, growth.getInstanceGrowth(), growth.toString());
+        assertTrue(growth.getByteGrowth() >= 10_000 * 16, growth.toString());
+        assertTrue(stop.classesByInstances.size() <= 10);
+        assertTrue(stop.classesByBytes.stream().anyMatch(classGrowth -> name.equals(classGrowth.name)));
+        assertTrue(stop.toString().contains("Top Classes by Live Bytes Growth:"));
+    }
+
+    private static class Retained
+    {
+        private long value1;
+        private long value2;
+    }
+}
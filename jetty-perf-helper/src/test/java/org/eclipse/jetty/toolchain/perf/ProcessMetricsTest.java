@@ -0,0 +1,129 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.io.File;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class ProcessMetricsTest
+{
+    @Test
+    public void testSample()
+    {
+        assumeTrue(new File("/proc/self/stat").exists());
+
+        try (ProcessMetrics metrics = new ProcessMetrics())
+        {
+            assertTrue(metrics.isAvailable());
+            metrics.sample();
+            assertTrue(metrics.minorPageFaults > 0);
+            assertTrue(metrics.majorPageFaults >= 0);
+            assertTrue(metrics.rss > 0);
+            assertTrue(metrics.peakRSS >= metrics.rss);
+            assertTrue(metrics.voluntaryContextSwitches > 0);
+            assertTrue(metrics.involuntaryContextSwitches >= 0);
+
+            ProcessMetrics copy = metrics.copy();
+            assertFalse(copy.isAvailable());
+            long minorPageFaults = copy.minorPageFaults;
+            copy.sample();
+            assertEquals(minorPageFaults, copy.minorPageFaults);
+        }
+    }
+
+    @Test
+    public void testContextSwitchesOfExitedThreads() throws Exception
+    {
+        assumeTrue(new File("/proc/self/task").exists());
+
+        try (ProcessMetrics metrics = new ProcessMetrics())
+        {
+            Object lock = new Object();
+            Thread thread = new Thread(() ->
+            {
+                try
+                {
+                    // Each wait is a voluntary context switch.
+                    for (int i = 0; i < 100; ++i)
+                    {
+                        Thread.sleep(1);
+                    }
+                    synchronized (lock)
+                    {
+                        lock.wait();
+                    }
+                }
+                catch (InterruptedException ignored)
+                {
+                }
+            });
+            thread.start();
+            while (thread.getState() != Thread.State.WAITING)
+            {
+                Thread.sleep(10);
+            }
+            metrics.sample();
+            long before = metrics.voluntaryContextSwitches;
+
+            thread.interrupt();
+            thread.join();
+            metrics.sample();
+
+            // The context switches of the exited thread are not lost.
+            assertTrue(metrics.voluntaryContextSwitches >= before, before + " > " + metrics.voluntaryContextSwitches);
+            assertTrue(before >= 100);
+        }
+    }
+
+    @Test
+    public void testTaskFilesAreNotKeptOpen()
+    {
+        File descriptors = new File("/proc/self/fd");
+        assumeTrue(new File("/proc/self/task").exists() && descriptors.exists());
+
+        int before = descriptors.list().length;
+        try (ProcessMetrics metrics = new ProcessMetrics())
+        {
+            metrics.sample();
+            assertTrue(metrics.voluntaryContextSwitches > 0);
+            // Only the stat, status and io files are open.
+            assertTrue(descriptors.list().length <= before + 3);
+        }
+    }
+
+    @Test
+    public void testUnavailable()
+    {
+        assumeTrue(!new File("/proc/self/stat").exists());
+
+        try (ProcessMetrics metrics = new ProcessMetrics())
+        {
+            assertFalse(metrics.isAvailable());
+            metrics.sample();
+            assertEquals(-1, metrics.minorPageFaults);
+            assertEquals(-1, metrics.rss);
+            assertEquals(-1, metrics.voluntaryContextSwitches);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RateDriverTest
+{
+    @Test
+    public void testStallIsAccountedInCorrectedHistogram()
+    {
+        RateDriver driver = new RateDriver(PlatformTimer.detect(), 1000);
+        AtomicLong counter = new AtomicLong();
+        RateDriver.Result result = driver.run(() ->
+        {
+            // Stall once for 200 ms, the other operations are fast.
+            if (counter.incrementAndGet() == 100)
+                TimeUnit.MILLISECONDS.sleep(200);
+        }, 500);
+
+        assertEquals(500, result.getOperations());
+        assertEquals(500, result.getCorrectedHistogram().getTotalCount());
+        assertEquals(500, result.getUncorrectedHistogram().getTotalCount());
+
+        long threshold = TimeUnit.MILLISECONDS.toNanos(50);
+        long correctedSlow = result.getCorrectedHistogram().getCountBetweenValues(threshold, Long.MAX_VALUE / 2);
+        long uncorrectedSlow = result.getUncorrectedHistogram().getCountBetweenValues(threshold, Long.MAX_VALUE / 2);
+        // Only the stalled operation is slow when not corrected,
+        // while the operations queued behind it are slow when corrected.
+        assertTrue(uncorrectedSlow <= 2, "uncorrected " + uncorrectedSlow);
+        assertTrue(correctedSlow > 100, "corrected " + correctedSlow);
+        assertTrue(result.getMaxLag() >= TimeUnit.MILLISECONDS.toNanos(150));
+    }
+
+    @Test
+    public void testFailuresAreCounted()
+    {
+        RateDriver driver = new RateDriver(PlatformTimer.detect(), 10000);
+        RateDriver.Result result = driver.run(() ->
+        {
+            throw new Exception();
+        }, 10);
+
+        assertEquals(10, result.getFailures());
+        assertEquals(10, result.getCorrectedHistogram().getTotalCount());
+    }
+
+    @Test
+    public void testInvalidRate()
+    {
+        assertThrows(IllegalArgumentException.class, () -> new RateDriver(PlatformTimer.detect(), 0));
+        assertThrows(IllegalArgumentException.class, () -> new RateDriver(PlatformTimer.detect(), TimeUnit.SECONDS.toNanos(1) + 1));
+    }
+
+    @Test
+    public void testRunDoesNotDrift()
+    {
+        // 3 ops/s does not divide one second evenly.
+        RateDriver driver = new RateDriver(PlatformTimer.detect(), 3);
+        RateDriver.Result result = driver.run(() -> {}, 1, TimeUnit.SECONDS);
+
+        assertEquals(3, result.getOperations());
+        // The third operation is intended to start at exactly 2/3 of a second.
+        long expected = TimeUnit.SECONDS.toNanos(2) / 3;
+        assertTrue(result.getTime() >= expected, "time " + result.getTime());
+    }
+
+    @Test
+    public void testInterruptStopsTheRun()
+    {
+        RateDriver driver = new RateDriver(PlatformTimer.detect(), 10000);
+        AtomicLong counter = new AtomicLong();
+        try
+        {
+            RateDriver.Result result = driver.run(() ->
+            {
+                if (counter.incrementAndGet() == 5)
+                    throw new InterruptedException();
+            }, 10);
+
+            assertEquals(5, result.getOperations());
+            assertEquals(1, result.getFailures());
+            assertTrue(Thread.currentThread().isInterrupted());
+        }
+        finally
+        {
+            Thread.interrupted();
+        }
+    }
+}
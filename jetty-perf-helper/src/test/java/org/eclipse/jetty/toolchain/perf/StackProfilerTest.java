@@ -0,0 +1,115 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StackProfilerTest
+{
+    private static volatile double sink;
+
+    private static void spin(AtomicBoolean running)
+    {
+        double value = 0;
+        while (running.get())
+        {
+            value += Math.sqrt(value + 1);
+        }
+        sink = value;
+    }
+
+    @Test
+    public void testCollapsedStacks() throws Exception
+    {
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread busy = new Thread(() -> spin(running), "qtp-busy");
+        Thread other = new Thread(() -> spin(running), "other-busy");
+        busy.start();
+        other.start();
+
+        StackProfiler profiler = new StackProfiler();
+        profiler.setPeriod(5);
+        profiler.setThreadNamePrefixes("qtp");
+        profiler.start();
+        Thread.sleep(500);
+        profiler.stop();
+        running.set(false);
+        busy.join();
+        other.join();
+
+        assertTrue(profiler.getSnapshots() > 10, profiler.toString());
+        assertTrue(profiler.getSamples() > 0, profiler.toString());
+
+        StringBuilder output = new StringBuilder();
+        profiler.writeCollapsed(output);
+        String[] lines = output.toString().split(System.lineSeparator());
+        long total = 0;
+        for (String line : lines)
+        {
+            // Only the filtered thread is sampled, from the outermost frame.
+            assertTrue(line.startsWith("java.lang.Thread.run;"), line);
+            assertFalse(line.contains(";" + StackProfiler.class.getName() + ".sample"), line);
+            total += Long.parseLong(line.substring(line.lastIndexOf(' ') + 1));
+        }
+        assertEquals(profiler.getSamples(), total);
+        assertTrue(output.toString().contains(StackProfilerTest.class.getName() + ".spin"));
+
+        List<Map.Entry<String, Long>> top = profiler.getTopFrames(1);
+        assertEquals(1, top.size());
+    }
+
+    @Test
+    public void testWithinPlatformMonitor() throws Exception
+    {
+        PlatformMonitor monitor = new PlatformMonitor();
+        StackProfiler profiler = new StackProfiler();
+        profiler.setPeriod(5);
+        monitor.setStackProfiler(profiler);
+        assertNotNull(monitor.start());
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread busy = new Thread(() -> spin(running));
+        busy.start();
+        Thread.sleep(200);
+        running.set(false);
+        busy.join();
+        PlatformMonitor.Stop stop = monitor.stop();
+
+        assertNotNull(stop.stackProfiler);
+        assertTrue(stop.toString().contains("Top Frames by Stack Samples"));
+
+        // The profile of the stop is not discarded by the next start.
+        long samples = stop.stackProfiler.getSamples();
+        StringBuilder profile = new StringBuilder();
+        stop.stackProfiler.writeCollapsed(profile);
+        assertNotNull(monitor.start());
+        monitor.stop();
+        assertEquals(samples, stop.stackProfiler.getSamples());
+        StringBuilder again = new StringBuilder();
+        stop.stackProfiler.writeCollapsed(again);
+        assertEquals(profile.toString(), again.toString());
+    }
+}
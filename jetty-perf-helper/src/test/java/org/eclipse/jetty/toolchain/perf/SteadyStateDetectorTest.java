@@ -0,0 +1,94 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.util.Random;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SteadyStateDetectorTest
+{
+    private final Random random = new Random(1);
+    private long time = System.currentTimeMillis();
+
+    private Histogram newInterval(double latency)
+    {
+        // 1 second intervals, so that the JIT activity of the test is negligible.
+        Histogram histogram = new Histogram(3);
+        for (int i = 0; i < 1000; ++i)
+        {
+            histogram.recordValue(Math.round(latency * 1_000_000 * Math.exp(0.1 * random.nextGaussian())));
+        }
+        histogram.setStartTimeStamp(time);
+        time += 1000;
+        histogram.setEndTimeStamp(time);
+        return histogram;
+    }
+
+    @Test
+    public void testWarmUpThenSteady()
+    {
+        SteadyStateDetector detector = new SteadyStateDetector(null);
+        // Warm-up: latencies decrease from 10 ms to 1 ms.
+        for (int i = 0; i < 20; ++i)
+        {
+            assertFalse(detector.update(newInterval(10 - 9 * i / 19D)), "interval " + i);
+        }
+        boolean steady = false;
+        for (int i = 0; i < 30 && !steady; ++i)
+        {
+            steady = detector.update(newInterval(1));
+        }
+        assertTrue(steady);
+        assertFalse(detector.isForced());
+        assertTrue(detector.getIntervals() > 20);
+    }
+
+    @Test
+    public void testStartsMonitor()
+    {
+        PlatformMonitor monitor = new PlatformMonitor();
+        SteadyStateDetector detector = new SteadyStateDetector(monitor);
+        while (!detector.update(newInterval(1)))
+        {
+            assertNull(detector.getStart());
+        }
+        assertNotNull(detector.getStart());
+        assertTrue(detector.update(newInterval(5)));
+        assertNotNull(monitor.stop());
+    }
+
+    @Test
+    public void testMaxIntervals()
+    {
+        SteadyStateDetector detector = new SteadyStateDetector(null);
+        detector.setMaxIntervals(10);
+        for (int i = 0; i < 9; ++i)
+        {
+            assertFalse(detector.update(newInterval(10 - i)));
+        }
+        assertTrue(detector.update(newInterval(1)));
+        assertTrue(detector.isForced());
+    }
+}
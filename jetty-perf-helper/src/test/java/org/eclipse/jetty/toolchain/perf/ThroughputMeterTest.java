@@ -0,0 +1,197 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ThroughputMeterTest
+{
+    @Test
+    public void testStatistics()
+    {
+        // A long period, so that only the explicit ticks record.
+        ThroughputMeter meter = new ThroughputMeter(1, TimeUnit.HOURS, 10);
+        long now = System.nanoTime();
+        meter.start(now);
+        try
+        {
+            assertTrue(Double.isNaN(meter.getMeanRate()));
+            long[] counts = {100, 200, 300, 200};
+            for (long count : counts)
+            {
+                meter.mark(count);
+                now += TimeUnit.HOURS.toNanos(1);
+                meter.tick(now);
+            }
+            meter.mark();
+
+            assertEquals(801, meter.getCount());
+            assertEquals(4, meter.getSize());
+            assertEquals(300, meter.get(2));
+            double perHour = 3600D;
+            assertEquals(100 / perHour, meter.getMinRate(), 1e-9);
+            assertEquals(300 / perHour, meter.getMaxRate(), 1e-9);
+            assertEquals(200 / perHour, meter.getMeanRate(), 1e-9);
+            // Standard deviation of {100, 200, 300, 200} is sqrt(5000).
+            assertEquals(Math.sqrt(5000) / 200, meter.getCoefficientOfVariation(), 1e-9);
+            // With a period much longer than the windows, the averages follow the last rate.
+            assertEquals(200 / perHour, meter.getOneSecondRate(), 1e-9);
+            assertEquals(200 / perHour, meter.getFifteenSecondRate(), 1e-9);
+        }
+        finally
+        {
+            meter.stop();
+        }
+    }
+
+    @Test
+    public void testEWMA()
+    {
+        ThroughputMeter meter = new ThroughputMeter(1, TimeUnit.SECONDS, 100);
+        long now = System.nanoTime();
+        meter.start(now);
+        meter.stop();
+        meter.mark(1000);
+        meter.tick(now + TimeUnit.SECONDS.toNanos(1));
+        assertEquals(1000, meter.getFiveSecondRate(), 1e-9);
+        meter.tick(now + TimeUnit.SECONDS.toNanos(2));
+        double alpha = 1 - Math.exp(-1 / 5D);
+        assertEquals(1000 * (1 - alpha), meter.getFiveSecondRate(), 1e-9);
+        // The shorter window reacts faster.
+        assertTrue(meter.getOneSecondRate() < meter.getFiveSecondRate());
+        assertTrue(meter.getFiveSecondRate() < meter.getFifteenSecondRate());
+    }
+
+    @Test
+    public void testRingBuffer() throws Exception
+    {
+        ThroughputMeter meter = new ThroughputMeter(1, TimeUnit.HOURS, 3);
+        long now = System.nanoTime();
+        meter.start(now);
+        meter.stop();
+        for (int i = 1; i <= 5; ++i)
+        {
+            meter.mark(i);
+            meter.tick(now + i * TimeUnit.HOURS.toNanos(1));
+        }
+
+        assertEquals(3, meter.getSize());
+        assertEquals(2, meter.getDroppedSamples());
+        assertEquals(3, meter.get(0));
+        assertEquals(5, meter.get(2));
+
+        StringBuilder csv = new StringBuilder();
+        meter.writeCSV(csv);
+        String[] lines = csv.toString().split(System.lineSeparator());
+        assertEquals(4, lines.length);
+        String[] columns = lines[1].split(",");
+        assertEquals(3 * TimeUnit.HOURS.toMillis(1), Long.parseLong(columns[0]));
+        assertEquals("3", columns[1]);
+    }
+
+    @Test
+    public void testRateUsesActualInterval()
+    {
+        ThroughputMeter meter = new ThroughputMeter(1, TimeUnit.SECONDS, 10);
+        long now = System.nanoTime();
+        meter.start(now);
+        meter.stop();
+        meter.mark(1000);
+        meter.tick(now + TimeUnit.SECONDS.toNanos(1));
+        // The ticker runs one period late, so twice the operations are counted.
+        meter.mark(2000);
+        meter.tick(now + TimeUnit.SECONDS.toNanos(3));
+
+        assertEquals(2000, meter.get(1));
+        assertEquals(1000, meter.getRate(0), 1e-9);
+        assertEquals(1000, meter.getRate(1), 1e-9);
+        assertEquals(1000, meter.getMaxRate(), 1e-9);
+        assertEquals(3000, meter.getTime(1));
+    }
+
+    @Test
+    public void testPayloadRoundTrip()
+    {
+        ThroughputMeter meter = new ThroughputMeter(1, TimeUnit.SECONDS, 2);
+        long now = System.nanoTime();
+        meter.start(now);
+        meter.stop();
+        for (int i = 1; i <= 3; ++i)
+        {
+            meter.mark(i * 1000);
+            meter.tick(now + TimeUnit.SECONDS.toNanos(i));
+        }
+        meter.mark(10);
+
+        PlatformMonitor.Stop stop = new PlatformMonitor.Stop();
+        stop.throughputMeter = meter;
+        Properties properties = new Properties();
+        MonitorPayload.write(stop, properties);
+        ThroughputMeter result = MonitorPayload.read(properties, new PlatformMonitor.Stop()).throughputMeter;
+
+        assertEquals(meter.getPeriod(), result.getPeriod());
+        assertEquals(2, result.getCapacity());
+        assertEquals(6010, result.getCount());
+        assertEquals(1, result.getDroppedSamples());
+        assertEquals(2, result.getSize());
+        for (int i = 0; i < result.getSize(); ++i)
+        {
+            assertEquals(meter.get(i), result.get(i));
+            assertEquals(meter.getTime(i), result.getTime(i));
+            assertEquals(meter.getRate(i), result.getRate(i), 1e-9);
+        }
+        assertEquals(meter.getOneSecondRate(), result.getOneSecondRate(), 1e-9);
+        assertEquals(meter.getFifteenSecondRate(), result.getFifteenSecondRate(), 1e-9);
+    }
+
+    @Test
+    public void testWithinPlatformMonitor() throws Exception
+    {
+        PlatformMonitor monitor = new PlatformMonitor();
+        ThroughputMeter meter = new ThroughputMeter(50, TimeUnit.MILLISECONDS, 100);
+        monitor.setThroughputMeter(meter);
+        assertNotNull(monitor.start());
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(300);
+        while (System.nanoTime() < end)
+        {
+            meter.mark();
+            Thread.sleep(1);
+        }
+        PlatformMonitor.Stop stop = monitor.stop();
+
+        assertNotNull(stop.throughputMeter);
+        assertTrue(stop.throughputMeter.getSize() >= 3, stop.throughputMeter.toString());
+        assertEquals(meter.getCount(), stop.operations);
+        assertTrue(stop.toString().contains("Throughput: min/mean/max = "));
+
+        // The counts of the stop are not discarded by the next start.
+        int size = stop.throughputMeter.getSize();
+        assertNotNull(monitor.start());
+        meter.mark();
+        monitor.stop();
+        assertEquals(size, stop.throughputMeter.getSize());
+        assertEquals(stop.operations, stop.throughputMeter.getCount());
+    }
+}
@@ -0,0 +1,84 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.toolchain.perf;
+
+import java.io.StringWriter;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TimelineTest
+{
+    private static void record(Timeline timeline, long time, long cpuTime)
+    {
+        timeline.record(time, 1, 2, 3, 4, 5, cpuTime, 6, 7, 8, 9);
+    }
+
+    @Test
+    public void testRingBufferWraps()
+    {
+        Timeline timeline = new Timeline(4, 2, 1000);
+        for (int i = 0; i < 10; ++i)
+        {
+            record(timeline, i * 1000, i * 500_000_000L);
+        }
+
+        assertEquals(4, timeline.getSize());
+        assertEquals(6, timeline.getDroppedSamples());
+        for (int i = 0; i < 4; ++i)
+        {
+            assertEquals((6 + i) * 1000, timeline.get(Timeline.Column.TIME, i));
+            assertEquals(8, timeline.get(Timeline.Column.THREAD_COUNT, i));
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> timeline.get(Timeline.Column.TIME, 4));
+    }
+
+    @Test
+    public void testCPULoad()
+    {
+        Timeline timeline = new Timeline(10, 2, 1000);
+        record(timeline, 0, 0);
+        record(timeline, 1000, 1_000_000_000L);
+        record(timeline, 2000, -1);
+
+        assertTrue(Double.isNaN(timeline.getCPULoad(0)));
+        // 1 second of CPU in 1 second with 2 cores.
+        assertEquals(0.5, timeline.getCPULoad(1), 0.0001);
+        assertTrue(Double.isNaN(timeline.getCPULoad(2)));
+    }
+
+    @Test
+    public void testCSV() throws Exception
+    {
+        Timeline timeline = new Timeline(10, 1, 1000);
+        record(timeline, 0, 0);
+        record(timeline, 1000, 250_000_000L);
+
+        StringWriter output = new StringWriter();
+        timeline.writeCSV(output);
+        String[] lines = output.toString().split(System.lineSeparator());
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("\"Time (ms)\","));
+        assertTrue(lines[0].endsWith("\"CPU Load\""));
+        assertEquals("0,1,2,3,4,5,0,6,7,8,9,", lines[1]);
+        assertEquals("1000,1,2,3,4,5,250000000,6,7,8,9,0.2500", lines[2]);
+    }
+}